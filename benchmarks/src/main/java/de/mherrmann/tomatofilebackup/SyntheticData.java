@@ -0,0 +1,96 @@
+package de.mherrmann.tomatofilebackup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark input. Equal kind, length and seed always give equal bytes, so numbers of different
+ * runs and commits can be compared.
+ */
+public enum SyntheticData {
+    /** Incompressible bytes without any repetition. */
+    RANDOM {
+        @Override
+        public byte[] generate(int length, long seed) {
+            byte[] bytes = new byte[length];
+            new Random(seed).nextBytes(bytes);
+            return bytes;
+        }
+    },
+    /** Zero bytes only, like the empty regions of VM images. */
+    ZEROS {
+        @Override
+        public byte[] generate(int length, long seed) {
+            return new byte[length];
+        }
+    },
+    /** Lines of words from a small vocabulary, compressible like source code or logs. */
+    TEXT {
+        @Override
+        public byte[] generate(int length, long seed) {
+            Random random = new Random(seed);
+            byte[] bytes = new byte[length];
+            int position = 0;
+            while(position < length){
+                byte[] word = WORDS[random.nextInt(WORDS.length)];
+                int count = Math.min(word.length, length - position);
+                System.arraycopy(word, 0, bytes, position, count);
+                position += count;
+                if(position < length){
+                    bytes[position++] = (byte) (random.nextInt(12) == 0 ? '\n' : ' ');
+                }
+            }
+            return bytes;
+        }
+    },
+    /** A random base with about one percent of it overwritten in small runs, like a new version of a file. */
+    MUTATED {
+        @Override
+        public byte[] generate(int length, long seed) {
+            return mutate(RANDOM.generate(length, seed), 0.01, seed + 1);
+        }
+    };
+
+    private static final byte[][] WORDS = toBytes(
+            "tomato", "file", "backup", "chunk", "snapshot", "repository", "restore", "the", "a", "of", "and",
+            "public", "static", "final", "class", "return", "if", "else", "for", "while", "new", "null", "true",
+            "INFO", "WARN", "ERROR", "2021-03-14", "12:00:00", "request", "handled", "in", "ms", "user", "id");
+    private static final int MUTATION_RUN = 64;
+
+    public abstract byte[] generate(int length, long seed);
+
+    /**
+     * @return a copy of <code>base</code> with about <code>rate</code> of its bytes overwritten, in runs of 64 bytes
+     */
+    public static byte[] mutate(byte[] base, double rate, long seed){
+        Random random = new Random(seed);
+        byte[] mutated = base.clone();
+        long runs = Math.round(base.length * rate / MUTATION_RUN);
+        byte[] run = new byte[MUTATION_RUN];
+        for(long i = 0; i < runs; i++){
+            random.nextBytes(run);
+            int offset = random.nextInt(Math.max(1, base.length - MUTATION_RUN));
+            System.arraycopy(run, 0, mutated, offset, Math.min(MUTATION_RUN, base.length - offset));
+        }
+        return mutated;
+    }
+
+    /**
+     * Writes generated bytes to <code>file</code>.
+     */
+    public File writeFile(File file, int length, long seed) throws IOException {
+        Files.write(file.toPath(), generate(length, seed));
+        return file;
+    }
+
+    private static byte[][] toBytes(String... words){
+        byte[][] bytes = new byte[words.length][];
+        for(int i = 0; i < words.length; i++){
+            bytes[i] = words[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
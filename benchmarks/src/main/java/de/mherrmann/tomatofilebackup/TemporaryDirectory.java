@@ -0,0 +1,42 @@
+package de.mherrmann.tomatofilebackup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Scratch directories for benchmarks which write files.
+ */
+public class TemporaryDirectory {
+
+    private TemporaryDirectory(){}
+
+    public static File create(String prefix) throws IOException {
+        return Files.createTempDirectory("tfb-" + prefix).toFile();
+    }
+
+    /**
+     * Deletes <code>directory</code> with everything in it.
+     */
+    public static void delete(File directory) throws IOException {
+        if(directory == null || !directory.exists()){
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for(Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator){
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Deletes everything in <code>directory</code>, but keeps the directory itself.
+     */
+    public static void clear(File directory) throws IOException {
+        delete(directory);
+        Files.createDirectories(directory.toPath());
+    }
+}
@@ -0,0 +1,46 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import de.mherrmann.tomatofilebackup.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk checksum throughput of every chunk hash algorithm on heap arrays and on direct buffers, as used for memory-mapped windows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"MURMUR3_128", "XXH3_128", "SHA_256"})
+    public ChunkHashAlgorithm algorithm;
+
+    @Param({"4096", "1048576"})
+    public int length;
+
+    private byte[] bytes;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setUp() {
+        bytes = SyntheticData.RANDOM.generate(length, 42);
+        directBuffer = ByteBuffer.allocateDirect(length);
+        directBuffer.put(bytes);
+        directBuffer.flip();
+    }
+
+    @Benchmark
+    public ChunkId heap() {
+        return algorithm.hash(bytes, 0, length);
+    }
+
+    @Benchmark
+    public ChunkId direct() {
+        return algorithm.hash(directBuffer, 0, length);
+    }
+}
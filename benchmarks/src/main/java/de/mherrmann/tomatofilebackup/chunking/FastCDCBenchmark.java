@@ -0,0 +1,46 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import de.mherrmann.tomatofilebackup.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boundary scan throughput of the FastCDC variants over one chunking portion of synthetic data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FastCDCBenchmark {
+
+    @Param({"FASTCDC_2016", "FASTCDC_2020", "FASTCDC_64"})
+    public ChunkingAlgorithm algorithm;
+
+    @Param({"2"})
+    public int normalizationLevel;
+
+    @Param({"RANDOM", "TEXT", "ZEROS"})
+    public SyntheticData data;
+
+    private ByteBuffer source;
+
+    @Setup
+    public void setUp() {
+        source = ByteBuffer.wrap(data.generate(ChunkingEngine.PORTION, 42));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ChunkingEngine.PORTION)
+    public void cut(Blackhole blackhole) {
+        FastCDC fastCDC = algorithm.createChunker(source, ChunkingEngine.MIN_CHUNK_SIZE,
+                ChunkingEngine.AVG_CHUNK_SIZE, ChunkingEngine.MAX_CHUNK_SIZE, normalizationLevel);
+        while(fastCDC.hasNext()){
+            blackhole.consume(fastCDC.next());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import de.mherrmann.tomatofilebackup.SyntheticData;
+import de.mherrmann.tomatofilebackup.TemporaryDirectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of one average sized chunk with every codec, in memory and to and from chunk files.
+ * <code>gzip</code> is the legacy format chunks were stored in before codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int CHUNK_LENGTH = 1024*1024;
+
+    @Param({"RANDOM", "TEXT", "ZEROS"})
+    public SyntheticData data;
+
+    @Param({"gzip", "deflate:1", "deflate:6", "lz4", "zstd:1", "zstd:3"})
+    public String codecName;
+
+    private CompressionCodec codec;
+    private final CompressionStats stats = new CompressionStats();
+    private byte[] uncompressed;
+    private byte[] compressed;
+    private File directory;
+    private File storedFile;
+    private File compressedFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = codecName.equals("gzip") ? null : CompressionCodecs.forName(codecName);
+        uncompressed = data.generate(CHUNK_LENGTH, 42);
+        compressed = compress();
+        directory = TemporaryDirectory.create("compression");
+        storedFile = new File(directory, "stored");
+        compressedFile = new File(directory, "compressed");
+        storeCompressed(compressedFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        TemporaryDirectory.delete(directory);
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        if(codec == null){
+            return CompressionEngine.compress(uncompressed, 0, uncompressed.length);
+        }
+        return CompressionEngine.compress(codec, uncompressed, 0, uncompressed.length);
+    }
+
+    /**
+     * Skips the codec for incompressible chunks; legacy gzip has no adaptive mode.
+     */
+    @Benchmark
+    public byte[] compressAdaptive() throws IOException {
+        if(codec == null){
+            return compress();
+        }
+        return CompressionEngine.compressAdaptive(codec, uncompressed, 0, uncompressed.length, stats);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws IOException {
+        return CompressionEngine.decompress(compressed, CHUNK_LENGTH);
+    }
+
+    @Benchmark
+    public File storeCompressed() throws IOException {
+        return storeCompressed(storedFile);
+    }
+
+    @Benchmark
+    public byte[] restoreDecompressed() throws IOException {
+        return CompressionEngine.restoreDecompressed(compressedFile, CHUNK_LENGTH);
+    }
+
+    private File storeCompressed(File file) throws IOException {
+        if(codec == null){
+            CompressionEngine.storeCompressed(uncompressed, file);
+        } else {
+            CompressionEngine.storeCompressed(codec, uncompressed, 0, uncompressed.length, file);
+        }
+        return file;
+    }
+}
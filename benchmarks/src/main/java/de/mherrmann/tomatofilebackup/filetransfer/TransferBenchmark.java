@@ -0,0 +1,125 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import de.mherrmann.tomatofilebackup.SyntheticData;
+import de.mherrmann.tomatofilebackup.TemporaryDirectory;
+import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing and restoring one 64 MB file, into chunk files or packs. The source file stays in the page cache,
+ * so this measures copying, compression and file system overhead rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final int FILE_LENGTH = 64*1024*1024;
+
+    public enum Target { FILES, PACKS }
+
+    @Param({"FILES", "PACKS"})
+    public Target target;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    @Param({"RANDOM", "TEXT", "MUTATED"})
+    public SyntheticData data;
+
+    /**
+     * Worker threads of the transfer engine; storing into packs stays sequential, restoring runs in parallel.
+     */
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private final TransferEngine transferEngine = new TransferEngine();
+    private final ChunkingEngine chunkingEngine = new ChunkingEngine();
+    private File directory;
+    private File sourceFile;
+    private File storeDirectory;
+    private File restoreFile;
+    private File storedDirectory;
+    private List<Chunk> chunks;
+    private Map<ChunkId, PackLocation> storedLocations;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        transferEngine.setParallelism(parallelism);
+        directory = TemporaryDirectory.create("transfer");
+        sourceFile = data.writeFile(new File(directory, "source"), FILE_LENGTH, 42);
+        storeDirectory = new File(directory, "store");
+        storedDirectory = new File(directory, "stored");
+        restoreFile = new File(directory, "restored");
+        chunks = chunkingEngine.getChunks(sourceFile);
+        TemporaryDirectory.clear(storedDirectory);
+        storedLocations = store(storedDirectory);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearStoreDirectory() throws IOException {
+        TemporaryDirectory.clear(storeDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        transferEngine.close();
+        TemporaryDirectory.delete(directory);
+    }
+
+    @Benchmark
+    public Map<ChunkId, PackLocation> storeChunks() throws IOException {
+        return store(storeDirectory);
+    }
+
+    @Benchmark
+    public List<Chunk> chunkAndStore() throws IOException {
+        if(target == Target.FILES){
+            return transferEngine.chunkAndStore(sourceFile, storeDirectory, chunkingEngine, compress);
+        }
+        try (PackEngine packEngine = new PackEngine(storeDirectory)) {
+            return transferEngine.chunkAndStore(sourceFile, packEngine, chunkingEngine, compress, new HashMap<>());
+        }
+    }
+
+    @Benchmark
+    public File restoreFile() throws IOException {
+        if(target == Target.FILES){
+            transferEngine.restoreFile(restoreFile, storedDirectory, chunks, compress);
+        } else {
+            transferEngine.restoreFile(restoreFile, new PackEngine(storedDirectory), chunks, storedLocations, compress);
+        }
+        return restoreFile;
+    }
+
+    private Map<ChunkId, PackLocation> store(File targetDirectory) throws IOException {
+        if(target == Target.FILES){
+            transferEngine.storeChunks(sourceFile, targetDirectory, distinct(chunks), compress);
+            return null;
+        }
+        try (PackEngine packEngine = new PackEngine(targetDirectory)) {
+            return transferEngine.storeChunks(sourceFile, packEngine, chunks, compress);
+        }
+    }
+
+    /// Chunk files can only be created once per checksum.
+    private static List<Chunk> distinct(List<Chunk> chunks){
+        Map<ChunkId, Chunk> distinct = new HashMap<>();
+        for(Chunk chunk : chunks){
+            distinct.putIfAbsent(chunk.getChecksum(), chunk);
+        }
+        return List.copyOf(distinct.values());
+    }
+}
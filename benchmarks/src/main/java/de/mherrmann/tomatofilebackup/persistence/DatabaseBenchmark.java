@@ -0,0 +1,124 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.TemporaryDirectory;
+import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.FileEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk inserts and lookups against a repository database which already holds <code>chunkCount</code> chunks.
+ * Inserts grow the database during a trial, so compare runs with equal iteration settings only.
+ * The <code>backup</code> group runs lookups on three threads while a fourth one keeps adding chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final int CHUNK_LENGTH = 1024*1024;
+    private static final long CHECKSUM_HIGH = 0x746f6d61746f0000L;
+    private static final int CHUNKS_PER_FILE = 100;
+
+    @Param({"1000"})
+    public int chunkCount;
+
+    @Param({"DEFAULT"})
+    public PragmaProfile profile;
+
+    private File directory;
+    private DatabaseEngine databaseEngine;
+    private long fileId;
+    private long nextChecksum;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = TemporaryDirectory.create("database");
+        RepositoryInitializer.initialize(directory.getAbsolutePath());
+        databaseEngine = new DatabaseEngine(directory.getAbsolutePath(), profile);
+        SnapshotEntity snapshot = databaseEngine.addSnapshot("/benchmark", "benchmark", 1234567890);
+        FileEntity file = databaseEngine.addRegularFile("/benchmark/file", (long) chunkCount * CHUNK_LENGTH,
+                1, 1234567890, 1234567890, 1234567890, false, "user", "group", "rw-r--r--", snapshot);
+        fileId = file.getId();
+        List<Chunk> chunks = new ArrayList<>(chunkCount);
+        for(nextChecksum = 0; nextChecksum < chunkCount; nextChecksum++){
+            chunks.add(newChunk(nextChecksum));
+        }
+        databaseEngine.addChunks(chunks, fileId);
+        random = new Random(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        databaseEngine.destroy();
+        TemporaryDirectory.delete(directory);
+    }
+
+    @Benchmark
+    public ChunkEntity addChunk() throws SQLException {
+        return databaseEngine.addChunk(newChunk(nextChecksum++), fileId);
+    }
+
+    /**
+     * Adds the chunks of a file in one transaction; scores are per chunk, like those of {@link #addChunk()}.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS_PER_FILE)
+    public List<ChunkEntity> addChunks() throws SQLException {
+        List<Chunk> chunks = new ArrayList<>(CHUNKS_PER_FILE);
+        for(int i = 0; i < CHUNKS_PER_FILE; i++){
+            chunks.add(newChunk(nextChecksum++));
+        }
+        return databaseEngine.addChunks(chunks, fileId);
+    }
+
+    @Benchmark
+    public Optional<ChunkEntity> getChunkByChecksum() throws SQLException {
+        return databaseEngine.getChunkByChecksum(new ChunkId(CHECKSUM_HIGH, random.nextInt(chunkCount)));
+    }
+
+    @Benchmark
+    public Optional<ChunkEntity> getMissingChunkByChecksum() throws SQLException {
+        return databaseEngine.getChunkByChecksum(new ChunkId(CHECKSUM_HIGH, -1 - random.nextInt(chunkCount)));
+    }
+
+    @Benchmark
+    public List<ChunkEntity> getChunksByFileId() throws SQLException {
+        return databaseEngine.getChunksByFileId(fileId);
+    }
+
+    @Benchmark
+    @Group("backup")
+    @GroupThreads(1)
+    public ChunkEntity backupAddChunk() throws SQLException {
+        return addChunk();
+    }
+
+    @Benchmark
+    @Group("backup")
+    @GroupThreads(3)
+    public Optional<ChunkEntity> backupGetChunkByChecksum() throws SQLException {
+        return getChunkByChecksum();
+    }
+
+    private static Chunk newChunk(long number){
+        Chunk chunk = new Chunk(number * CHUNK_LENGTH, CHUNK_LENGTH);
+        chunk.setChecksum(new ChunkId(CHECKSUM_HIGH, number));
+        return chunk;
+    }
+}
@@ -3,7 +3,8 @@ package de.mherrmann.tomatofilebackup;
 public class Constants {
     public static final String DB_FILENAME = "repository.db";
     public static final String CHUNKS_DIRECTORY_NAME = "chunks";
-    public static final String VERSION = "1.0";
+    public static final String PACKS_DIRECTORY_NAME = "packs";
+    public static final String VERSION = "2.0";
     public static final String TFB_INTRO = "tomato file backup | Version " + VERSION;
     public static final String HELP = "help";
     public static final String SUCCESS = "Successfully done the action";
@@ -18,7 +19,8 @@ public class Constants {
         INVALID_ACTION("There is no such action: %s"),
         MISSING_PATH("Missing path argument"),
         TOO_FEW_ARGUMENTS("There must be at least one argument, the name of the action."),
-        INVALID_ARGUMENT("Invalid Argument: %s");
+        INVALID_ARGUMENT("Invalid Argument: %s"),
+        INVALID_CHUNKING_PARAMETERS("Invalid chunking parameters: %s");
 
         private final String message;
 
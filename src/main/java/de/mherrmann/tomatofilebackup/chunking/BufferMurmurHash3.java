@@ -0,0 +1,127 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MurmurHash3 (128 bits long, x64 type, seed 0) over a {@link ByteBuffer}.
+ * Produces the same result as commons-codec <code>MurmurHash3.hash128x64(bytes, start, length, 0)</code>,
+ * but works on heap, direct and memory-mapped buffers without copying the bytes to the heap. Blocks are read with
+ * {@link LittleEndian}, so no byte order view of the buffer is needed.
+ */
+final class BufferMurmurHash3 {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int R1 = 31;
+    private static final int R2 = 27;
+    private static final int R3 = 33;
+    private static final int M = 5;
+    private static final int N1 = 0x52dce729;
+    private static final int N2 = 0x38495ab5;
+
+    private BufferMurmurHash3(){}
+
+    /**
+     * @param data - the buffer the bytes are in; its position, limit and byte order are ignored
+     * @param start - absolute index of the first byte
+     * @param length - number of bytes
+     */
+    static long[] hash128x64(ByteBuffer data, int start, int length){
+        long h1 = 0;
+        long h2 = 0;
+        int nblocks = length >> 4;
+
+        for (int i = 0; i < nblocks; i++) {
+            int index = start + (i << 4);
+            long k1 = LittleEndian.getLong(data, index);
+            long k2 = LittleEndian.getLong(data, index + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, R2);
+            h1 += h2;
+            h1 = h1 * M + N1;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, R1);
+            h2 += h1;
+            h2 = h2 * M + N2;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int index = start + (nblocks << 4);
+        switch (length - (nblocks << 4)) {
+            case 15:
+                k2 ^= ((long) data.get(index + 14) & 0xff) << 48;
+            case 14:
+                k2 ^= ((long) data.get(index + 13) & 0xff) << 40;
+            case 13:
+                k2 ^= ((long) data.get(index + 12) & 0xff) << 32;
+            case 12:
+                k2 ^= ((long) data.get(index + 11) & 0xff) << 24;
+            case 11:
+                k2 ^= ((long) data.get(index + 10) & 0xff) << 16;
+            case 10:
+                k2 ^= ((long) data.get(index + 9) & 0xff) << 8;
+            case 9:
+                k2 ^= data.get(index + 8) & 0xff;
+                h2 ^= mixK2(k2);
+            case 8:
+                k1 ^= ((long) data.get(index + 7) & 0xff) << 56;
+            case 7:
+                k1 ^= ((long) data.get(index + 6) & 0xff) << 48;
+            case 6:
+                k1 ^= ((long) data.get(index + 5) & 0xff) << 40;
+            case 5:
+                k1 ^= ((long) data.get(index + 4) & 0xff) << 32;
+            case 4:
+                k1 ^= ((long) data.get(index + 3) & 0xff) << 24;
+            case 3:
+                k1 ^= ((long) data.get(index + 2) & 0xff) << 16;
+            case 2:
+                k1 ^= ((long) data.get(index + 1) & 0xff) << 8;
+            case 1:
+                k1 ^= data.get(index) & 0xff;
+                h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        return new long[] { h1, h2 };
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, R1);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, R3);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long hash) {
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+}
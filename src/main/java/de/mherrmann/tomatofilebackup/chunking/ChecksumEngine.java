@@ -2,6 +2,8 @@ package de.mherrmann.tomatofilebackup.chunking;
 
 import org.apache.commons.codec.digest.MurmurHash3;
 
+import java.nio.ByteBuffer;
+
 public class ChecksumEngine {
 
     private ChecksumEngine(){}
@@ -11,11 +13,25 @@ public class ChecksumEngine {
      * @param bytes - the byte array where the chunk bytes are in
      * @param start - start at index <code>start</code>
      * @param length - use <code>length</code> bytes beginning at <code>start</code>
-     * @return the MurMurHash3 checksum as upper-case hex-string
+     * @return the MurMurHash3 checksum
+     */
+    public static ChunkId getChunkChecksum(byte[] bytes, int start, int length){
+        return getChunkChecksum(ByteBuffer.wrap(bytes), start, length);
+    }
+
+    /**
+     * Creates a checksum for chunkBytes using MurMurHash3 (128 bits long, x64 type).
+     * Works on heap, direct and memory-mapped buffers without copying the chunk bytes.
+     * The result is the same as for {@link #getChunkChecksum(byte[], int, int)} with the same bytes, and the same
+     * as the commons-codec implementation earlier repositories were chunked with.
+     * @param buffer - the buffer where the chunk bytes are in
+     * @param start - start at absolute index <code>start</code>
+     * @param length - use <code>length</code> bytes beginning at <code>start</code>
+     * @return the MurMurHash3 checksum
      */
-    public static String getChunkChecksum(byte[] bytes, int start, int length){
-        long[] result = MurmurHash3.hash128x64(bytes, start, length, 0);
-        return String.format("%016X%016X", result[0], result[1]);
+    public static ChunkId getChunkChecksum(ByteBuffer buffer, int start, int length){
+        long[] result = BufferMurmurHash3.hash128x64(buffer, start, length);
+        return new ChunkId(result[0], result[1]);
     }
 
     /**
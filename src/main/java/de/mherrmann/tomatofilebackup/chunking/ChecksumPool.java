@@ -0,0 +1,63 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded, reusable worker pool for chunk checksums.
+ * The pool is sized to the available cores. Submitting blocks as soon as all workers are busy and the queue is full,
+ * which applies backpressure to the reader instead of piling up portions in memory.
+ */
+class ChecksumPool {
+
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int QUEUE_CAPACITY = WORKERS * 4;
+    private static final ChecksumPool SHARED = new ChecksumPool(WORKERS, QUEUE_CAPACITY);
+
+    private final ExecutorService executor;
+    private final Semaphore slots;
+
+    ChecksumPool(int workers, int queueCapacity){
+        AtomicInteger threadCount = new AtomicInteger(0);
+        // the semaphore is the actual bound. A slot is released before the worker polls the next task,
+        // so the queue itself has room for every slot to never reject a submit.
+        int slotCount = workers + queueCapacity;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(slotCount), runnable -> {
+                    Thread thread = new Thread(runnable, "tfb-checksum-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.slots = new Semaphore(slotCount);
+    }
+
+    static ChecksumPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Submits a checksum task. Blocks while the pool is saturated.
+     * @param task - the task to run
+     * @return a future which completes when the task is done and reports its failure, if any
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    Future<?> submit(Runnable task) throws InterruptedException {
+        slots.acquire();
+        try {
+            return executor.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException exception){
+            slots.release();
+            throw exception;
+        }
+    }
+
+    void shutdown(){
+        executor.shutdown();
+    }
+}
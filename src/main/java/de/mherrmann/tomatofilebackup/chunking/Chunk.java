@@ -3,21 +3,28 @@ package de.mherrmann.tomatofilebackup.chunking;
 public class Chunk {
     private long offset;
     private final int length;
-    private String checksum;
+    private ChunkId checksum;
 
     public Chunk(long offset, int length) {
         this.offset = offset;
         this.length = length;
     }
 
-    public String getChecksum() {
+    public ChunkId getChecksum() {
         return checksum;
     }
 
-    public void setChecksum(String checksum) {
+    public void setChecksum(ChunkId checksum) {
         this.checksum = checksum;
     }
 
+    /**
+     * @return true if the chunk is all zero bytes, which is never stored
+     */
+    public boolean isZero() {
+        return checksum != null && checksum.isZeroChunk();
+    }
+
     public long getOffset() {
         return offset;
     }
@@ -0,0 +1,12 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.IOException;
+
+/**
+ * Receives the chunks of a file one by one, in offset order, as soon as their checksums are ready.
+ */
+@FunctionalInterface
+public interface ChunkConsumer {
+
+    void accept(Chunk chunk) throws IOException;
+}
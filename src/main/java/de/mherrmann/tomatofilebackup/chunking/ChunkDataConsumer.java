@@ -0,0 +1,18 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the chunks of a file together with their bytes, one by one, in offset order.
+ * The bytes are taken from the buffers the file was chunked from, so they are only valid during the call.
+ */
+@FunctionalInterface
+public interface ChunkDataConsumer {
+
+    /**
+     * @param chunk - the chunk, its checksum is set
+     * @param data - the bytes of the chunk, from position to limit; must not be kept after the call returns
+     */
+    void accept(Chunk chunk, ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,52 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The hash functions chunk ids are computed with. A repository records the function it was created with;
+ * chunks only deduplicate against chunks hashed with the same one.
+ */
+public enum ChunkHashAlgorithm implements ChunkHasher {
+    /** MurmurHash3 x64 128. Default for existing repositories. */
+    MURMUR3_128 {
+        @Override
+        public ChunkId hash(byte[] bytes, int start, int length) {
+            return ChecksumEngine.getChunkChecksum(bytes, start, length);
+        }
+
+        @Override
+        public ChunkId hash(ByteBuffer buffer, int start, int length) {
+            return ChecksumEngine.getChunkChecksum(buffer, start, length);
+        }
+    },
+    /** XXH3 128, the fastest choice. Like MurmurHash3 not meant to withstand deliberate collisions. */
+    XXH3_128 {
+        @Override
+        public ChunkId hash(byte[] bytes, int start, int length) {
+            return Xxh3.hash128(bytes, start, length);
+        }
+
+        @Override
+        public ChunkId hash(ByteBuffer buffer, int start, int length) {
+            return Xxh3.hash128(buffer, start, length);
+        }
+    },
+    /**
+     * SHA-256, truncated to 128 bits to fit {@link ChunkId}. Unlike the others no collision can be derived from the
+     * function itself, but a birthday search finds one in about 2^64 hashes; not collision resistant against
+     * a well-funded attacker.
+     */
+    SHA_256 {
+        private final ChunkHasher hasher = new Sha256Hasher();
+
+        @Override
+        public ChunkId hash(byte[] bytes, int start, int length) {
+            return hasher.hash(bytes, start, length);
+        }
+
+        @Override
+        public ChunkId hash(ByteBuffer buffer, int start, int length) {
+            return hasher.hash(buffer, start, length);
+        }
+    }
+}
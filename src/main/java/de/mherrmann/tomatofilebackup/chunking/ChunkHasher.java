@@ -0,0 +1,23 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the 128 bit id of a chunk from its bytes. Implementations must be thread-safe,
+ * since the checksum workers of all chunking sessions share them.
+ */
+public interface ChunkHasher {
+
+    /**
+     * @param bytes - the byte array where the chunk bytes are in
+     * @param start - start at index <code>start</code>
+     * @param length - use <code>length</code> bytes beginning at <code>start</code>
+     */
+    ChunkId hash(byte[] bytes, int start, int length);
+
+    /**
+     * Same as {@link #hash(byte[], int, int)} for heap, direct and memory-mapped buffers.
+     * @param start - absolute index in <code>buffer</code>; position and limit are ignored
+     */
+    ChunkId hash(ByteBuffer buffer, int start, int length);
+}
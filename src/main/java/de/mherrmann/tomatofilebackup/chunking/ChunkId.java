@@ -0,0 +1,136 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+/**
+ * The 128 bit checksum which identifies a chunk. Kept as two longs everywhere and stored as a 16 byte BLOB;
+ * the upper-case hex form is only built for chunk file names and output.
+ */
+public final class ChunkId {
+
+    public static final int BYTES = 16;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    /// Upper half of the ids of all-zero chunks ("ZEROCHNK"), the lower half is the chunk length.
+    private static final long ZERO_CHUNK_HIGH = 0x5A45524F43484E4BL;
+
+    private final long high;
+    private final long low;
+
+    public ChunkId(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param hex - 32 hex digits, upper or lower case
+     * @throws IllegalArgumentException if <code>hex</code> is not 32 hex digits
+     */
+    public static ChunkId fromHex(String hex){
+        if(hex.length() != 2*BYTES){
+            throw new IllegalArgumentException("Chunk id must be " + 2*BYTES + " hex digits: " + hex);
+        }
+        return new ChunkId(parseHex(hex, 0), parseHex(hex, BYTES));
+    }
+
+    /**
+     * @param bytes - 16 bytes, big-endian
+     * @throws IllegalArgumentException if <code>bytes</code> is not 16 bytes long
+     */
+    public static ChunkId fromBytes(byte[] bytes){
+        if(bytes == null || bytes.length != BYTES){
+            throw new IllegalArgumentException("Chunk id must be " + BYTES + " bytes");
+        }
+        return new ChunkId(readLong(bytes, 0), readLong(bytes, Long.BYTES));
+    }
+
+    /**
+     * @return the id of a chunk of <code>length</code> zero bytes. Such chunks are not hashed and not stored;
+     *         they are restored as holes.
+     */
+    public static ChunkId forZeroChunk(int length){
+        return new ChunkId(ZERO_CHUNK_HIGH, length);
+    }
+
+    public boolean isZeroChunk(){
+        return high == ZERO_CHUNK_HIGH && low >= 0 && low <= Integer.MAX_VALUE;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * @return the id as 16 bytes, big-endian, so the byte order sorts like the hex form
+     */
+    public byte[] toBytes(){
+        byte[] bytes = new byte[BYTES];
+        writeLong(bytes, 0, high);
+        writeLong(bytes, Long.BYTES, low);
+        return bytes;
+    }
+
+    /**
+     * @return the id as 32 upper-case hex digits
+     */
+    public String toHex(){
+        char[] hex = new char[2*BYTES];
+        writeHex(hex, 0, high);
+        writeHex(hex, BYTES, low);
+        return new String(hex);
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(!(other instanceof ChunkId)){
+            return false;
+        }
+        return high == ((ChunkId) other).high && low == ((ChunkId) other).low;
+    }
+
+    @Override
+    public int hashCode(){
+        return Long.hashCode(high ^ low);
+    }
+
+    @Override
+    public String toString(){
+        return toHex();
+    }
+
+    private static long parseHex(String hex, int start){
+        long value = 0;
+        for(int i = start; i < start + BYTES; i++){
+            int digit = Character.digit(hex.charAt(i), 16);
+            if(digit < 0){
+                throw new IllegalArgumentException("Chunk id must be hex digits only: " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static void writeHex(char[] hex, int start, long value){
+        for(int i = start + BYTES - 1; i >= start; i--){
+            hex[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+
+    private static long readLong(byte[] bytes, int start){
+        long value = 0;
+        for(int i = start; i < start + Long.BYTES; i++){
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int start, long value){
+        for(int i = start + Long.BYTES - 1; i >= start; i--){
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The content defined chunking variants. They cut at different boundaries, so a repository records
+ * the variant it was created with and every engine chunking into it has to use the same one.
+ */
+public enum ChunkingAlgorithm {
+    /** Right-shift gear hash, one byte per iteration (ronomon/deduplication). Default for existing repositories. */
+    FASTCDC_2016(false) {
+        @Override
+        FastCDC createChunker(ByteBuffer source, int minSize, int avgSize, int maxSize, int normalizationLevel) {
+            return new FastCDC(source, minSize, avgSize, maxSize);
+        }
+    },
+    /** Left-shift gear hash, two bytes per iteration. */
+    FASTCDC_2020(false) {
+        @Override
+        FastCDC createChunker(ByteBuffer source, int minSize, int avgSize, int maxSize, int normalizationLevel) {
+            return new FastCDC2020(source, minSize, avgSize, maxSize);
+        }
+    },
+    /** Left-shift 64 bit gear hash, two bytes per iteration, configurable normalization level. */
+    FASTCDC_64(true) {
+        @Override
+        FastCDC createChunker(ByteBuffer source, int minSize, int avgSize, int maxSize, int normalizationLevel) {
+            return new FastCDC64(source, minSize, avgSize, maxSize, normalizationLevel);
+        }
+    };
+
+    /// The normalization level of the variants which do not support others.
+    static final int FIXED_NORMALIZATION_LEVEL = 2;
+
+    private final boolean configurableNormalization;
+
+    ChunkingAlgorithm(boolean configurableNormalization){
+        this.configurableNormalization = configurableNormalization;
+    }
+
+    public boolean isNormalizationConfigurable() {
+        return configurableNormalization;
+    }
+
+    abstract FastCDC createChunker(ByteBuffer source, int minSize, int avgSize, int maxSize, int normalizationLevel);
+}
@@ -1,11 +1,19 @@
 package de.mherrmann.tomatofilebackup.chunking;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe chunking service. Every file is chunked in its own {@link ChunkingSession}, so one engine can
+ * chunk many files at once. All sessions of an engine share the checksum workers and one memory budget
+ * for their portion buffers.
+ */
 public class ChunkingEngine {
 
     private static final int KB = 1024;
@@ -14,156 +22,164 @@ public class ChunkingEngine {
     static final int MIN_CHUNK_SIZE = 512*KB;
     static final int AVG_CHUNK_SIZE = MB;
     static final int MAX_CHUNK_SIZE = 8*MB;
-
-    private RandomAccessFile randomAccessFile;
-    private long fileProcessed;
-    private long chunkingProcessed;
-    private final AtomicLong processedChecksums;
-    private final AtomicLong chunkCount;
-    private final AtomicBoolean finished;
-    private List<Chunk> chunks;
-
-    private byte[] previousPortion;
-    private int previousPortionReuse;
+    public static final int DEFAULT_MAPPED_WINDOW_SIZE = 64*MB;
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+    private static final int READERS = Runtime.getRuntime().availableProcessors();
+    /// Chunks the files of {@link #getChunks(Collection)}, shared by all engines like the checksum workers.
+    private static final ExecutorService FILE_READERS = Executors.newFixedThreadPool(READERS, new FileReaderThreadFactory());
+
+    private final ChecksumPool checksumPool;
+    private final MemoryBudget memoryBudget;
+    private final PortionPool portionPool;
+    private final ChunkingParameters parameters;
+    private final ReadAheadStats readAheadStats = new ReadAheadStats();
+    private volatile int mappedWindowSize;
+    private volatile int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
 
     public ChunkingEngine(){
-        processedChecksums = new AtomicLong(0);
-        chunkCount = new AtomicLong(-1);
-        finished = new AtomicBoolean(false);
+        this(ChunkingParameters.DEFAULT);
     }
 
-    public List<Chunk> getChunks(File file) throws IOException {
-        randomAccessFile = new RandomAccessFile(file, "r");
-        init();
-        chunks = new ArrayList<>();
-        long length = file.length();
-        if(length <= MIN_CHUNK_SIZE){
-            findChunksForSmallSizeFile((int)length);
-        } else if(length <= PORTION){
-            findChunksForMediumSizeFile((int)length);
-        } else {
-            findChunksForLargeSizeFile();
-        }
-        waitForChecksums();
-        return chunks;
+    public ChunkingEngine(ChunkingParameters parameters){
+        this(parameters, Runtime.getRuntime().maxMemory() / 2);
     }
 
-    private void init() {
-        fileProcessed = 0;
-        chunkingProcessed = 0;
-        processedChecksums.set(0);
-        chunkCount.set(-1);
-        finished.set(false);
-        previousPortion = new byte[]{};
-        previousPortionReuse = 0;
+    public ChunkingEngine(long memoryBudget){
+        this(ChunkingParameters.DEFAULT, memoryBudget);
     }
 
-    private void findChunksForSmallSizeFile(int length) throws IOException {
-        Chunk chunk = new Chunk(0, length);
-        byte[] source = getNextFilePartArrayForMediumSizeFile(randomAccessFile, length);
-        addChunk(chunk, source, true);
+    /**
+     * @param parameters - the chunking parameters of the repository the chunks go to
+     * @param memoryBudget - how many bytes the portion buffers of all running sessions may take together
+     */
+    public ChunkingEngine(ChunkingParameters parameters, long memoryBudget){
+        this.checksumPool = ChecksumPool.getShared();
+        this.memoryBudget = new MemoryBudget(memoryBudget);
+        this.portionPool = new PortionPool(this.memoryBudget, parameters.getPortionSize() + parameters.getMaxSize());
+        this.parameters = parameters;
     }
 
-    private void findChunksForMediumSizeFile(int length) throws IOException {
-        byte[] source = getNextFilePartArrayForMediumSizeFile(randomAccessFile, length);
-        processForMediumSizeFile(source);
+    /**
+     * Switches to memory-mapped chunking. Files larger than the minimum chunk size are walked through
+     * <code>FileChannel.map</code> windows instead of being read into heap portions.
+     * Each window starts at the end of the last chunk of the previous one, so no bytes are copied.
+     * @param windowSize - how many bytes are mapped at a time; at least twice the maximum chunk size
+     */
+    public void enableMemoryMapping(int windowSize){
+        long minimumWindowSize = 2L*parameters.getMaxSize();
+        if(windowSize < minimumWindowSize){
+            throw new IllegalArgumentException("Mapped window size must be at least " + minimumWindowSize + " bytes");
+        }
+        this.mappedWindowSize = windowSize;
     }
 
-    private void findChunksForLargeSizeFile() throws IOException {
-        boolean lastChunk = false;
-        while (!lastChunk){
-            lastChunk = processNextPortion();
+    /**
+     * Sets how many portions of a large file are read ahead while the current one is chunked and hashed.
+     * Every portion read ahead takes a portion buffer from the memory budget. 0 reads each portion on demand.
+     * @param prefetchDepth - the number of portions to read ahead, default {@value #DEFAULT_PREFETCH_DEPTH}
+     */
+    public void setPrefetchDepth(int prefetchDepth){
+        if(prefetchDepth < 0){
+            throw new IllegalArgumentException("Prefetch depth must not be negative: " + prefetchDepth);
         }
+        this.prefetchDepth = prefetchDepth;
     }
 
-    private boolean processNextPortion() throws IOException {
-        byte[] source = getNextFilePartArrayForLargeSizeFile();
-        if(source.length == 0){
-            return true;
-        }
-        boolean lastPortion = randomAccessFile.length() == fileProcessed;
-        processForLargeSizeFilePortion(source, lastPortion);
-        return lastPortion;
+    /**
+     * @return the time the sessions of this engine spent waiting on reads versus on chunking and hashing
+     */
+    public ReadAheadStats getReadAheadStats(){
+        return readAheadStats;
     }
 
-    private void processForMediumSizeFile(byte[] source){
-        FastCDC fastCDC = new FastCDC(source, MIN_CHUNK_SIZE, AVG_CHUNK_SIZE, MAX_CHUNK_SIZE);
-        while(fastCDC.hasNext()){
-            Chunk chunk = fastCDC.next();
-            addChunk(chunk, source, true);
-        }
+    public List<Chunk> getChunks(File file) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        streamChunks(file, chunks::add);
+        return chunks;
     }
 
-    private void processForLargeSizeFilePortion(byte[] source, boolean lastPortion){
-        FastCDC fastCDC = new FastCDC(source, MIN_CHUNK_SIZE, AVG_CHUNK_SIZE, MAX_CHUNK_SIZE);
-        while(fastCDC.hasNext()){
-            Chunk chunk = fastCDC.next();
-            long processedFromPortion = chunk.getOffset()+chunk.getLength();
-            long remaining = source.length - processedFromPortion;
-            addChunk(chunk, source, lastPortion && !fastCDC.hasNext());
-            if(remaining < MAX_CHUNK_SIZE && !lastPortion){
-                previousPortion = source;
-                previousPortionReuse = (int) (source.length-processedFromPortion);
-                chunkingProcessed += processedFromPortion;
-                break;
+    /**
+     * Chunks all <code>files</code> in parallel, one session per file.
+     * @return the chunks of every file, in the iteration order of <code>files</code>
+     * @throws IOException if chunking any of the files fails
+     */
+    public Map<File, List<Chunk>> getChunks(Collection<File> files) throws IOException {
+        Map<File, List<Chunk>> chunksByFile = new LinkedHashMap<>();
+        if(files.isEmpty()){
+            return chunksByFile;
+        }
+        Map<File, Future<List<Chunk>>> tasks = new LinkedHashMap<>();
+        try {
+            for(File file : files){
+                tasks.put(file, FILE_READERS.submit(() -> getChunks(file)));
+            }
+            for(Map.Entry<File, Future<List<Chunk>>> task : tasks.entrySet()){
+                chunksByFile.put(task.getKey(), task.getValue().get());
+            }
+        } catch(ExecutionException exception){
+            throw new IOException("Error while chunking files", exception.getCause());
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while chunking files");
+        } finally {
+            for(Future<List<Chunk>> task : tasks.values()){
+                task.cancel(true);
             }
         }
+        return chunksByFile;
     }
 
-    private byte[] getNextFilePartArrayForLargeSizeFile() throws IOException {
-        long remaining = randomAccessFile.length() - fileProcessed;
-        int nextPortionSize = (int)Math.min(PORTION, remaining);
-        byte[] bytes = new byte[nextPortionSize + previousPortionReuse];
-        if(previousPortionReuse > 0){
-            System.arraycopy(previousPortion, previousPortion.length-previousPortionReuse, bytes, 0, previousPortionReuse);
-        }
-        randomAccessFile.read(bytes, previousPortionReuse, nextPortionSize);
-        fileProcessed += nextPortionSize;
-        return bytes;
+    /**
+     * Chunks <code>file</code> and hands every chunk to <code>consumer</code> as soon as its checksum is ready.
+     * Chunks are emitted in offset order on the calling thread, while chunking of the rest of the file goes on.
+     * @param file - the file to chunk
+     * @param consumer - receives the chunks
+     * @throws IOException if reading or hashing fails, or the consumer throws
+     */
+    public void streamChunks(File file, ChunkConsumer consumer) throws IOException {
+        streamChunkData(file, (chunk, data) -> consumer.accept(chunk));
     }
 
-    private byte[] getNextFilePartArrayForMediumSizeFile(RandomAccessFile file, int length) throws IOException {
-        byte[] bytes = new byte[length];
-        file.read(bytes);
-        return bytes;
+    /**
+     * Like {@link #streamChunks(File, ChunkConsumer)}, but hands out the bytes of every chunk too, straight from
+     * the buffers the file is chunked from. Storing chunks this way reads every byte of the file only once.
+     * @param file - the file to chunk
+     * @param consumer - receives the chunks and their bytes
+     * @throws IOException if reading or hashing fails, or the consumer throws
+     */
+    public void streamChunkData(File file, ChunkDataConsumer consumer) throws IOException {
+        try (
+                ChunkingSession session = new ChunkingSession(file, consumer, checksumPool, memoryBudget, portionPool,
+                        mappedWindowSize, prefetchDepth, readAheadStats, parameters)
+        ){
+            session.run();
+        }
     }
 
-    private void addChunk(Chunk chunk, byte[] source, boolean lastChunk){
-        chunks.add(chunk);
-        if(lastChunk){
-            chunkCount.set(chunks.size());
-        }
-        setChecksum(source, chunk);
-        chunk.addProcessedOffset(chunkingProcessed);
+    /**
+     * Hands the idle portion buffers, which are kept for the next large file, back to the memory budget.
+     * Useful when the engine is kept but will not chunk for a while.
+     */
+    public void releaseBuffers(){
+        portionPool.trim();
     }
 
-    private void setChecksum(byte[] bytes, Chunk chunk){
-        int start = (int)chunk.getOffset();
-        int length = chunk.getLength();
-        Thread thread = new Thread(() -> setChecksumInSubThread(bytes, start, length, chunk));
-        thread.start();
+    long getAvailableMemoryBudget(){
+        return memoryBudget.getAvailableBytes();
     }
 
-    private void setChecksumInSubThread(byte[] bytes, int start, int length, Chunk chunk){
-        chunk.setChecksum(ChecksumEngine.getChunkChecksum(bytes, start, length));
-        long finishedChecksums = this.processedChecksums.incrementAndGet();
-        if(finishedChecksums == chunkCount.get()){
-            synchronized (finished){
-                finished.set(true);
-                finished.notifyAll();
-            }
-        }
+    int getIdleBufferCount(){
+        return portionPool.getIdleBufferCount();
     }
 
-    private void waitForChecksums() {
-        try {
-            synchronized(finished) {
-                while(!finished.get()){
-                    finished.wait();
-                }
-            }
-        } catch(InterruptedException ignored){
-            Thread.currentThread().interrupt();
+    private static class FileReaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "tfb-file-reader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
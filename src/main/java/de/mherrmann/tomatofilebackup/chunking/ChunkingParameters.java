@@ -0,0 +1,117 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Everything which decides where chunk boundaries are and how chunks are identified. Recorded per repository;
+ * chunks only deduplicate against chunks cut and hashed with equal parameters.
+ */
+public class ChunkingParameters {
+
+    /// Largest acceptable portion size. Portions plus the carried over tail of the previous one are single arrays.
+    static final int PORTION_MAX = 1_073_741_824;
+
+    public static final ChunkingParameters DEFAULT =
+            new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, ChunkingAlgorithm.FIXED_NORMALIZATION_LEVEL);
+
+    private final ChunkingAlgorithm algorithm;
+    private final int normalizationLevel;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final int portionSize;
+    private final ChunkHashAlgorithm hashAlgorithm;
+
+    public ChunkingParameters(ChunkingAlgorithm algorithm, int normalizationLevel) {
+        this(algorithm, normalizationLevel, ChunkingEngine.MIN_CHUNK_SIZE, ChunkingEngine.AVG_CHUNK_SIZE,
+                ChunkingEngine.MAX_CHUNK_SIZE, ChunkingEngine.PORTION);
+    }
+
+    /**
+     * @param algorithm - the chunking variant
+     * @param normalizationLevel - 1 to 3 if the algorithm supports it, otherwise 2
+     * @param minSize - the minimum chunk size in bytes
+     * @param avgSize - the average chunk size in bytes, between minimum and maximum
+     * @param maxSize - the maximum chunk size in bytes
+     * @param portionSize - how many bytes of a large file are read at a time; at least twice the maximum chunk size
+     * @throws IllegalArgumentException if any of the values is out of its bounds
+     */
+    public ChunkingParameters(ChunkingAlgorithm algorithm, int normalizationLevel,
+                              int minSize, int avgSize, int maxSize, int portionSize) {
+        this(algorithm, normalizationLevel, minSize, avgSize, maxSize, portionSize, ChunkHashAlgorithm.MURMUR3_128);
+    }
+
+    /**
+     * @param hashAlgorithm - the hash function chunk ids are computed with
+     * @see #ChunkingParameters(ChunkingAlgorithm, int, int, int, int, int)
+     */
+    public ChunkingParameters(ChunkingAlgorithm algorithm, int normalizationLevel,
+                              int minSize, int avgSize, int maxSize, int portionSize, ChunkHashAlgorithm hashAlgorithm) {
+        validateNormalizationLevel(algorithm, normalizationLevel);
+        validateSize("Minimum chunk size", minSize, FastCDC.MINIMUM_MIN, FastCDC.MINIMUM_MAX);
+        validateSize("Average chunk size", avgSize, FastCDC.AVERAGE_MIN, FastCDC.AVERAGE_MAX);
+        validateSize("Maximum chunk size", maxSize, FastCDC.MAXIMUM_MIN, FastCDC.MAXIMUM_MAX);
+        validateSize("Portion size", portionSize, 2L*maxSize, PORTION_MAX);
+        if(minSize >= avgSize || avgSize >= maxSize){
+            throw new IllegalArgumentException("Chunk sizes must grow from minimum over average to maximum: " +
+                    minSize + ", " + avgSize + ", " + maxSize);
+        }
+        this.algorithm = algorithm;
+        this.normalizationLevel = normalizationLevel;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        this.portionSize = portionSize;
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    public ChunkingAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getNormalizationLevel() {
+        return normalizationLevel;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getPortionSize() {
+        return portionSize;
+    }
+
+    public ChunkHashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    FastCDC createChunker(ByteBuffer source){
+        return algorithm.createChunker(source, minSize, avgSize, maxSize, normalizationLevel);
+    }
+
+    private static void validateNormalizationLevel(ChunkingAlgorithm algorithm, int normalizationLevel){
+        if(algorithm.isNormalizationConfigurable()){
+            if(normalizationLevel < FastCDC64.MIN_NORMALIZATION_LEVEL || normalizationLevel > FastCDC64.MAX_NORMALIZATION_LEVEL){
+                throw new IllegalArgumentException("Normalization level must be between " + FastCDC64.MIN_NORMALIZATION_LEVEL +
+                        " and " + FastCDC64.MAX_NORMALIZATION_LEVEL + ": " + normalizationLevel);
+            }
+        } else if(normalizationLevel != ChunkingAlgorithm.FIXED_NORMALIZATION_LEVEL){
+            throw new IllegalArgumentException("Normalization level of " + algorithm + " is fixed to " +
+                    ChunkingAlgorithm.FIXED_NORMALIZATION_LEVEL + ": " + normalizationLevel);
+        }
+    }
+
+    private static void validateSize(String name, long size, long min, long max){
+        if(size < min || size > max){
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max + " bytes: " + size);
+        }
+    }
+}
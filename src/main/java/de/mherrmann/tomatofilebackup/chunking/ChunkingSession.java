@@ -0,0 +1,383 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Holds the state of chunking one file. A session is used by one thread only and must be closed,
+ * which closes the file and hands its portion buffers back to the memory budget.
+ */
+class ChunkingSession implements Closeable {
+
+    private static final int MAX_PENDING_CHUNKS = 64;
+    /// How long to wait for the budget before dropping idle pooled buffers again.
+    private static final long BUDGET_RETRY_MILLIS = 50;
+
+    private final RandomAccessFile randomAccessFile;
+    private final long length;
+    private final ChunkDataConsumer consumer;
+    private final ChecksumPool checksumPool;
+    private final MemoryBudget memoryBudget;
+    private final PortionPool portionPool;
+    private final int mappedWindowSize;
+    private final int prefetchDepth;
+    private final ReadAheadStats readAheadStats;
+    private final ChunkingParameters parameters;
+    private final Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+
+    private long chunkingProcessed;
+    private byte[] portionBytes = new byte[]{};
+    private int portionStart;
+    private int portionEnd;
+    private int previousPortionReuse;
+    private byte[] tailBuffer;
+    private Portion currentPortion;
+    private PortionReader portionReader;
+
+    /**
+     * @param mappedWindowSize - size of the memory-mapped windows, or 0 to read the file into heap portions
+     * @param prefetchDepth - how many portions of a large file are read ahead of the one being chunked
+     */
+    ChunkingSession(File file, ChunkDataConsumer consumer, ChecksumPool checksumPool, MemoryBudget memoryBudget,
+                    PortionPool portionPool, int mappedWindowSize, int prefetchDepth, ReadAheadStats readAheadStats,
+                    ChunkingParameters parameters) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.length = randomAccessFile.length();
+        this.consumer = consumer;
+        this.checksumPool = checksumPool;
+        this.memoryBudget = memoryBudget;
+        this.portionPool = portionPool;
+        this.mappedWindowSize = mappedWindowSize;
+        this.prefetchDepth = prefetchDepth;
+        this.readAheadStats = readAheadStats;
+        this.parameters = parameters;
+    }
+
+    void run() throws IOException {
+        if(length <= parameters.getMinSize()){
+            findChunksForSmallSizeFile((int)length);
+        } else if(mappedWindowSize > 0){
+            findChunksByMemoryMapping();
+        } else if(length <= parameters.getPortionSize()){
+            findChunksForMediumSizeFile((int)length);
+        } else {
+            findChunksForLargeSizeFile();
+        }
+        emitAllChunks();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(PendingChunk pendingChunk : pendingChunks){
+            awaitQuietly(pendingChunk.checksumTask);
+            pendingChunk.portion.chunkDone();
+        }
+        pendingChunks.clear();
+        if(currentPortion != null){
+            currentPortion.seal();
+        }
+        if(portionReader != null){
+            portionReader.close();
+        }
+        randomAccessFile.close();
+    }
+
+    private void findChunksForSmallSizeFile(int length) throws IOException {
+        Chunk chunk = new Chunk(0, length);
+        byte[] source = readWholeFile(length);
+        addChunk(chunk, ByteBuffer.wrap(source));
+        currentPortion.seal();
+    }
+
+    private void findChunksForMediumSizeFile(int length) throws IOException {
+        byte[] source = readWholeFile(length);
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+        FastCDC fastCDC = createChunker(buffer);
+        while(fastCDC.hasNext()){
+            Chunk chunk = fastCDC.next();
+            addChunk(chunk, buffer);
+        }
+        currentPortion.seal();
+    }
+
+    private void findChunksForLargeSizeFile() throws IOException {
+        portionReader = new PortionReader(randomAccessFile, length, portionPool, parameters.getPortionSize(),
+                parameters.getMaxSize(), prefetchDepth, readAheadStats);
+        boolean lastChunk = false;
+        while (!lastChunk){
+            lastChunk = processNextPortion();
+        }
+    }
+
+    private void findChunksByMemoryMapping() throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
+        boolean lastWindow = false;
+        while(!lastWindow){
+            long windowLength = Math.min(mappedWindowSize, length - chunkingProcessed);
+            lastWindow = chunkingProcessed + windowLength == length;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, chunkingProcessed, windowLength);
+            processWindow(window, lastWindow);
+        }
+    }
+
+    private void processWindow(ByteBuffer window, boolean lastWindow) throws IOException {
+        currentPortion = new Portion(null);
+        FastCDC fastCDC = createChunker(window);
+        long processedFromWindow = 0;
+        while(fastCDC.hasNext()){
+            Chunk chunk = fastCDC.next();
+            processedFromWindow = chunk.getOffset()+chunk.getLength();
+            addChunk(chunk, window);
+            if(!lastWindow && window.limit() - processedFromWindow < parameters.getMaxSize()){
+                break;
+            }
+        }
+        currentPortion.seal();
+        chunkingProcessed += processedFromWindow;
+    }
+
+    private boolean processNextPortion() throws IOException {
+        PortionReader.Filled filled = readNextPortion();
+        boolean lastPortion = filled.isLast();
+        int portionLength = previousPortionReuse + filled.getSize();
+        processForLargeSizeFilePortion(ByteBuffer.wrap(portionBytes, portionStart, portionLength).slice(), lastPortion);
+        if(lastPortion){
+            // otherwise the portion is sealed once its tail is carried over to the next one
+            currentPortion.seal();
+        }
+        return lastPortion;
+    }
+
+    private void processForLargeSizeFilePortion(ByteBuffer buffer, boolean lastPortion) throws IOException {
+        FastCDC fastCDC = createChunker(buffer);
+        while(fastCDC.hasNext()){
+            Chunk chunk = fastCDC.next();
+            long processedFromPortion = chunk.getOffset()+chunk.getLength();
+            long remaining = buffer.limit() - processedFromPortion;
+            addChunk(chunk, buffer);
+            if(remaining < parameters.getMaxSize() && !lastPortion){
+                portionEnd = buffer.limit();
+                previousPortionReuse = (int) remaining;
+                chunkingProcessed += processedFromPortion;
+                break;
+            }
+        }
+    }
+
+    private FastCDC createChunker(ByteBuffer source){
+        return parameters.createChunker(source);
+    }
+
+    /**
+     * Takes the next portion from the reader and copies the tail of the previous portion right in front of its data.
+     * The previous buffer goes back to the pool once its tail is copied over.
+     * @return the next portion
+     */
+    private PortionReader.Filled readNextPortion() throws IOException {
+        PortionReader.Filled filled = portionReader.next(this::parkTail);
+        int start = portionReader.getDataOffset() - previousPortionReuse;
+        System.arraycopy(portionBytes, portionStart + portionEnd - previousPortionReuse,
+                filled.getBytes(), start, previousPortionReuse);
+        if(currentPortion != null){
+            currentPortion.seal();
+        }
+        currentPortion = new Portion(filled::release);
+        portionBytes = filled.getBytes();
+        portionStart = start;
+        return filled;
+    }
+
+    /**
+     * Copies the tail out of the current portion and hands back everything this session holds,
+     * so the reader can get a buffer even if this session holds the last one.
+     */
+    private void parkTail() throws IOException {
+        if(currentPortion != null){
+            if(tailBuffer == null){
+                tailBuffer = new byte[parameters.getMaxSize()];
+            }
+            System.arraycopy(portionBytes, portionStart + portionEnd - previousPortionReuse,
+                    tailBuffer, 0, previousPortionReuse);
+            portionBytes = tailBuffer;
+            portionStart = 0;
+            portionEnd = previousPortionReuse;
+            currentPortion.seal();
+        }
+        emitAllChunks();
+    }
+
+    private byte[] readWholeFile(int length) throws IOException {
+        byte[] bytes = allocatePortion(length);
+        randomAccessFile.readFully(bytes);
+        return bytes;
+    }
+
+    private byte[] allocatePortion(int size) throws IOException {
+        MemoryBudget.Lease lease = memoryBudget.tryAcquire(size);
+        if(lease == null){
+            // hand back everything this session holds before blocking, so sessions can not wait for each other
+            emitAllChunks();
+        }
+        while(lease == null){
+            portionPool.trim();
+            lease = memoryBudget.tryAcquire(size, BUDGET_RETRY_MILLIS);
+        }
+        currentPortion = new Portion(lease::release);
+        return new byte[size];
+    }
+
+    private void addChunk(Chunk chunk, ByteBuffer source) throws IOException {
+        int start = (int)chunk.getOffset();
+        chunk.addProcessedOffset(chunkingProcessed);
+        currentPortion.chunkAdded();
+        pendingChunks.add(new PendingChunk(chunk, source, start, currentPortion, setChecksum(source, start, chunk)));
+        emitCompletedChunks();
+    }
+
+    private Future<?> setChecksum(ByteBuffer bytes, int start, Chunk chunk) throws IOException {
+        int length = chunk.getLength();
+        if(isZero(bytes, start, length)){
+            chunk.setChecksum(ChunkId.forZeroChunk(length));
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return checksumPool.submit(() -> chunk.setChecksum(parameters.getHashAlgorithm().hash(bytes, start, length)));
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free checksum worker");
+        }
+    }
+
+    /**
+     * Checks 8 bytes at a time, so chunks with data are told apart after the first word.
+     */
+    private static boolean isZero(ByteBuffer bytes, int start, int length){
+        int end = start + length;
+        int index = start;
+        for(; index + Long.BYTES <= end; index += Long.BYTES){
+            if(bytes.getLong(index) != 0){
+                return false;
+            }
+        }
+        for(; index < end; index++){
+            if(bytes.get(index) != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void emitCompletedChunks() throws IOException {
+        while(!pendingChunks.isEmpty()){
+            PendingChunk head = pendingChunks.peek();
+            if(!head.checksumTask.isDone() && pendingChunks.size() < MAX_PENDING_CHUNKS){
+                return;
+            }
+            emitNextChunk();
+        }
+    }
+
+    private void emitAllChunks() throws IOException {
+        while(!pendingChunks.isEmpty()){
+            emitNextChunk();
+        }
+    }
+
+    private void emitNextChunk() throws IOException {
+        PendingChunk head = pendingChunks.peek();
+        try {
+            head.checksumTask.get();
+        } catch(ExecutionException exception){
+            throw new IOException("Error while creating chunk checksum", exception.getCause());
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for chunk checksums");
+        }
+        pendingChunks.poll();
+        try {
+            consumer.accept(head.chunk, head.getData());
+        } finally {
+            head.portion.chunkDone();
+        }
+    }
+
+    private static void awaitQuietly(Future<?> task){
+        try {
+            task.get();
+        } catch (ExecutionException ignored) {
+            // the failure was already reported or the session is given up anyway
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A buffer the chunks of one portion are hashed from. The buffer is released as soon as
+     * no more chunks are cut from it and all checksums on it are done.
+     */
+    private static class Portion {
+        private final Runnable release;
+        private int pendingChunks;
+        private boolean sealed;
+        private boolean released;
+
+        /**
+         * @param release - hands the buffer back, or null if there is nothing to hand back
+         */
+        private Portion(Runnable release){
+            this.release = release;
+        }
+
+        private void chunkAdded(){
+            pendingChunks++;
+        }
+
+        private void chunkDone(){
+            pendingChunks--;
+            releaseIfDone();
+        }
+
+        private void seal(){
+            sealed = true;
+            releaseIfDone();
+        }
+
+        private void releaseIfDone(){
+            if(sealed && pendingChunks == 0 && !released){
+                released = true;
+                if(release != null){
+                    release.run();
+                }
+            }
+        }
+    }
+
+    private static class PendingChunk {
+        private final Chunk chunk;
+        private final ByteBuffer source;
+        private final int start;
+        private final Portion portion;
+        private final Future<?> checksumTask;
+
+        private PendingChunk(Chunk chunk, ByteBuffer source, int start, Portion portion, Future<?> checksumTask) {
+            this.chunk = chunk;
+            this.source = source;
+            this.start = start;
+            this.portion = portion;
+            this.checksumTask = checksumTask;
+        }
+
+        private ByteBuffer getData(){
+            ByteBuffer data = source.duplicate();
+            data.limit(start + chunk.getLength()).position(start);
+            return data.slice();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package de.mherrmann.tomatofilebackup.chunking;
 
+import java.nio.ByteBuffer;
+
 class FastCDC {
 
-    private static final int[] GEAR = {
+    static final int[] GEAR = {
             1553318008, 574654857, 759734804, 310648967, 1393527547, 1195718329,
             694400241, 1154184075, 1319583805, 1298164590, 122602963, 989043992,
             1918895050, 933636724, 1369634190, 1963341198, 1565176104, 1296753019,
@@ -49,28 +51,36 @@ class FastCDC {
     };
 
     /// Smallest acceptable value for the minimum chunk size.
-    private static final long MINIMUM_MIN = 64;
+    static final long MINIMUM_MIN = 64;
     /// Largest acceptable value for the minimum chunk size.
-    private static final long MINIMUM_MAX = 67_108_864;
+    static final long MINIMUM_MAX = 67_108_864;
     /// Smallest acceptable value for the average chunk size.
-    private static final long AVERAGE_MIN = 256;
+    static final long AVERAGE_MIN = 256;
     /// Largest acceptable value for the average chunk size.
-    private static final long AVERAGE_MAX = 268_435_456;
+    static final long AVERAGE_MAX = 268_435_456;
     /// Smallest acceptable value for the maximum chunk size.
-    private static final long MAXIMUM_MIN = 1024;
+    static final long MAXIMUM_MIN = 1024;
     /// Largest acceptable value for the maximum chunk size.
-    private static final long MAXIMUM_MAX = 1_073_741_824;
+    static final long MAXIMUM_MAX = 1_073_741_824;
 
-    private final byte[] source;
-    private int bytesProcessed;
+    final ByteBuffer source;
+    int bytesProcessed;
     private int bytesRemaining;
-    private final int minSize;
-    private final int avgSize;
-    private final int maxSize;
+    final int minSize;
+    final int avgSize;
+    final int maxSize;
     private final long maskS;
     private final long maskL;
 
     FastCDC(byte[] source, int minSize, int avgSize, int maxSize) {
+        this(ByteBuffer.wrap(source), minSize, avgSize, maxSize);
+    }
+
+    /**
+     * Chunks the bytes between index 0 and the limit of <code>source</code>.
+     * Works on heap, direct and memory-mapped buffers; chunk offsets are relative to index 0.
+     */
+    FastCDC(ByteBuffer source, int minSize, int avgSize, int maxSize) {
         assert (minSize >= MINIMUM_MIN);
         assert (minSize <= MINIMUM_MAX);
         assert (avgSize >= AVERAGE_MIN);
@@ -80,7 +90,7 @@ class FastCDC {
 
         this.source = source;
         this.bytesProcessed = 0;
-        this.bytesRemaining = source.length;
+        this.bytesRemaining = source.limit();
         this.minSize = minSize;
         this.avgSize = avgSize;
         this.maxSize = maxSize;
@@ -104,7 +114,7 @@ class FastCDC {
         }
     }
 
-    private int cut(int totalSizeThreshold, int avgSizeThreshold) {
+    int cut(int totalSizeThreshold, int avgSizeThreshold) {
         if(totalSizeThreshold > minSize){
             if(totalSizeThreshold >= maxSize){
                 totalSizeThreshold = maxSize;
@@ -114,13 +124,13 @@ class FastCDC {
             long fingerprint = 0;
             int size = minSize;
             for(; size < avgSizeThreshold; size++){
-                fingerprint = updateFingerprint(fingerprint, source[size+bytesProcessed]);
+                fingerprint = updateFingerprint(fingerprint, source.get(size+bytesProcessed));
                 if(isBoundary(fingerprint, maskS)){
                     return size;
                 }
             }
             for(; size < totalSizeThreshold; size++){
-                fingerprint = updateFingerprint(fingerprint, source[size+bytesProcessed]);
+                fingerprint = updateFingerprint(fingerprint, source.get(size+bytesProcessed));
                 if(isBoundary(fingerprint, maskL)){
                     return size;
                 }
@@ -138,14 +148,14 @@ class FastCDC {
         return (fingerprint & mask) == 0;
     }
 
-    private static long logarithm2(long value) {
+    static long logarithm2(long value) {
         return Math.round(Math.log(value)/Math.log(2));
     }
 
     private static int mask(int bits) {
         assert(bits >= 1);
         assert(bits <= 31);
-        return (int) (Math.pow(2, bits) - 1);
+        return (1 << bits) - 1;
     }
 
 }
@@ -0,0 +1,187 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FastCDC as described in "The Design of Fast Content-Defined Chunking for Data Deduplication Based Storage
+ * Systems" (2020). The gear fingerprint is shifted to the left and two bytes are rolled per iteration,
+ * using a gear table and masks which are pre-shifted by one bit for the first of the two bytes.
+ * The boundaries are exactly those of a left-shift gear hash which rolls one byte at a time, but they differ
+ * from {@link FastCDC}, which shifts to the right. Repositories record which variant they were chunked with.
+ */
+class FastCDC2020 extends FastCDC {
+
+    /// Number of upper fingerprint bits the mask bits are spread over.
+    private static final int MASK_SPREAD = 48;
+
+    private static final long[] GEAR_LONG = new long[256];
+
+    static {
+        for(int i = 0; i < 256; i++){
+            GEAR_LONG[i] = GEAR[i];
+        }
+    }
+
+    private static final long[] GEAR_LONG_LS = shiftLeft(GEAR_LONG);
+
+    private final long[] gear;
+    private final long[] gearLs;
+    private final long maskS;
+    private final long maskL;
+    private final long maskSLs;
+    private final long maskLLs;
+
+    FastCDC2020(byte[] source, int minSize, int avgSize, int maxSize) {
+        this(ByteBuffer.wrap(source), minSize, avgSize, maxSize);
+    }
+
+    FastCDC2020(ByteBuffer source, int minSize, int avgSize, int maxSize) {
+        this(source, minSize, avgSize, maxSize, GEAR_LONG, GEAR_LONG_LS, 2);
+    }
+
+    /**
+     * @param gear - the gear table
+     * @param gearLs - the gear table, every value shifted left by one bit
+     * @param normalizationLevel - how many bits the masks before and after the average size differ from its logarithm
+     */
+    FastCDC2020(ByteBuffer source, int minSize, int avgSize, int maxSize, long[] gear, long[] gearLs,
+                int normalizationLevel) {
+        super(source, minSize, avgSize, maxSize);
+        this.gear = gear;
+        this.gearLs = gearLs;
+        this.maskS = spreadMask((int) (logarithm2(avgSize) + normalizationLevel));
+        this.maskL = spreadMask((int) (logarithm2(avgSize) - normalizationLevel));
+        this.maskSLs = maskS << 1;
+        this.maskLLs = maskL << 1;
+    }
+
+    @Override
+    int cut(int totalSizeThreshold, int avgSizeThreshold) {
+        if(totalSizeThreshold <= minSize){
+            return totalSizeThreshold;
+        }
+        if(totalSizeThreshold >= maxSize){
+            totalSizeThreshold = maxSize;
+        } else if(totalSizeThreshold <= avgSizeThreshold){
+            avgSizeThreshold = totalSizeThreshold;
+        }
+        if(source.hasArray()){
+            return cut(source.array(), source.arrayOffset() + bytesProcessed, totalSizeThreshold, avgSizeThreshold);
+        }
+        return cut(source, bytesProcessed, totalSizeThreshold, avgSizeThreshold);
+    }
+
+    private int cut(byte[] source, int offset, int totalSizeThreshold, int avgSizeThreshold) {
+        long maskS = this.maskS;
+        long maskSLs = this.maskSLs;
+        long maskL = this.maskL;
+        long maskLLs = this.maskLLs;
+        long[] gear = this.gear;
+        long[] gearLs = this.gearLs;
+        long fingerprint = 0;
+        int index = offset + minSize;
+        int normalEnd = offset + avgSizeThreshold;
+        int end = offset + totalSizeThreshold;
+        for(; index + 1 < normalEnd; index += 2){
+            fingerprint = (fingerprint << 2) + gearLs[source[index] & 0xff];
+            if((fingerprint & maskSLs) == 0){
+                return index - offset;
+            }
+            fingerprint += gear[source[index + 1] & 0xff];
+            if((fingerprint & maskS) == 0){
+                return index + 1 - offset;
+            }
+        }
+        if(index < normalEnd){
+            fingerprint = (fingerprint << 1) + gear[source[index] & 0xff];
+            if((fingerprint & maskS) == 0){
+                return index - offset;
+            }
+            index++;
+        }
+        for(; index + 1 < end; index += 2){
+            fingerprint = (fingerprint << 2) + gearLs[source[index] & 0xff];
+            if((fingerprint & maskLLs) == 0){
+                return index - offset;
+            }
+            fingerprint += gear[source[index + 1] & 0xff];
+            if((fingerprint & maskL) == 0){
+                return index + 1 - offset;
+            }
+        }
+        if(index < end){
+            fingerprint = (fingerprint << 1) + gear[source[index] & 0xff];
+            if((fingerprint & maskL) == 0){
+                return index - offset;
+            }
+        }
+        return totalSizeThreshold;
+    }
+
+    private int cut(ByteBuffer source, int offset, int totalSizeThreshold, int avgSizeThreshold) {
+        long maskS = this.maskS;
+        long maskSLs = this.maskSLs;
+        long maskL = this.maskL;
+        long maskLLs = this.maskLLs;
+        long[] gear = this.gear;
+        long[] gearLs = this.gearLs;
+        long fingerprint = 0;
+        int size = minSize;
+        for(; size + 1 < avgSizeThreshold; size += 2){
+            fingerprint = (fingerprint << 2) + gearLs[source.get(offset + size) & 0xff];
+            if((fingerprint & maskSLs) == 0){
+                return size;
+            }
+            fingerprint += gear[source.get(offset + size + 1) & 0xff];
+            if((fingerprint & maskS) == 0){
+                return size + 1;
+            }
+        }
+        if(size < avgSizeThreshold){
+            fingerprint = (fingerprint << 1) + gear[source.get(offset + size) & 0xff];
+            if((fingerprint & maskS) == 0){
+                return size;
+            }
+            size++;
+        }
+        for(; size + 1 < totalSizeThreshold; size += 2){
+            fingerprint = (fingerprint << 2) + gearLs[source.get(offset + size) & 0xff];
+            if((fingerprint & maskLLs) == 0){
+                return size;
+            }
+            fingerprint += gear[source.get(offset + size + 1) & 0xff];
+            if((fingerprint & maskL) == 0){
+                return size + 1;
+            }
+        }
+        if(size < totalSizeThreshold){
+            fingerprint = (fingerprint << 1) + gear[source.get(offset + size) & 0xff];
+            if((fingerprint & maskL) == 0){
+                return size;
+            }
+        }
+        return totalSizeThreshold;
+    }
+
+    static long[] shiftLeft(long[] gear){
+        long[] shifted = new long[gear.length];
+        for(int i = 0; i < gear.length; i++){
+            shifted[i] = gear[i] << 1;
+        }
+        return shifted;
+    }
+
+    /**
+     * Spreads <code>bits</code> one-bits evenly over the upper {@link #MASK_SPREAD} bits below bit 63,
+     * so a boundary depends on a window of bytes as wide as the spread instead of the last <code>bits</code> bytes.
+     */
+    static long spreadMask(int bits) {
+        assert(bits >= 1);
+        assert(bits <= MASK_SPREAD);
+        long mask = 0;
+        for(int i = 0; i < bits; i++){
+            mask |= 1L << (62 - (long) i * MASK_SPREAD / bits);
+        }
+        return mask;
+    }
+}
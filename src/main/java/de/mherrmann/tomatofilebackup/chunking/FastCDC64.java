@@ -0,0 +1,44 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FastCDC with a 64 bit gear table and a configurable normalization level (NC1 to NC3).
+ * Uses the two byte rolling scan of {@link FastCDC2020}. Every bit of the fingerprint gets random input,
+ * so the spread masks see a full 64 byte window. A higher normalization level narrows the chunk size distribution
+ * around the average size.
+ */
+class FastCDC64 extends FastCDC2020 {
+
+    static final int MIN_NORMALIZATION_LEVEL = 1;
+    static final int MAX_NORMALIZATION_LEVEL = 3;
+
+    /// The table is generated with SplitMix64 from a fixed seed. Changing seed or generator changes all boundaries.
+    private static final long GEAR_SEED = 0x746f6d61746f6669L;
+
+    static final long[] GEAR_64 = buildGear(GEAR_SEED);
+    private static final long[] GEAR_64_LS = shiftLeft(GEAR_64);
+
+    FastCDC64(byte[] source, int minSize, int avgSize, int maxSize, int normalizationLevel) {
+        this(ByteBuffer.wrap(source), minSize, avgSize, maxSize, normalizationLevel);
+    }
+
+    FastCDC64(ByteBuffer source, int minSize, int avgSize, int maxSize, int normalizationLevel) {
+        super(source, minSize, avgSize, maxSize, GEAR_64, GEAR_64_LS, normalizationLevel);
+        assert (normalizationLevel >= MIN_NORMALIZATION_LEVEL);
+        assert (normalizationLevel <= MAX_NORMALIZATION_LEVEL);
+    }
+
+    private static long[] buildGear(long seed){
+        long[] gear = new long[256];
+        long state = seed;
+        for(int i = 0; i < gear.length; i++){
+            state += 0x9e3779b97f4a7c15L;
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+            gear[i] = value ^ (value >>> 31);
+        }
+        return gear;
+    }
+}
@@ -0,0 +1,41 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Little-endian reads of longs and ints at absolute indexes, on heap, direct and memory-mapped buffers alike.
+ * Unlike <code>buffer.duplicate().order(LITTLE_ENDIAN)</code> this needs no view object per call, and the JIT turns
+ * every read into a single unaligned load.
+ */
+final class LittleEndian {
+
+    private static final VarHandle BUFFER_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle ARRAY_LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle ARRAY_INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private LittleEndian(){}
+
+    /**
+     * @param buffer - the buffer to read from; its position, limit and byte order are ignored
+     * @param index - absolute index of the first byte
+     */
+    static long getLong(ByteBuffer buffer, int index){
+        return (long) BUFFER_LONG.get(buffer, index);
+    }
+
+    static int getInt(ByteBuffer buffer, int index){
+        return (int) BUFFER_INT.get(buffer, index);
+    }
+
+    static long getLong(byte[] bytes, int index){
+        return (long) ARRAY_LONG.get(bytes, index);
+    }
+
+    static int getInt(byte[] bytes, int index){
+        return (int) ARRAY_INT.get(bytes, index);
+    }
+}
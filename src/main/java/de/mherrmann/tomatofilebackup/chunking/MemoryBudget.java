@@ -0,0 +1,85 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global budget for the portion buffers of all chunking sessions of one engine.
+ * Counts in kilobytes, so budgets beyond 2 GB fit into the semaphore. A single request larger than the whole
+ * budget is capped to the budget, so it can still be served once everything else is released.
+ */
+class MemoryBudget {
+
+    private static final int KB = 1024;
+
+    private final int totalPermits;
+    private final Semaphore permits;
+
+    MemoryBudget(long bytes){
+        if(bytes < KB){
+            throw new IllegalArgumentException("Memory budget must be at least " + KB + " bytes");
+        }
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, bytes / KB);
+        this.permits = new Semaphore(totalPermits, true);
+    }
+
+    Lease acquire(long bytes) throws InterruptedIOException {
+        int count = toPermits(bytes);
+        try {
+            permits.acquire(count);
+        } catch (InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for chunking memory budget");
+        }
+        return new Lease(count);
+    }
+
+    Lease tryAcquire(long bytes){
+        int count = toPermits(bytes);
+        return permits.tryAcquire(count) ? new Lease(count) : null;
+    }
+
+    /**
+     * Waits at most <code>millis</code> for the budget.
+     * @return the lease, or null if the budget did not get free in time
+     */
+    Lease tryAcquire(long bytes, long millis) throws InterruptedIOException {
+        int count = toPermits(bytes);
+        try {
+            return permits.tryAcquire(count, millis, TimeUnit.MILLISECONDS) ? new Lease(count) : null;
+        } catch (InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for chunking memory budget");
+        }
+    }
+
+    boolean hasWaiters(){
+        return permits.hasQueuedThreads();
+    }
+
+    long getAvailableBytes(){
+        return (long) permits.availablePermits() * KB;
+    }
+
+    private int toPermits(long bytes){
+        long count = (bytes + KB - 1) / KB;
+        return (int) Math.max(1, Math.min(totalPermits, count));
+    }
+
+    class Lease {
+        private final int count;
+        private boolean released;
+
+        private Lease(int count){
+            this.count = count;
+        }
+
+        void release(){
+            if(!released){
+                released = true;
+                permits.release(count);
+            }
+        }
+    }
+}
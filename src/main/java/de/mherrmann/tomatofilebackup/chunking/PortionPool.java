@@ -0,0 +1,92 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Recycles the portion buffers of large files, so steady-state chunking does not allocate.
+ * All buffers of a pool have the same size, big enough for a portion plus the tail carried over from the previous one.
+ * Every buffer holds its share of the memory budget for as long as it lives, also while it is idle in the pool.
+ * Idle buffers are dropped as soon as someone waits for the budget, so they never block other sessions.
+ */
+class PortionPool {
+
+    /// How long to wait for the budget before looking for a returned buffer again.
+    private static final long RETRY_MILLIS = 50;
+
+    private final MemoryBudget memoryBudget;
+    private final int bufferSize;
+    private final Deque<Buffer> idleBuffers = new ArrayDeque<>();
+
+    PortionPool(MemoryBudget memoryBudget, int bufferSize){
+        this.memoryBudget = memoryBudget;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return an idle buffer, a new one if the budget allows it, or null
+     */
+    Buffer tryAcquire(){
+        synchronized(this){
+            Buffer buffer = idleBuffers.poll();
+            if(buffer != null){
+                return buffer;
+            }
+        }
+        MemoryBudget.Lease lease = memoryBudget.tryAcquire(bufferSize);
+        return lease == null ? null : new Buffer(lease);
+    }
+
+    /**
+     * Waits until a buffer is returned or the budget allows a new one.
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    Buffer acquire() throws InterruptedIOException {
+        while(true){
+            Buffer buffer = tryAcquire();
+            if(buffer != null){
+                return buffer;
+            }
+            MemoryBudget.Lease lease = memoryBudget.tryAcquire(bufferSize, RETRY_MILLIS);
+            if(lease != null){
+                return new Buffer(lease);
+            }
+        }
+    }
+
+    synchronized void release(Buffer buffer){
+        if(memoryBudget.hasWaiters()){
+            buffer.lease.release();
+        } else {
+            idleBuffers.push(buffer);
+        }
+    }
+
+    /**
+     * Drops all idle buffers and hands their memory back to the budget.
+     */
+    synchronized void trim(){
+        while(!idleBuffers.isEmpty()){
+            idleBuffers.poll().lease.release();
+        }
+    }
+
+    synchronized int getIdleBufferCount(){
+        return idleBuffers.size();
+    }
+
+    class Buffer {
+        private final byte[] bytes;
+        private final MemoryBudget.Lease lease;
+
+        private Buffer(MemoryBudget.Lease lease){
+            this.bytes = new byte[bufferSize];
+            this.lease = lease;
+        }
+
+        byte[] getBytes(){
+            return bytes;
+        }
+    }
+}
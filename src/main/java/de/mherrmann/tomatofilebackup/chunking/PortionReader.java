@@ -0,0 +1,237 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the portions of a large file into pooled buffers. With a prefetch depth above 0, a background reader fills
+ * up to that many buffers ahead, so the disk reads the next portions while the current one is chunked and hashed.
+ * With depth 0 every portion is read on demand by the chunking thread.
+ * The data of a portion starts behind a gap as large as the maximum chunk size, which takes the tail carried over
+ * from the previous portion.
+ */
+class PortionReader implements Closeable {
+
+    /// How long to wait for the reader before checking whether it starves for a buffer.
+    private static final long POLL_MILLIS = 50;
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(new ReaderThreadFactory());
+
+    private final RandomAccessFile randomAccessFile;
+    private final long length;
+    private final PortionPool portionPool;
+    private final int portionSize;
+    private final int dataOffset;
+    private final int prefetchDepth;
+    private final ReadAheadStats stats;
+    private final BlockingQueue<Filled> filledPortions = new LinkedBlockingQueue<>();
+    private final Semaphore prefetchSlots;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private long position;
+    private Thread readerThread;
+    private boolean closed;
+    private volatile boolean waitingForBuffer;
+    private volatile Throwable failure;
+
+    /**
+     * @param dataOffset - where the data starts in every buffer; the bytes before are left for the tail
+     * @param prefetchDepth - how many portions to read ahead of the one being chunked
+     */
+    PortionReader(RandomAccessFile randomAccessFile, long length, PortionPool portionPool, int portionSize,
+                  int dataOffset, int prefetchDepth, ReadAheadStats stats){
+        this.randomAccessFile = randomAccessFile;
+        this.length = length;
+        this.portionPool = portionPool;
+        this.portionSize = portionSize;
+        this.dataOffset = dataOffset;
+        this.prefetchDepth = prefetchDepth;
+        this.stats = stats;
+        this.prefetchSlots = new Semaphore(prefetchDepth);
+        if(prefetchDepth > 0){
+            READERS.execute(this::readAhead);
+        } else {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Hands out the next portion. Blocks until it is read.
+     * @param shortage - called once before blocking on a buffer which only the calling session can hand back
+     * @return the next portion
+     * @throws IOException if reading fails
+     */
+    Filled next(BufferShortage shortage) throws IOException {
+        long waitStart = System.nanoTime();
+        Filled filled = prefetchDepth > 0 ? takePrefetched(shortage) : readOnDemand(shortage);
+        stats.addIoWait(System.nanoTime() - waitStart);
+        return filled;
+    }
+
+    int getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Stops the reader and hands the buffers it has read ahead back to the pool.
+     */
+    @Override
+    public void close() {
+        synchronized(this){
+            closed = true;
+            if(readerThread != null){
+                readerThread.interrupt();
+            }
+        }
+        boolean interrupted = false;
+        while(finished.getCount() > 0){
+            try {
+                finished.await();
+            } catch(InterruptedException exception){
+                interrupted = true;
+            }
+        }
+        Filled filled;
+        while((filled = filledPortions.poll()) != null){
+            filled.release();
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Filled readOnDemand(BufferShortage shortage) throws IOException {
+        PortionPool.Buffer buffer = portionPool.tryAcquire();
+        if(buffer == null){
+            shortage.handle();
+            buffer = portionPool.acquire();
+        }
+        return read(buffer);
+    }
+
+    private Filled takePrefetched(BufferShortage shortage) throws IOException {
+        boolean shortageHandled = false;
+        try {
+            Filled filled = filledPortions.poll();
+            while(filled == null){
+                if(finished.getCount() == 0){
+                    filled = filledPortions.poll();
+                    if(filled == null){
+                        throw new IOException("Error while reading ahead", failure);
+                    }
+                    break;
+                }
+                if(!shortageHandled && waitingForBuffer){
+                    shortage.handle();
+                    shortageHandled = true;
+                }
+                filled = filledPortions.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            prefetchSlots.release();
+            return filled;
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next portion");
+        }
+    }
+
+    private void readAhead(){
+        synchronized(this){
+            readerThread = Thread.currentThread();
+        }
+        try {
+            while(position < length && !isClosed()){
+                long waitStart = System.nanoTime();
+                prefetchSlots.acquire();
+                PortionPool.Buffer buffer = portionPool.tryAcquire();
+                if(buffer == null){
+                    waitingForBuffer = true;
+                    buffer = portionPool.acquire();
+                    waitingForBuffer = false;
+                }
+                stats.addCpuWait(System.nanoTime() - waitStart);
+                filledPortions.add(read(buffer));
+            }
+        } catch(InterruptedException | InterruptedIOException exception){
+            // closed while waiting
+        } catch(IOException | RuntimeException exception){
+            failure = exception;
+        } finally {
+            waitingForBuffer = false;
+            synchronized(this){
+                readerThread = null;
+                Thread.interrupted();
+            }
+            finished.countDown();
+        }
+    }
+
+    private Filled read(PortionPool.Buffer buffer) throws IOException {
+        int size = (int)Math.min(portionSize, length - position);
+        try {
+            randomAccessFile.readFully(buffer.getBytes(), dataOffset, size);
+        } catch(IOException | RuntimeException exception){
+            portionPool.release(buffer);
+            throw exception;
+        }
+        position += size;
+        stats.addBytesRead(size);
+        return new Filled(buffer, size, position == length);
+    }
+
+    private synchronized boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * Makes the calling session hand back everything it holds, so the reader can get a buffer.
+     */
+    interface BufferShortage {
+        void handle() throws IOException;
+    }
+
+    class Filled {
+        private final PortionPool.Buffer buffer;
+        private final int size;
+        private final boolean last;
+
+        private Filled(PortionPool.Buffer buffer, int size, boolean last){
+            this.buffer = buffer;
+            this.size = size;
+            this.last = last;
+        }
+
+        byte[] getBytes(){
+            return buffer.getBytes();
+        }
+
+        /**
+         * @return how many bytes were read, starting at the data offset
+         */
+        int getSize(){
+            return size;
+        }
+
+        boolean isLast(){
+            return last;
+        }
+
+        void release(){
+            portionPool.release(buffer);
+        }
+    }
+
+    private static class ReaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "tfb-read-ahead-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tells whether chunking of large files is bound by the disk or by chunking and hashing.
+ * Summed up over all sessions of an engine.
+ */
+public class ReadAheadStats {
+
+    private final LongAdder ioWaitNanos = new LongAdder();
+    private final LongAdder cpuWaitNanos = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * @return how long the chunking threads waited for portions to be read, in nanoseconds
+     */
+    public long getIoWaitNanos() {
+        return ioWaitNanos.sum();
+    }
+
+    /**
+     * @return how long the readers waited for the chunking threads to hand back a buffer, in nanoseconds
+     */
+    public long getCpuWaitNanos() {
+        return cpuWaitNanos.sum();
+    }
+
+    /**
+     * @return how many bytes of large files were read into portions
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    void addIoWait(long nanos){
+        ioWaitNanos.add(nanos);
+    }
+
+    void addCpuWait(long nanos){
+        cpuWaitNanos.add(nanos);
+    }
+
+    void addBytesRead(long bytes){
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "io wait: " + getIoWaitNanos()/1_000_000 + " ms, cpu wait: " + getCpuWaitNanos()/1_000_000 +
+                " ms, read: " + getBytesRead() + " bytes";
+    }
+}
@@ -0,0 +1,44 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 through the JDK provider, which uses the SHA instructions of the CPU where available.
+ * Chunk ids keep the first 128 bits of the digest, which leaves about 2^64 work for a birthday collision.
+ */
+class Sha256Hasher implements ChunkHasher {
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(Sha256Hasher::createDigest);
+
+    @Override
+    public ChunkId hash(byte[] bytes, int start, int length) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(bytes, start, length);
+        return toChunkId(digest.digest());
+    }
+
+    @Override
+    public ChunkId hash(ByteBuffer buffer, int start, int length) {
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(start + length).position(start);
+        MessageDigest digest = DIGESTS.get();
+        digest.update(chunk);
+        return toChunkId(digest.digest());
+    }
+
+    private static ChunkId toChunkId(byte[] digest){
+        byte[] truncated = new byte[ChunkId.BYTES];
+        System.arraycopy(digest, 0, truncated, 0, ChunkId.BYTES);
+        return ChunkId.fromBytes(truncated);
+    }
+
+    private static MessageDigest createDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException exception){
+            throw new IllegalStateException("SHA-256 is missing, although every Java platform has to provide it", exception);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * XXH3-128 (xxHash 0.8) with seed 0 and the default secret, in plain Java.
+ * Works on heap, direct and memory-mapped buffers; the result equals <code>XXH3_128bits</code> of the reference
+ * implementation, with the high half as {@link ChunkId#getHigh()}.
+ */
+class Xxh3 {
+
+    private static final long PRIME32_1 = 0x9E3779B1L;
+    private static final long PRIME32_2 = 0x85EBCA77L;
+    private static final long PRIME32_3 = 0xC2B2AE3DL;
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+    private static final long PRIME_MX1 = 0x165667919E3779F9L;
+    private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+    private static final int STRIPE_LENGTH = 64;
+    private static final int SECRET_CONSUME_RATE = 8;
+    private static final int SECRET_LASTACC_START = 7;
+    private static final int SECRET_MERGEACCS_START = 11;
+    private static final int MIDSIZE_MAX = 240;
+    private static final int MIDSIZE_STARTOFFSET = 3;
+    private static final int MIDSIZE_LASTOFFSET = 17;
+    private static final int SECRET_SIZE_MIN = 136;
+
+    private static final byte[] SECRET_BYTES = {
+            (byte) 0xb8, (byte) 0xfe, (byte) 0x6c, (byte) 0x39, (byte) 0x23, (byte) 0xa4, (byte) 0x4b, (byte) 0xbe,
+            (byte) 0x7c, (byte) 0x01, (byte) 0x81, (byte) 0x2c, (byte) 0xf7, (byte) 0x21, (byte) 0xad, (byte) 0x1c,
+            (byte) 0xde, (byte) 0xd4, (byte) 0x6d, (byte) 0xe9, (byte) 0x83, (byte) 0x90, (byte) 0x97, (byte) 0xdb,
+            (byte) 0x72, (byte) 0x40, (byte) 0xa4, (byte) 0xa4, (byte) 0xb7, (byte) 0xb3, (byte) 0x67, (byte) 0x1f,
+            (byte) 0xcb, (byte) 0x79, (byte) 0xe6, (byte) 0x4e, (byte) 0xcc, (byte) 0xc0, (byte) 0xe5, (byte) 0x78,
+            (byte) 0x82, (byte) 0x5a, (byte) 0xd0, (byte) 0x7d, (byte) 0xcc, (byte) 0xff, (byte) 0x72, (byte) 0x21,
+            (byte) 0xb8, (byte) 0x08, (byte) 0x46, (byte) 0x74, (byte) 0xf7, (byte) 0x43, (byte) 0x24, (byte) 0x8e,
+            (byte) 0xe0, (byte) 0x35, (byte) 0x90, (byte) 0xe6, (byte) 0x81, (byte) 0x3a, (byte) 0x26, (byte) 0x4c,
+            (byte) 0x3c, (byte) 0x28, (byte) 0x52, (byte) 0xbb, (byte) 0x91, (byte) 0xc3, (byte) 0x00, (byte) 0xcb,
+            (byte) 0x88, (byte) 0xd0, (byte) 0x65, (byte) 0x8b, (byte) 0x1b, (byte) 0x53, (byte) 0x2e, (byte) 0xa3,
+            (byte) 0x71, (byte) 0x64, (byte) 0x48, (byte) 0x97, (byte) 0xa2, (byte) 0x0d, (byte) 0xf9, (byte) 0x4e,
+            (byte) 0x38, (byte) 0x19, (byte) 0xef, (byte) 0x46, (byte) 0xa9, (byte) 0xde, (byte) 0xac, (byte) 0xd8,
+            (byte) 0xa8, (byte) 0xfa, (byte) 0x76, (byte) 0x3f, (byte) 0xe3, (byte) 0x9c, (byte) 0x34, (byte) 0x3f,
+            (byte) 0xf9, (byte) 0xdc, (byte) 0xbb, (byte) 0xc7, (byte) 0xc7, (byte) 0x0b, (byte) 0x4f, (byte) 0x1d,
+            (byte) 0x8a, (byte) 0x51, (byte) 0xe0, (byte) 0x4b, (byte) 0xcd, (byte) 0xb4, (byte) 0x59, (byte) 0x31,
+            (byte) 0xc8, (byte) 0x9f, (byte) 0x7e, (byte) 0xc9, (byte) 0xd9, (byte) 0x78, (byte) 0x73, (byte) 0x64,
+            (byte) 0xea, (byte) 0xc5, (byte) 0xac, (byte) 0x83, (byte) 0x34, (byte) 0xd3, (byte) 0xeb, (byte) 0xc3,
+            (byte) 0xc5, (byte) 0x81, (byte) 0xa0, (byte) 0xff, (byte) 0xfa, (byte) 0x13, (byte) 0x63, (byte) 0xeb,
+            (byte) 0x17, (byte) 0x0d, (byte) 0xdd, (byte) 0x51, (byte) 0xb7, (byte) 0xf0, (byte) 0xda, (byte) 0x49,
+            (byte) 0xd3, (byte) 0x16, (byte) 0x55, (byte) 0x26, (byte) 0x29, (byte) 0xd4, (byte) 0x68, (byte) 0x9e,
+            (byte) 0x2b, (byte) 0x16, (byte) 0xbe, (byte) 0x58, (byte) 0x7d, (byte) 0x47, (byte) 0xa1, (byte) 0xfc,
+            (byte) 0x8f, (byte) 0xf8, (byte) 0xb8, (byte) 0xd1, (byte) 0x7a, (byte) 0xd0, (byte) 0x31, (byte) 0xce,
+            (byte) 0x45, (byte) 0xcb, (byte) 0x3a, (byte) 0x8f, (byte) 0x95, (byte) 0x16, (byte) 0x04, (byte) 0x28,
+            (byte) 0xaf, (byte) 0xd7, (byte) 0xfb, (byte) 0xca, (byte) 0xbb, (byte) 0x4b, (byte) 0x40, (byte) 0x7e
+    };
+    private static final int SECRET_SIZE = SECRET_BYTES.length;
+    private static final int STRIPES_PER_BLOCK = (SECRET_SIZE - STRIPE_LENGTH) / SECRET_CONSUME_RATE;
+    private static final int BLOCK_LENGTH = STRIPE_LENGTH * STRIPES_PER_BLOCK;
+
+    private Xxh3(){}
+
+    static ChunkId hash128(byte[] bytes, int start, int length){
+        return hash128(ByteBuffer.wrap(bytes), start, length);
+    }
+
+    /**
+     * @param input - the buffer the bytes are in; its position, limit and byte order are ignored
+     * @param start - absolute index of the first byte
+     * @param length - number of bytes
+     */
+    static ChunkId hash128(ByteBuffer input, int start, int length){
+        if(length <= 16){
+            return hashUpTo16(input, start, length);
+        }
+        if(length <= 128){
+            return hash17To128(input, start, length);
+        }
+        if(length <= MIDSIZE_MAX){
+            return hash129To240(input, start, length);
+        }
+        return hashLong(input, start, length);
+    }
+
+    private static ChunkId hashUpTo16(ByteBuffer input, int start, int length){
+        if(length > 8){
+            return hash9To16(input, start, length);
+        }
+        if(length >= 4){
+            return hash4To8(input, start, length);
+        }
+        if(length > 0){
+            return hash1To3(input, start, length);
+        }
+        long low = xxh64Avalanche(secret64(64) ^ secret64(72));
+        long high = xxh64Avalanche(secret64(80) ^ secret64(88));
+        return new ChunkId(high, low);
+    }
+
+    private static ChunkId hash1To3(ByteBuffer input, int start, int length){
+        int c1 = input.get(start) & 0xff;
+        int c2 = input.get(start + (length >> 1)) & 0xff;
+        int c3 = input.get(start + length - 1) & 0xff;
+        int combinedLow = (c1 << 16) | (c2 << 24) | c3 | (length << 8);
+        int combinedHigh = Integer.rotateLeft(Integer.reverseBytes(combinedLow), 13);
+        long bitflipLow = (secret32(0) ^ secret32(4));
+        long bitflipHigh = (secret32(8) ^ secret32(12));
+        long keyedLow = (combinedLow & 0xFFFFFFFFL) ^ bitflipLow;
+        long keyedHigh = (combinedHigh & 0xFFFFFFFFL) ^ bitflipHigh;
+        return new ChunkId(xxh64Avalanche(keyedHigh), xxh64Avalanche(keyedLow));
+    }
+
+    private static ChunkId hash4To8(ByteBuffer input, int start, int length){
+        long inputLow = LittleEndian.getInt(input, start) & 0xFFFFFFFFL;
+        long inputHigh = LittleEndian.getInt(input, start + length - 4) & 0xFFFFFFFFL;
+        long input64 = inputLow + (inputHigh << 32);
+        long bitflip = secret64(16) ^ secret64(24);
+        long keyed = input64 ^ bitflip;
+        long multiplier = PRIME64_1 + ((long) length << 2);
+        long low = keyed * multiplier;
+        long high = unsignedMultiplyHigh(keyed, multiplier);
+        high += low << 1;
+        low ^= high >>> 3;
+        low ^= low >>> 35;
+        low *= PRIME_MX2;
+        low ^= low >>> 28;
+        high = xxh3Avalanche(high);
+        return new ChunkId(high, low);
+    }
+
+    private static ChunkId hash9To16(ByteBuffer input, int start, int length){
+        long bitflipLow = secret64(32) ^ secret64(40);
+        long bitflipHigh = secret64(48) ^ secret64(56);
+        long inputLow = LittleEndian.getLong(input, start);
+        long inputHigh = LittleEndian.getLong(input, start + length - 8);
+        long keyed = inputLow ^ inputHigh ^ bitflipLow;
+        long mLow = keyed * PRIME64_1;
+        long mHigh = unsignedMultiplyHigh(keyed, PRIME64_1);
+        mLow += (long) (length - 1) << 54;
+        inputHigh ^= bitflipHigh;
+        mHigh += inputHigh + (inputHigh & 0xFFFFFFFFL) * (PRIME32_2 - 1);
+        mLow ^= Long.reverseBytes(mHigh);
+        long low = mLow * PRIME64_2;
+        long high = unsignedMultiplyHigh(mLow, PRIME64_2);
+        high += mHigh * PRIME64_2;
+        return new ChunkId(xxh3Avalanche(high), xxh3Avalanche(low));
+    }
+
+    private static ChunkId hash17To128(ByteBuffer input, int start, int length){
+        long[] acc = {length * PRIME64_1, 0};
+        if(length > 32){
+            if(length > 64){
+                if(length > 96){
+                    mix32Bytes(acc, input, start + 48, start + length - 64, 96, 0);
+                }
+                mix32Bytes(acc, input, start + 32, start + length - 48, 64, 0);
+            }
+            mix32Bytes(acc, input, start + 16, start + length - 32, 32, 0);
+        }
+        mix32Bytes(acc, input, start, start + length - 16, 0, 0);
+        return finishMidSize(acc, length);
+    }
+
+    private static ChunkId hash129To240(ByteBuffer input, int start, int length){
+        int rounds = length / 32;
+        long[] acc = {length * PRIME64_1, 0};
+        for(int i = 0; i < 4; i++){
+            mix32Bytes(acc, input, start + 32*i, start + 32*i + 16, 32*i, 0);
+        }
+        acc[0] = xxh3Avalanche(acc[0]);
+        acc[1] = xxh3Avalanche(acc[1]);
+        for(int i = 4; i < rounds; i++){
+            mix32Bytes(acc, input, start + 32*i, start + 32*i + 16, MIDSIZE_STARTOFFSET + 32*(i - 4), 0);
+        }
+        mix32Bytes(acc, input, start + length - 16, start + length - 32,
+                SECRET_SIZE_MIN - MIDSIZE_LASTOFFSET - 16, 0);
+        return finishMidSize(acc, length);
+    }
+
+    private static ChunkId finishMidSize(long[] acc, int length){
+        long low = acc[0] + acc[1];
+        long high = acc[0] * PRIME64_1 + acc[1] * PRIME64_4 + length * PRIME64_2;
+        return new ChunkId(-xxh3Avalanche(high), xxh3Avalanche(low));
+    }
+
+    private static ChunkId hashLong(ByteBuffer input, int start, int length){
+        long[] acc = {PRIME32_3, PRIME64_1, PRIME64_2, PRIME64_3, PRIME64_4, PRIME32_2, PRIME64_5, PRIME32_1};
+        int blocks = (length - 1) / BLOCK_LENGTH;
+        for(int block = 0; block < blocks; block++){
+            accumulate(acc, input, start + block * BLOCK_LENGTH, STRIPES_PER_BLOCK);
+            scramble(acc, SECRET_SIZE - STRIPE_LENGTH);
+        }
+        int stripes = ((length - 1) - BLOCK_LENGTH * blocks) / STRIPE_LENGTH;
+        accumulate(acc, input, start + blocks * BLOCK_LENGTH, stripes);
+        accumulateStripe(acc, input, start + length - STRIPE_LENGTH, SECRET_SIZE - STRIPE_LENGTH - SECRET_LASTACC_START);
+        long low = mergeAccumulators(acc, SECRET_MERGEACCS_START, length * PRIME64_1);
+        long high = mergeAccumulators(acc, SECRET_SIZE - STRIPE_LENGTH - SECRET_MERGEACCS_START, ~(length * PRIME64_2));
+        return new ChunkId(high, low);
+    }
+
+    private static void accumulate(long[] acc, ByteBuffer input, int start, int stripes){
+        for(int stripe = 0; stripe < stripes; stripe++){
+            accumulateStripe(acc, input, start + stripe * STRIPE_LENGTH, stripe * SECRET_CONSUME_RATE);
+        }
+    }
+
+    private static void accumulateStripe(long[] acc, ByteBuffer input, int start, int secretOffset){
+        for(int i = 0; i < 8; i++){
+            long value = LittleEndian.getLong(input, start + 8*i);
+            long key = value ^ secret64(secretOffset + 8*i);
+            acc[i ^ 1] += value;
+            acc[i] += (key & 0xFFFFFFFFL) * (key >>> 32);
+        }
+    }
+
+    private static void scramble(long[] acc, int secretOffset){
+        for(int i = 0; i < 8; i++){
+            long value = acc[i];
+            value ^= value >>> 47;
+            value ^= secret64(secretOffset + 8*i);
+            acc[i] = value * PRIME32_1;
+        }
+    }
+
+    private static long mergeAccumulators(long[] acc, int secretOffset, long result){
+        for(int i = 0; i < 4; i++){
+            result += multiplyFold(acc[2*i] ^ secret64(secretOffset + 16*i), acc[2*i + 1] ^ secret64(secretOffset + 16*i + 8));
+        }
+        return xxh3Avalanche(result);
+    }
+
+    private static void mix32Bytes(long[] acc, ByteBuffer input, int first, int second, int secretOffset, long seed){
+        acc[0] += mix16Bytes(input, first, secretOffset, seed);
+        acc[0] ^= LittleEndian.getLong(input, second) + LittleEndian.getLong(input, second + 8);
+        acc[1] += mix16Bytes(input, second, secretOffset + 16, seed);
+        acc[1] ^= LittleEndian.getLong(input, first) + LittleEndian.getLong(input, first + 8);
+    }
+
+    private static long mix16Bytes(ByteBuffer input, int start, int secretOffset, long seed){
+        return multiplyFold(LittleEndian.getLong(input, start) ^ (secret64(secretOffset) + seed),
+                LittleEndian.getLong(input, start + 8) ^ (secret64(secretOffset + 8) - seed));
+    }
+
+    private static long multiplyFold(long a, long b){
+        return (a * b) ^ unsignedMultiplyHigh(a, b);
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b){
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static long xxh64Avalanche(long hash){
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxh3Avalanche(long hash){
+        hash ^= hash >>> 37;
+        hash *= PRIME_MX1;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long secret64(int offset){
+        return LittleEndian.getLong(SECRET_BYTES, offset);
+    }
+
+    private static long secret32(int offset){
+        return LittleEndian.getInt(SECRET_BYTES, offset) & 0xFFFFFFFFL;
+    }
+}
@@ -7,6 +7,7 @@ public class Option {
     }
 
     public enum Property {
-        repository
+        repository, chunkingAlgorithm, normalizationLevel, minChunkSize, avgChunkSize, maxChunkSize, portionSize,
+        hashAlgorithm
     }
 }
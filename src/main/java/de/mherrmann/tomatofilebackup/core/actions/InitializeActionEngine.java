@@ -1,6 +1,9 @@
 package de.mherrmann.tomatofilebackup.core.actions;
 
 import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
 import de.mherrmann.tomatofilebackup.core.Option;
 import de.mherrmann.tomatofilebackup.exceptions.IllegalActionCommandException;
 import de.mherrmann.tomatofilebackup.persistence.RepositoryInitializer;
@@ -14,6 +17,8 @@ import java.util.Map;
 
 public class InitializeActionEngine extends ActionEngine {
 
+    private static final String SIZE_PATTERN = "^([0-9]{1,10})([KMG]?)$";
+
     @Override
     public void run(Map<Option.Property, String> properties, List<Option.Switch> enabledSwitches, List<String> mainValues)
             throws IOException, SQLException {
@@ -21,7 +26,8 @@ public class InitializeActionEngine extends ActionEngine {
             throw new IllegalActionCommandException(Constants.ErrorReport.MISSING_PATH.getMessage());
         }
         String repositoryPath = mainValues.get(0);
-        initializeRepository(repositoryPath);
+        ChunkingParameters chunkingParameters = buildChunkingParameters(properties);
+        initializeRepository(repositoryPath, chunkingParameters);
     }
 
     @Override
@@ -29,19 +35,91 @@ public class InitializeActionEngine extends ActionEngine {
         return Constants.TFB_INTRO + "\n" +
                 " Help for initialize:\n" +
                 "\n" +
-                " Usage: tfb initialize PATH_TO_REPOSITORY\n" +
-                "  Example: tfb initialize /mnt/backup/repo/";
+                " Usage: tfb initialize [OPTIONS] PATH_TO_REPOSITORY\n" +
+                "  Example: tfb initialize /mnt/backup/repo/\n" +
+                "  Example: tfb initialize --avgChunkSize=64K /mnt/backup/mail/\n" +
+                "\n" +
+                " Options (chunking, fixed for the lifetime of the repository):\n" +
+                "  --chunkingAlgorithm=FASTCDC_2016|FASTCDC_2020|FASTCDC_64 (default FASTCDC_2016)\n" +
+                "  --normalizationLevel=1..3, only for FASTCDC_64 (default 2)\n" +
+                "  --avgChunkSize=SIZE (default 1M)\n" +
+                "  --minChunkSize=SIZE (default half the average size)\n" +
+                "  --maxChunkSize=SIZE (default 8 times the average size)\n" +
+                "  --portionSize=SIZE, bytes read at a time (default 16M, at least twice the maximum size)\n" +
+                "  --hashAlgorithm=MURMUR3_128|XXH3_128|SHA_256, chunk id hash (default MURMUR3_128)\n" +
+                "  SIZE is a number of bytes with an optional suffix K, M or G";
     }
 
-    private void initializeRepository(String repositoryPath) throws SQLException, IOException {
+    private void initializeRepository(String repositoryPath, ChunkingParameters chunkingParameters)
+            throws SQLException, IOException {
         initializeRepositoryDirectory(repositoryPath);
-        RepositoryInitializer.initialize(repositoryPath);
+        RepositoryInitializer.initialize(repositoryPath, chunkingParameters);
+    }
+
+    /**
+     * Builds the chunking parameters from the given properties. Sizes which are not given are derived from the
+     * average size in the proportions of the defaults, so setting only the average size is enough.
+     */
+    static ChunkingParameters buildChunkingParameters(Map<Option.Property, String> properties) {
+        ChunkingParameters defaults = ChunkingParameters.DEFAULT;
+        try {
+            ChunkingAlgorithm algorithm = properties.containsKey(Option.Property.chunkingAlgorithm) ?
+                    ChunkingAlgorithm.valueOf(properties.get(Option.Property.chunkingAlgorithm)) :
+                    defaults.getAlgorithm();
+            int normalizationLevel = properties.containsKey(Option.Property.normalizationLevel) ?
+                    Integer.parseInt(properties.get(Option.Property.normalizationLevel)) :
+                    defaults.getNormalizationLevel();
+            int avgSize = toInt(parseSize(properties, Option.Property.avgChunkSize, defaults.getAvgSize()));
+            int minSize = toInt(parseSize(properties, Option.Property.minChunkSize,
+                    (long) avgSize * defaults.getMinSize() / defaults.getAvgSize()));
+            int maxSize = toInt(parseSize(properties, Option.Property.maxChunkSize,
+                    (long) avgSize * defaults.getMaxSize() / defaults.getAvgSize()));
+            int portionSize = toInt(parseSize(properties, Option.Property.portionSize,
+                    Math.max(defaults.getPortionSize(), 2L*maxSize)));
+            ChunkHashAlgorithm hashAlgorithm = properties.containsKey(Option.Property.hashAlgorithm) ?
+                    ChunkHashAlgorithm.valueOf(properties.get(Option.Property.hashAlgorithm)) :
+                    defaults.getHashAlgorithm();
+            return new ChunkingParameters(algorithm, normalizationLevel,
+                    minSize, avgSize, maxSize, portionSize, hashAlgorithm);
+        } catch(IllegalArgumentException exception){
+            throw new IllegalActionCommandException(
+                    Constants.ErrorReport.INVALID_CHUNKING_PARAMETERS.getMessage(exception.getMessage()));
+        }
+    }
+
+    private static long parseSize(Map<Option.Property, String> properties, Option.Property property, long defaultSize){
+        String value = properties.get(property);
+        if(value == null){
+            return defaultSize;
+        }
+        if(!value.matches(SIZE_PATTERN)){
+            throw new IllegalArgumentException(property + "=" + value);
+        }
+        long size = Long.parseLong(value.replaceFirst(SIZE_PATTERN, "$1"));
+        try {
+            switch(value.replaceFirst(SIZE_PATTERN, "$2")){
+                case "K": return Math.multiplyExact(size, 1024L);
+                case "M": return Math.multiplyExact(size, 1024L * 1024);
+                case "G": return Math.multiplyExact(size, 1024L * 1024 * 1024);
+                default: return size;
+            }
+        } catch(ArithmeticException exception){
+            throw new IllegalArgumentException("size too large: " + property + "=" + value);
+        }
+    }
+
+    private static int toInt(long size){
+        if(size < 0 || size > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("size out of range: " + size);
+        }
+        return (int) size;
     }
 
     private static void initializeRepositoryDirectory(String repositoryPath) throws IOException {
         File repositoryDirectory = new File(repositoryPath);
         File repositoryDirectoryDBFile = new File(repositoryPath, Constants.DB_FILENAME);
         File chunksDirectory = new File(repositoryPath, Constants.CHUNKS_DIRECTORY_NAME);
+        File packsDirectory = new File(repositoryPath, Constants.PACKS_DIRECTORY_NAME);
         File repositoryDirectoryParent = repositoryDirectory.getParentFile();
         if(!repositoryDirectoryParent.exists() || !repositoryDirectoryParent.isDirectory() || !repositoryDirectoryParent.canWrite()){
             throw new IOException(Constants.ErrorReport.PARENT_DIRECTORY_PROBLEM.getMessage(repositoryDirectoryParent.getAbsolutePath()));
@@ -56,5 +134,6 @@ public class InitializeActionEngine extends ActionEngine {
             Files.createDirectory(repositoryDirectory.toPath());
         }
         Files.createDirectory(chunksDirectory.toPath());
+        Files.createDirectory(packsDirectory.toPath());
     }
 }
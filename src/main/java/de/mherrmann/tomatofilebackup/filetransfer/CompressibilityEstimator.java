@@ -0,0 +1,54 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+/**
+ * Tells incompressible chunks (JPEG, video, archives, encrypted data) apart by the order-0 entropy of a sample,
+ * which costs a small fraction of a compression run. Large chunks are sampled in windows spread over the chunk.
+ */
+class CompressibilityEstimator {
+
+    /// Above this many bits per byte compression saves too little to be worth the CPU time.
+    static final double MAX_COMPRESSIBLE_ENTROPY = 7.5;
+    private static final int SAMPLE_WINDOWS = 16;
+    private static final int WINDOW_LENGTH = 1024;
+
+    private CompressibilityEstimator(){}
+
+    static boolean isCompressible(byte[] bytes, int offset, int length){
+        return getEntropy(bytes, offset, length) <= MAX_COMPRESSIBLE_ENTROPY;
+    }
+
+    /**
+     * @return the estimated entropy in bits per byte, from 0 to 8
+     */
+    static double getEntropy(byte[] bytes, int offset, int length){
+        if(length == 0){
+            return 0;
+        }
+        int[] counts = new int[256];
+        int sampled;
+        if(length <= SAMPLE_WINDOWS * WINDOW_LENGTH){
+            count(bytes, offset, length, counts);
+            sampled = length;
+        } else {
+            long stride = (long) (length - WINDOW_LENGTH) / (SAMPLE_WINDOWS - 1);
+            for(int window = 0; window < SAMPLE_WINDOWS; window++){
+                count(bytes, offset + (int) (window * stride), WINDOW_LENGTH, counts);
+            }
+            sampled = SAMPLE_WINDOWS * WINDOW_LENGTH;
+        }
+        double entropy = 0;
+        for(int count : counts){
+            if(count > 0){
+                double probability = (double) count / sampled;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static void count(byte[] bytes, int offset, int length, int[] counts){
+        for(int i = offset; i < offset + length; i++){
+            counts[bytes[i] & 0xff]++;
+        }
+    }
+}
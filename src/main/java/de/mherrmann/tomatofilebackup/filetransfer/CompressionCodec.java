@@ -0,0 +1,34 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses the bytes of single chunks. Implementations must be thread-safe.
+ * Stored chunks start with the id of the codec they were compressed with (see {@link CompressionEngine}),
+ * so the codec can change over the lifetime of a repository without rewriting the chunks stored before.
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return the id written in front of every chunk compressed with this codec, from 1 to 127; 0 marks raw chunks
+     */
+    int getId();
+
+    /**
+     * @return the largest number of bytes {@link #compress} may write for <code>length</code> input bytes
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * @param target - receives the compressed bytes; must have room for {@link #maxCompressedLength} bytes
+     * @return the number of bytes written to <code>target</code>
+     */
+    int compress(byte[] source, int offset, int length, byte[] target, int targetOffset) throws IOException;
+
+    /**
+     * Decompresses exactly <code>originalLength</code> bytes into <code>target</code>.
+     * @throws IOException if the compressed bytes are damaged or do not decompress to <code>originalLength</code> bytes
+     */
+    void decompress(byte[] source, int offset, int length, byte[] target, int targetOffset, int originalLength)
+            throws IOException;
+}
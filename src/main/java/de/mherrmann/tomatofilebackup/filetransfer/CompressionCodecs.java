@@ -0,0 +1,100 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.util.Locale;
+
+/**
+ * The built-in {@link CompressionCodec}s. Codecs are named <code>deflate:LEVEL</code>, <code>lz4</code> or
+ * <code>zstd:LEVEL</code>; the level can be left out for the default one.
+ */
+public class CompressionCodecs {
+
+    static final int STORED_ID = 0;
+    static final int DEFLATE_ID = 1;
+    static final int LZ4_ID = 2;
+    static final int ZSTD_ID = 3;
+
+    public static final int DEFAULT_DEFLATE_LEVEL = 6;
+    public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+    private static final CompressionCodec STORED = new StoredCodec();
+    private static final CompressionCodec DEFLATE = new DeflateCodec(DEFAULT_DEFLATE_LEVEL);
+    private static final CompressionCodec LZ4 = new Lz4Codec();
+    private static final CompressionCodec ZSTD = new ZstdCodec(DEFAULT_ZSTD_LEVEL);
+
+    public static final CompressionCodec DEFAULT = DEFLATE;
+
+    private CompressionCodecs(){}
+
+    /**
+     * @param level - 0 (stored) to 9 (best)
+     */
+    public static CompressionCodec deflate(int level){
+        return level == DEFAULT_DEFLATE_LEVEL ? DEFLATE : new DeflateCodec(level);
+    }
+
+    /**
+     * @return the codec of chunks stored raw, since they would not get smaller
+     */
+    public static CompressionCodec stored(){
+        return STORED;
+    }
+
+    public static CompressionCodec lz4(){
+        return LZ4;
+    }
+
+    /**
+     * @param level - negative levels are fastest, up to 22 (best)
+     */
+    public static CompressionCodec zstd(int level){
+        return level == DEFAULT_ZSTD_LEVEL ? ZSTD : new ZstdCodec(level);
+    }
+
+    /**
+     * @return a codec which can decompress chunks written with codec id <code>id</code>
+     * @throws IllegalArgumentException if no codec has this id
+     */
+    public static CompressionCodec forId(int id){
+        switch(id){
+            case STORED_ID:
+                return STORED;
+            case DEFLATE_ID:
+                return DEFLATE;
+            case LZ4_ID:
+                return LZ4;
+            case ZSTD_ID:
+                return ZSTD;
+            default:
+                throw new IllegalArgumentException("Unknown compression codec id " + id);
+        }
+    }
+
+    /**
+     * @param name - e.g. <code>deflate:9</code>, <code>lz4</code>, <code>zstd</code> or <code>zstd:19</code>
+     * @throws IllegalArgumentException if the name or level is unknown
+     */
+    public static CompressionCodec forName(String name){
+        String[] parts = name.toLowerCase(Locale.ROOT).split(":", 2);
+        Integer level = null;
+        if(parts.length == 2){
+            try {
+                level = Integer.parseInt(parts[1]);
+            } catch(NumberFormatException exception){
+                throw new IllegalArgumentException("Invalid compression level: " + name, exception);
+            }
+        }
+        switch(parts[0]){
+            case "deflate":
+                return deflate(level == null ? DEFAULT_DEFLATE_LEVEL : level);
+            case "lz4":
+                if(level != null){
+                    throw new IllegalArgumentException("LZ4 has no compression levels: " + name);
+                }
+                return lz4();
+            case "zstd":
+                return zstd(level == null ? DEFAULT_ZSTD_LEVEL : level);
+            default:
+                throw new IllegalArgumentException("Unknown compression codec: " + name);
+        }
+    }
+}
@@ -1,36 +1,156 @@
 package de.mherrmann.tomatofilebackup.filetransfer;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+/**
+ * Compresses chunks with a {@link CompressionCodec}. Every compressed chunk starts with a one byte header holding
+ * the codec id, followed by the codec output. Chunks stored before codecs were introduced are plain gzip streams
+ * without header; they are told apart by the gzip magic bytes and can still be decompressed.
+ */
 public class CompressionEngine {
 
+    private static final int HEADER_LENGTH = 1;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
     private CompressionEngine(){}
 
+    /**
+     * @return the codec id header followed by the compressed bytes
+     */
+    public static byte[] compress(CompressionCodec codec, byte[] uncompressed, int offset, int length) throws IOException {
+        byte[] compressed = new byte[HEADER_LENGTH + codec.maxCompressedLength(length)];
+        compressed[0] = (byte) codec.getId();
+        int compressedLength = codec.compress(uncompressed, offset, length, compressed, HEADER_LENGTH);
+        return Arrays.copyOf(compressed, HEADER_LENGTH + compressedLength);
+    }
+
+    /**
+     * Like {@link #compress(CompressionCodec, byte[], int, int)}, but decides per chunk whether compressing is worth
+     * it. Chunks which an entropy estimate shows to be incompressible are stored raw without running the codec,
+     * as are chunks which do not get smaller.
+     * @param stats - receives the decision and the time taken
+     * @return the codec id header followed by the compressed or raw bytes
+     */
+    public static byte[] compressAdaptive(CompressionCodec codec, byte[] uncompressed, int offset, int length,
+                                          CompressionStats stats) throws IOException {
+        long estimateStart = System.nanoTime();
+        boolean compressible = CompressibilityEstimator.isCompressible(uncompressed, offset, length);
+        stats.addEstimate(System.nanoTime() - estimateStart);
+        if(!compressible){
+            stats.addSkipped(length);
+            return compress(CompressionCodecs.stored(), uncompressed, offset, length);
+        }
+        long compressStart = System.nanoTime();
+        byte[] compressed = compress(codec, uncompressed, offset, length);
+        stats.addCompressed(length, compressed.length - HEADER_LENGTH, System.nanoTime() - compressStart);
+        if(compressed.length - HEADER_LENGTH >= length){
+            stats.addExpanded();
+            return compress(CompressionCodecs.stored(), uncompressed, offset, length);
+        }
+        return compressed;
+    }
+
+    public static void storeCompressed(CompressionCodec codec, byte[] uncompressed, int offset, int length,
+                                       File targetFile) throws IOException {
+        byte[] compressed = compress(codec, uncompressed, offset, length);
+        try (OutputStream outputStream = new FileOutputStream(targetFile)){
+            outputStream.write(compressed);
+        } catch (IOException exception){
+            throw new IOException("Error while compression", exception);
+        }
+    }
+
+    /**
+     * Decompresses a chunk written with any codec, or a legacy gzip chunk.
+     * @param unzippedLength - the length of the chunk
+     */
+    public static byte[] decompress(byte[] compressed, int unzippedLength) throws IOException {
+        if(isGzip(compressed)){
+            return decompressGzip(compressed, unzippedLength);
+        }
+        if(compressed.length < HEADER_LENGTH){
+            throw new IOException("Compressed chunk has no codec header");
+        }
+        CompressionCodec codec;
+        try {
+            codec = CompressionCodecs.forId(compressed[0] & 0xff);
+        } catch(IllegalArgumentException exception){
+            throw new IOException("Error while decompression", exception);
+        }
+        byte[] unzipped = new byte[unzippedLength];
+        codec.decompress(compressed, HEADER_LENGTH, compressed.length - HEADER_LENGTH, unzipped, 0, unzippedLength);
+        return unzipped;
+    }
+
+    public static byte[] restoreDecompressed(File sourceFile, int unzippedLength) throws IOException {
+        return decompress(Files.readAllBytes(sourceFile.toPath()), unzippedLength);
+    }
+
+    /**
+     * Writes a legacy gzip chunk, as stored before codecs were introduced.
+     */
     public static void storeCompressed(byte[] uncompressed, File targetFile) throws IOException {
+        storeCompressed(uncompressed, 0, uncompressed.length, targetFile);
+    }
+
+    /**
+     * Writes a legacy gzip chunk, as stored before codecs were introduced.
+     */
+    public static void storeCompressed(byte[] uncompressed, int offset, int length, File targetFile) throws IOException {
         try (
                 GZIPOutputStream gzipOS = new GZIPOutputStream(new FileOutputStream(targetFile))
         ){
-            gzipOS.write(uncompressed);
+            gzipOS.write(uncompressed, offset, length);
         } catch (IOException exception){
             throw new IOException("Error while compression", exception);
         }
     }
 
-    public static byte[] restoreDecompressed(File sourceFile, int unzippedLength) throws IOException {
+    /**
+     * @return a legacy gzip chunk, as stored before codecs were introduced
+     */
+    public static byte[] compress(byte[] uncompressed, int offset, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2);
         try (
-                GZIPInputStream gzipIS = new GZIPInputStream(new FileInputStream(sourceFile))
+                GZIPOutputStream gzipOS = new GZIPOutputStream(compressed)
         ){
-            byte[] unzipped = new byte[unzippedLength];
-            int read = 0;
-            while (read < unzippedLength){
-                read += gzipIS.read(unzipped, read, unzippedLength-read);
-            }
-            return unzipped;
+            gzipOS.write(uncompressed, offset, length);
+        } catch (IOException exception){
+            throw new IOException("Error while compression", exception);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static boolean isGzip(byte[] compressed){
+        return compressed.length >= 2 && (compressed[0] & 0xff) == GZIP_MAGIC_1 && (compressed[1] & 0xff) == GZIP_MAGIC_2;
+    }
+
+    private static byte[] decompressGzip(byte[] compressed, int unzippedLength) throws IOException {
+        try (
+                GZIPInputStream gzipIS = new GZIPInputStream(new ByteArrayInputStream(compressed))
+        ){
+            return readUnzipped(gzipIS, unzippedLength);
         } catch (IOException exception){
             throw new IOException("Error while decompression", exception);
         }
     }
 
+    private static byte[] readUnzipped(GZIPInputStream gzipIS, int unzippedLength) throws IOException {
+        byte[] unzipped = new byte[unzippedLength];
+        int read = 0;
+        while (read < unzippedLength){
+            int count = gzipIS.read(unzipped, read, unzippedLength-read);
+            if(count < 0){
+                throw new EOFException("Compressed chunk is shorter than expected");
+            }
+            read += count;
+        }
+        return unzipped;
+    }
+
 }
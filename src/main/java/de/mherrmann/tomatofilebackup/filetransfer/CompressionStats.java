@@ -0,0 +1,115 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tells how much adaptive compression saved by storing incompressible chunks raw.
+ * Summed up over all chunks stored by a transfer engine.
+ */
+public class CompressionStats {
+
+    private final LongAdder compressedChunks = new LongAdder();
+    private final LongAdder compressedInputBytes = new LongAdder();
+    private final LongAdder compressedOutputBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder skippedChunks = new LongAdder();
+    private final LongAdder skippedBytes = new LongAdder();
+    private final LongAdder expandedChunks = new LongAdder();
+    private final LongAdder estimateNanos = new LongAdder();
+
+    /**
+     * @return how many chunks were run through the codec, including those which did not get smaller
+     */
+    public long getCompressedChunks() {
+        return compressedChunks.sum();
+    }
+
+    /**
+     * @return how many bytes were run through the codec
+     */
+    public long getCompressedInputBytes() {
+        return compressedInputBytes.sum();
+    }
+
+    /**
+     * @return how many bytes the codec produced for them
+     */
+    public long getCompressedOutputBytes() {
+        return compressedOutputBytes.sum();
+    }
+
+    /**
+     * @return how long the codec ran, in nanoseconds
+     */
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    /**
+     * @return how many chunks were stored raw without trying to compress them
+     */
+    public long getSkippedChunks() {
+        return skippedChunks.sum();
+    }
+
+    /**
+     * @return how many bytes were stored raw without trying to compress them
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.sum();
+    }
+
+    /**
+     * @return how many chunks were compressed, but stored raw since they did not get smaller
+     */
+    public long getExpandedChunks() {
+        return expandedChunks.sum();
+    }
+
+    /**
+     * @return how long estimating the compressibility took, in nanoseconds
+     */
+    public long getEstimateNanos() {
+        return estimateNanos.sum();
+    }
+
+    /**
+     * @return the codec time the skipped bytes would have taken at the measured rate, minus the time spent
+     *          on estimates, in nanoseconds
+     */
+    public long getSavedNanos() {
+        long inputBytes = getCompressedInputBytes();
+        if(inputBytes == 0){
+            return 0;
+        }
+        return (long) ((double) getSkippedBytes() * getCompressNanos() / inputBytes) - getEstimateNanos();
+    }
+
+    void addEstimate(long nanos){
+        estimateNanos.add(nanos);
+    }
+
+    void addSkipped(int length){
+        skippedChunks.increment();
+        skippedBytes.add(length);
+    }
+
+    void addCompressed(int inputLength, int outputLength, long nanos){
+        compressedChunks.increment();
+        compressedInputBytes.add(inputLength);
+        compressedOutputBytes.add(outputLength);
+        compressNanos.add(nanos);
+    }
+
+    void addExpanded(){
+        expandedChunks.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "compressed: " + getCompressedChunks() + " chunks, " + getCompressedInputBytes() + " -> " +
+                getCompressedOutputBytes() + " bytes, skipped: " + getSkippedChunks() + " chunks, " +
+                getSkippedBytes() + " bytes, expanded: " + getExpandedChunks() + " chunks, saved: " +
+                getSavedNanos()/1_000_000 + " ms";
+    }
+}
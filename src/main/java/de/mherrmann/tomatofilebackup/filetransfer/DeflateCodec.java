@@ -0,0 +1,81 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw Deflate (no gzip or zlib wrapper) at a fixed level. Every thread keeps its own {@link Deflater} and
+ * {@link Inflater}, which are reset between chunks instead of being created and ended for each one.
+ */
+class DeflateCodec implements CompressionCodec {
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int level;
+    private final ThreadLocal<Deflater> deflaters;
+
+    DeflateCodec(int level){
+        if(level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("Deflate level must be from 0 to 9: " + level);
+        }
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    @Override
+    public int getId() {
+        return CompressionCodecs.DEFLATE_ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 16;
+    }
+
+    @Override
+    public int compress(byte[] source, int offset, int length, byte[] target, int targetOffset) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(source, offset, length);
+        deflater.finish();
+        int written = 0;
+        int room = maxCompressedLength(length);
+        while(!deflater.finished() && written < room){
+            written += deflater.deflate(target, targetOffset + written, room - written);
+        }
+        if(!deflater.finished()){
+            throw new IOException("Deflate output exceeds " + room + " bytes");
+        }
+        return written;
+    }
+
+    @Override
+    public void decompress(byte[] source, int offset, int length, byte[] target, int targetOffset, int originalLength)
+            throws IOException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(source, offset, length);
+        int read = 0;
+        try {
+            while(read < originalLength){
+                int count = inflater.inflate(target, targetOffset + read, originalLength - read);
+                if(count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())){
+                    break;
+                }
+                read += count;
+            }
+        } catch(DataFormatException exception){
+            throw new IOException("Damaged deflate stream", exception);
+        }
+        if(read != originalLength){
+            throw new IOException("Deflate stream ends after " + read + " of " + originalLength + " bytes");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "deflate:" + level;
+    }
+}
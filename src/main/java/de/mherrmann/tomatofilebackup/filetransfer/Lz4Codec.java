@@ -0,0 +1,213 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format (no frame) in plain Java, with the greedy single-probe matching of the reference
+ * <code>LZ4_compress_default</code>. Blocks are compatible with the reference implementation in both directions.
+ */
+class Lz4Codec implements CompressionCodec {
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int MIN_MATCH = 4;
+    /// The last 5 bytes of a block are always literals.
+    private static final int LAST_LITERALS = 5;
+    /// The last match has to start at least 12 bytes before the end of a block.
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    /// After this many missed probes the step between probes grows, so incompressible data is skipped fast.
+    private static final int SKIP_TRIGGER = 6;
+    private static final ThreadLocal<int[]> HASH_TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    @Override
+    public int getId() {
+        return CompressionCodecs.LZ4_ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] source, int offset, int length, byte[] target, int targetOffset) {
+        int end = offset + length;
+        int anchor = offset;
+        int out = targetOffset;
+        if(length > MF_LIMIT){
+            int[] table = HASH_TABLES.get();
+            Arrays.fill(table, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+            int position = offset;
+            int misses = 0;
+            while(position < mfLimit){
+                int sequence = readInt(source, position);
+                int hash = hash(source, position);
+                int reference = table[hash];
+                table[hash] = position - offset;
+                if(reference < 0 || position - offset - reference > MAX_OFFSET ||
+                        readInt(source, offset + reference) != sequence){
+                    position += 1 + (misses++ >> SKIP_TRIGGER);
+                    continue;
+                }
+                misses = 0;
+                int match = offset + reference;
+                while(position > anchor && match > offset && source[position - 1] == source[match - 1]){
+                    position--;
+                    match--;
+                }
+                int matchLength = MIN_MATCH + commonLength(source, match + MIN_MATCH, position + MIN_MATCH, matchLimit);
+                out = writeSequence(source, anchor, position - anchor, position - match, matchLength, target, out);
+                position += matchLength;
+                anchor = position;
+                if(position - 2 < mfLimit){
+                    table[hash(source, position - 2)] = position - 2 - offset;
+                }
+            }
+        }
+        out = writeSequence(source, anchor, end - anchor, 0, 0, target, out);
+        return out - targetOffset;
+    }
+
+    @Override
+    public void decompress(byte[] source, int offset, int length, byte[] target, int targetOffset, int originalLength)
+            throws IOException {
+        int in = offset;
+        int end = offset + length;
+        int out = targetOffset;
+        int outEnd = targetOffset + originalLength;
+        while(in < end){
+            int token = source[in++] & 0xff;
+            int literalLength = token >>> 4;
+            if(literalLength == 15){
+                int[] result = readLength(source, in, end, literalLength);
+                literalLength = result[0];
+                in = result[1];
+            }
+            if(literalLength > end - in || literalLength > outEnd - out){
+                throw new IOException("Damaged LZ4 block: literals exceed the block");
+            }
+            System.arraycopy(source, in, target, out, literalLength);
+            in += literalLength;
+            out += literalLength;
+            if(in == end){
+                break;
+            }
+            if(end - in < 2){
+                throw new IOException("Damaged LZ4 block: truncated match offset");
+            }
+            int matchOffset = (source[in] & 0xff) | (source[in + 1] & 0xff) << 8;
+            in += 2;
+            if(matchOffset == 0 || matchOffset > out - targetOffset){
+                throw new IOException("Damaged LZ4 block: match offset " + matchOffset + " out of range");
+            }
+            int matchLength = token & 0x0f;
+            if(matchLength == 15){
+                int[] result = readLength(source, in, end, matchLength);
+                matchLength = result[0];
+                in = result[1];
+            }
+            matchLength += MIN_MATCH;
+            if(matchLength > outEnd - out){
+                throw new IOException("Damaged LZ4 block: match exceeds the original length");
+            }
+            int from = out - matchOffset;
+            while(matchLength > 0){
+                int count = Math.min(matchLength, out - from);
+                System.arraycopy(target, from, target, out, count);
+                out += count;
+                matchLength -= count;
+            }
+        }
+        if(out != outEnd){
+            throw new IOException("LZ4 block holds " + (out - targetOffset) + " instead of " + originalLength + " bytes");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "lz4";
+    }
+
+    private static int writeSequence(byte[] source, int literalStart, int literalLength, int matchOffset,
+                                     int matchLength, byte[] target, int out){
+        int tokenPosition = out++;
+        int token;
+        if(literalLength >= 15){
+            token = 15 << 4;
+            out = writeLength(target, out, literalLength - 15);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(source, literalStart, target, out, literalLength);
+        out += literalLength;
+        if(matchLength > 0){
+            target[out++] = (byte) matchOffset;
+            target[out++] = (byte) (matchOffset >>> 8);
+            int extraLength = matchLength - MIN_MATCH;
+            if(extraLength >= 15){
+                token |= 15;
+                out = writeLength(target, out, extraLength - 15);
+            } else {
+                token |= extraLength;
+            }
+        }
+        target[tokenPosition] = (byte) token;
+        return out;
+    }
+
+    private static int writeLength(byte[] target, int out, int length){
+        while(length >= 255){
+            target[out++] = (byte) 255;
+            length -= 255;
+        }
+        target[out++] = (byte) length;
+        return out;
+    }
+
+    /**
+     * @return the length and the position behind the length bytes
+     */
+    private static int[] readLength(byte[] source, int in, int end, int length) throws IOException {
+        int value;
+        do {
+            if(in == end){
+                throw new IOException("Damaged LZ4 block: truncated length");
+            }
+            value = source[in++] & 0xff;
+            length += value;
+        } while(value == 255);
+        return new int[]{length, in};
+    }
+
+    /**
+     * @return how many bytes from <code>match</code> and <code>position</code> on are equal, up to <code>limit</code>
+     */
+    private static int commonLength(byte[] bytes, int match, int position, int limit){
+        int maxLength = limit - position;
+        if(maxLength <= 0){
+            return 0;
+        }
+        int mismatch = Arrays.mismatch(bytes, match, match + maxLength, bytes, position, limit);
+        return mismatch < 0 ? maxLength : mismatch;
+    }
+
+    private static int readInt(byte[] bytes, int index){
+        return (int) INT.get(bytes, index);
+    }
+
+    /**
+     * Hashes the 5 bytes at <code>index</code>, like the reference implementation on 64 bit platforms.
+     */
+    private static int hash(byte[] bytes, int index){
+        long sequence = (long) LONG.get(bytes, index);
+        return (int) (((sequence << 24) * 889523592379L) >>> (64 - HASH_LOG));
+    }
+}
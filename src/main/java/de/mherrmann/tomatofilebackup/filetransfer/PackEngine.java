@@ -0,0 +1,365 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only chunk store. Chunks are appended to pack files of about {@link #DEFAULT_PACK_SIZE} bytes
+ * instead of getting a file each. When a pack is full or the engine is closed, the pack is sealed by appending
+ * its index: checksum, offset and length of every entry. The database records the location of every chunk,
+ * so the index is only read to verify; repacking copies the locations the database has. Packs left unsealed by
+ * an engine which was never closed are repacked and removed like any other.
+ *
+ * <pre>
+ * pack:    MAGIC | entry bytes ... | index | entry count (int) | index offset (long) | INDEX_MAGIC
+ * index:   per entry checksum (16 bytes) | offset (long) | length (int)
+ * </pre>
+ *
+ * One engine is the only writer of its packs directory. Reading is allowed while appending. Read channels are
+ * kept open per pack, at most {@link #MAX_READ_CHANNELS}, so restoring many chunks of a pack opens it once.
+ */
+public class PackEngine implements Closeable {
+
+    public static final long DEFAULT_PACK_SIZE = 128L*1024*1024;
+    static final int MAX_READ_CHANNELS = 16;
+    static final String PACK_FILE_SUFFIX = ".pack";
+
+    private static final byte[] MAGIC = "TFBPACK1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INDEX_MAGIC = "TFBINDX1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER_LENGTH = Integer.BYTES + Long.BYTES + INDEX_MAGIC.length;
+
+    private final File packsDirectory;
+    private final long packSize;
+
+    private String currentPackId;
+    private FileChannel currentChannel;
+    private long currentPosition;
+    private final List<PackEntry> currentEntries = new ArrayList<>();
+    private final LinkedHashMap<String, FileChannel> readChannels = new LinkedHashMap<>(16, 0.75f, true);
+
+    public PackEngine(File packsDirectory){
+        this(packsDirectory, DEFAULT_PACK_SIZE);
+    }
+
+    /**
+     * @param packsDirectory - the directory the packs are stored in
+     * @param packSize - a pack is sealed as soon as the next entry would make it bigger; 64 to 512 MB are sensible
+     */
+    public PackEngine(File packsDirectory, long packSize){
+        if(packSize <= 0){
+            throw new IllegalArgumentException("Pack size must be positive: " + packSize);
+        }
+        this.packsDirectory = packsDirectory;
+        this.packSize = packSize;
+    }
+
+    /**
+     * Appends the stored bytes of one chunk to the current pack.
+     * @return the location of the appended bytes
+     */
+    public PackLocation append(ChunkId checksum, byte[] bytes, int offset, int length) throws IOException {
+        return append(checksum, ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Appends the bytes from position to limit of <code>bytes</code> to the current pack.
+     * Heap, direct and memory-mapped buffers are written without copying.
+     * @return the location of the appended bytes
+     */
+    public synchronized PackLocation append(ChunkId checksum, ByteBuffer bytes) throws IOException {
+        int length = bytes.remaining();
+        if(currentChannel != null && currentPosition > MAGIC.length && currentPosition + length > packSize){
+            seal();
+        }
+        if(currentChannel == null){
+            openPack();
+        }
+        long entryOffset = currentPosition;
+        writeFully(bytes.duplicate());
+        currentEntries.add(new PackEntry(checksum, entryOffset, length));
+        return new PackLocation(currentPackId, entryOffset, length);
+    }
+
+    /**
+     * @return the stored bytes at <code>location</code>
+     */
+    public byte[] read(PackLocation location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.getLength());
+        try {
+            readFully(location.getPackId(), buffer, location.getOffset());
+            return buffer.array();
+        } catch (IOException exception) {
+            throw new IOException("Error while reading from pack " + location.getPackId(), exception);
+        }
+    }
+
+    /**
+     * Reads the index of a sealed pack.
+     * @throws IOException if the pack is not sealed or damaged
+     */
+    public List<PackEntry> readIndex(String packId) throws IOException {
+        long size = getReadChannel(packId).size();
+        if(size < MAGIC.length + TRAILER_LENGTH){
+            throw new IOException("Pack is not sealed: " + packId);
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        readFully(packId, trailer, size - TRAILER_LENGTH);
+        trailer.flip();
+        int count = trailer.getInt();
+        long indexOffset = trailer.getLong();
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        trailer.get(magic);
+        if(!Arrays.equals(INDEX_MAGIC, magic) || indexOffset < MAGIC.length || indexOffset > size - TRAILER_LENGTH){
+            throw new IOException("Pack is not sealed: " + packId);
+        }
+        ByteBuffer index = ByteBuffer.allocate((int) (size - TRAILER_LENGTH - indexOffset));
+        readFully(packId, index, indexOffset);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(index.array()));
+        List<PackEntry> entries = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            byte[] checksum = new byte[ChunkId.BYTES];
+            input.readFully(checksum);
+            entries.add(new PackEntry(ChunkId.fromBytes(checksum), input.readLong(), input.readInt()));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the ids of all packs in the packs directory, sealed or not
+     */
+    public List<String> getPackIds(){
+        List<String> packIds = new ArrayList<>();
+        File[] packFiles = packsDirectory.listFiles((directory, name) -> name.endsWith(PACK_FILE_SUFFIX));
+        if(packFiles == null){
+            return packIds;
+        }
+        for(File packFile : packFiles){
+            String name = packFile.getName();
+            packIds.add(name.substring(0, name.length() - PACK_FILE_SUFFIX.length()));
+        }
+        return packIds;
+    }
+
+    public long getPackSize(String packId){
+        return getPackFile(packId).length();
+    }
+
+    /**
+     * Finds the packs worth repacking: packs with less live bytes than <code>minLiveRatio</code> of their size,
+     * including packs without any live bytes. The current pack is never returned.
+     * @param liveBytesByPack - stored bytes of the chunks still referenced, per pack
+     * @param minLiveRatio - packs with a smaller share of live bytes are returned
+     */
+    public synchronized List<String> findSparsePacks(Map<String, Long> liveBytesByPack, double minLiveRatio){
+        List<String> sparsePacks = new ArrayList<>();
+        for(String packId : getPackIds()){
+            if(packId.equals(currentPackId)){
+                continue;
+            }
+            long liveBytes = liveBytesByPack.getOrDefault(packId, 0L);
+            if(liveBytes < getPackSize(packId) * minLiveRatio){
+                sparsePacks.add(packId);
+            }
+        }
+        return sparsePacks;
+    }
+
+    /**
+     * Copies the live entries of a pack to the current pack, in offset order. The entries are found through their
+     * recorded locations, not the pack index, so unsealed packs are repacked as well. The old pack stays until
+     * {@link #removePack(String)}, which must only be called after the new locations are recorded.
+     * @param liveLocations - the recorded locations of the chunks still referenced, all in this pack
+     * @return the new location of every live chunk by checksum
+     * @throws IllegalArgumentException if a location is in another pack
+     */
+    public synchronized Map<ChunkId, PackLocation> repack(String packId, Map<ChunkId, PackLocation> liveLocations) throws IOException {
+        List<Map.Entry<ChunkId, PackLocation>> entries = new ArrayList<>(liveLocations.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().getOffset()));
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
+        for(Map.Entry<ChunkId, PackLocation> entry : entries){
+            if(!packId.equals(entry.getValue().getPackId())){
+                throw new IllegalArgumentException("Chunk " + entry.getKey() + " is not in pack " + packId);
+            }
+            byte[] bytes = read(entry.getValue());
+            locations.put(entry.getKey(), append(entry.getKey(), bytes, 0, bytes.length));
+        }
+        return locations;
+    }
+
+    /**
+     * Forces the appended entries of the current pack to disk. Call it before recording their locations, so the
+     * database never points at bytes a crash could lose.
+     */
+    public synchronized void flush() throws IOException {
+        if(currentChannel != null){
+            currentChannel.force(true);
+        }
+    }
+
+    public synchronized void removePack(String packId) throws IOException {
+        if(packId.equals(currentPackId)){
+            throw new IllegalStateException("Can not remove the pack which is currently written: " + packId);
+        }
+        synchronized(readChannels){
+            FileChannel channel = readChannels.remove(packId);
+            if(channel != null){
+                channel.close();
+            }
+        }
+        Files.delete(getPackFile(packId).toPath());
+    }
+
+    /**
+     * Seals the current pack, if any, and closes all read channels. The engine can be used further.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if(currentChannel != null){
+                seal();
+            }
+        } finally {
+            closeReadChannels();
+        }
+    }
+
+    int getReadChannelCount(){
+        synchronized(readChannels){
+            return readChannels.size();
+        }
+    }
+
+    private void openPack() throws IOException {
+        currentPackId = UUID.randomUUID().toString();
+        currentChannel = FileChannel.open(getPackFile(currentPackId).toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        currentPosition = 0;
+        writeFully(ByteBuffer.wrap(MAGIC));
+    }
+
+    private void seal() throws IOException {
+        try {
+            long indexOffset = currentPosition;
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(index);
+            for(PackEntry entry : currentEntries){
+                output.write(entry.getChecksum().toBytes());
+                output.writeLong(entry.getOffset());
+                output.writeInt(entry.getLength());
+            }
+            output.writeInt(currentEntries.size());
+            output.writeLong(indexOffset);
+            output.write(INDEX_MAGIC);
+            writeFully(ByteBuffer.wrap(index.toByteArray()));
+            currentChannel.force(true);
+        } finally {
+            currentChannel.close();
+            currentChannel = null;
+            currentPackId = null;
+            currentEntries.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            currentPosition += currentChannel.write(buffer, currentPosition);
+        }
+    }
+
+    /**
+     * Reads through the cached channel of the pack. A channel closed by another thread, evicted or by
+     * {@link #close()}, is opened again once.
+     */
+    private void readFully(String packId, ByteBuffer buffer, long position) throws IOException {
+        try {
+            readFully(getReadChannel(packId), buffer, position);
+        } catch(ClosedByInterruptException exception){
+            throw exception;
+        } catch(ClosedChannelException exception){
+            readFully(getReadChannel(packId), buffer, position);
+        }
+    }
+
+    private FileChannel getReadChannel(String packId) throws IOException {
+        synchronized(readChannels){
+            FileChannel channel = readChannels.get(packId);
+            if(channel != null && channel.isOpen()){
+                return channel;
+            }
+            channel = FileChannel.open(getPackFile(packId).toPath(), StandardOpenOption.READ);
+            readChannels.put(packId, channel);
+            if(readChannels.size() > MAX_READ_CHANNELS){
+                Iterator<FileChannel> eldest = readChannels.values().iterator();
+                eldest.next().close();
+                eldest.remove();
+            }
+            return channel;
+        }
+    }
+
+    private void closeReadChannels() throws IOException {
+        synchronized(readChannels){
+            IOException failure = null;
+            for(FileChannel channel : readChannels.values()){
+                try {
+                    channel.close();
+                } catch(IOException exception){
+                    failure = exception;
+                }
+            }
+            readChannels.clear();
+            if(failure != null){
+                throw failure;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()){
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0){
+                throw new EOFException("Unexpected end of pack");
+            }
+        }
+    }
+
+    private File getPackFile(String packId){
+        return new File(packsDirectory, packId + PACK_FILE_SUFFIX);
+    }
+
+    /**
+     * One entry of a pack index.
+     */
+    public static class PackEntry {
+        private final ChunkId checksum;
+        private final long offset;
+        private final int length;
+
+        PackEntry(ChunkId checksum, long offset, int length) {
+            this.checksum = checksum;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public ChunkId getChecksum() {
+            return checksum;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
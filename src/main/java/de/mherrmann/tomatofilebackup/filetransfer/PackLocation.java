@@ -0,0 +1,29 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+/**
+ * Where the stored bytes of a chunk are found: the pack, the offset inside the pack and the stored length,
+ * which is the compressed length for compressed chunks.
+ */
+public class PackLocation {
+    private final String packId;
+    private final long offset;
+    private final int length;
+
+    public PackLocation(String packId, long offset, int length) {
+        this.packId = packId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public String getPackId() {
+        return packId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,39 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import java.io.IOException;
+
+/**
+ * Keeps the bytes as they are. Used for chunks which would not get smaller by compression.
+ */
+class StoredCodec implements CompressionCodec {
+
+    @Override
+    public int getId() {
+        return CompressionCodecs.STORED_ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(byte[] source, int offset, int length, byte[] target, int targetOffset) {
+        System.arraycopy(source, offset, target, targetOffset, length);
+        return length;
+    }
+
+    @Override
+    public void decompress(byte[] source, int offset, int length, byte[] target, int targetOffset, int originalLength)
+            throws IOException {
+        if(length != originalLength){
+            throw new IOException("Stored chunk holds " + length + " instead of " + originalLength + " bytes");
+        }
+        System.arraycopy(source, offset, target, targetOffset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "stored";
+    }
+}
@@ -1,29 +1,221 @@
 package de.mherrmann.tomatofilebackup.filetransfer;
 
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingEngine;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.util.List;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class TransferEngine {
+/**
+ * Stores and restores chunks. With a parallelism above 1, chunks are transferred by worker threads which the
+ * engine keeps for its whole life, like the shared checksum pool; idle workers end after
+ * {@value #WORKER_KEEP_ALIVE_SECONDS} seconds. {@link #close()} shuts them down.
+ */
+public class TransferEngine implements Closeable {
 
+    public static final int DEFAULT_PARALLELISM = 1;
+    private static final int IN_FLIGHT_PER_WORKER = 2;
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+    private static final String PART_SUFFIX = ".part";
+
+    private final AtomicInteger workerCount = new AtomicInteger(0);
+    private int parallelism = DEFAULT_PARALLELISM;
+    private ThreadPoolExecutor workers;
+    private boolean closed;
+    private volatile CompressionCodec codec = CompressionCodecs.DEFAULT;
+    private volatile boolean adaptiveCompression = true;
+    private final CompressionStats compressionStats = new CompressionStats();
+
+    /**
+     * Sets the codec chunks are compressed with from now on. Chunks compressed before keep their codec and
+     * can still be restored.
+     * @param codec - the codec, {@link CompressionCodecs#DEFAULT} by default
+     */
+    public void setCodec(CompressionCodec codec){
+        this.codec = Objects.requireNonNull(codec);
+    }
+
+    /**
+     * Decides per chunk whether compressing it is worth the CPU time. Chunks which are incompressible, like JPEGs,
+     * videos, archives or encrypted data, are stored raw with their own codec id instead. On by default.
+     */
+    public void setAdaptiveCompression(boolean adaptiveCompression){
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    /**
+     * @return how many chunks and bytes adaptive compression stored raw and the codec time saved by it
+     */
+    public CompressionStats getCompressionStats(){
+        return compressionStats;
+    }
+
+    /**
+     * Sets how many chunks are stored or restored at the same time. Every worker reads and writes its chunks with
+     * positional I/O on the shared file channel and compresses or decompresses them on its own.
+     * At most {@value #IN_FLIGHT_PER_WORKER} chunks per worker are in flight, so the memory taken by chunk bytes
+     * does not grow with the file size.
+     * @param parallelism - the number of worker threads, default {@value #DEFAULT_PARALLELISM}
+     */
+    public synchronized void setParallelism(int parallelism){
+        if(parallelism < 1){
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if(workers != null && parallelism > this.parallelism){
+            workers.setMaximumPoolSize(parallelism);
+            workers.setCorePoolSize(parallelism);
+        } else if(workers != null){
+            workers.setCorePoolSize(parallelism);
+            workers.setMaximumPoolSize(parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Shuts the workers down once their chunks are transferred. Transfers with a parallelism above 1 fail afterwards.
+     */
+    @Override
+    public synchronized void close(){
+        closed = true;
+        if(workers != null){
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Stores the chunks of <code>sourceFile</code> as one file per checksum. Chunks which occur more than once
+     * are stored once. Every chunk file is written under a temporary name and renamed when complete, so if storing
+     * fails, each chunk file is either complete or absent; chunks not yet started when the error occurred are skipped.
+     */
     public void storeChunks(File sourceFile, File chunksDirectory,
                             List<Chunk> chunks, boolean compress) throws IOException {
         String chunksDirectoryPath = chunksDirectory.getAbsolutePath();
+        List<Chunk> distinctChunks = getDistinctStoredChunks(chunks);
+        try (
+                RandomAccessFile sourceRandomAccessFile = new RandomAccessFile(sourceFile, "r");
+                FileChannel sourceChannel = sourceRandomAccessFile.getChannel()
+        ){
+            forEachChunk(distinctChunks, chunk -> storeChunk(sourceChannel, chunksDirectoryPath, chunk, compress));
+        } catch(IOException exception){
+            throw new IOException("Error: Could not store chunks", exception);
+        }
+    }
+
+    /**
+     * Chunks <code>sourceFile</code> and stores every chunk as soon as the chunking engine emits it,
+     * so storing runs while the rest of the file is still being chunked.
+     * The chunk bytes are taken from the chunking buffers, so the file is read only once.
+     * Chunks which occur more than once are stored once.
+     * @return the stored chunks in offset order
+     */
+    public List<Chunk> chunkAndStore(File sourceFile, File chunksDirectory, ChunkingEngine chunkingEngine,
+                                     boolean compress) throws IOException {
+        String chunksDirectoryPath = chunksDirectory.getAbsolutePath();
+        List<Chunk> chunks = new ArrayList<>();
+        Set<ChunkId> stored = new HashSet<>();
+        try {
+            chunkingEngine.streamChunkData(sourceFile, (chunk, data) -> {
+                if(!chunk.isZero() && stored.add(chunk.getChecksum())){
+                    storeChunk(data, chunksDirectoryPath, chunk, compress);
+                }
+                chunks.add(chunk);
+            });
+        } catch(IOException exception){
+            throw new IOException("Error: Could not store chunks", exception);
+        }
+        return chunks;
+    }
+
+    /**
+     * Chunks <code>sourceFile</code> and appends every chunk to the packs of <code>packEngine</code> as soon as
+     * the chunking engine emits it. The chunk bytes are taken from the chunking buffers, so the file is read only once.
+     * @param locations - the pack location of every chunk by checksum; chunks already in it are not stored again,
+     *                  the locations of newly stored chunks are added; {@link PackEngine#flush()} them before
+     *                  recording them
+     * @return all chunks of the file in offset order
+     */
+    public List<Chunk> chunkAndStore(File sourceFile, PackEngine packEngine, ChunkingEngine chunkingEngine,
+                                     boolean compress, Map<ChunkId, PackLocation> locations) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try {
+            chunkingEngine.streamChunkData(sourceFile, (chunk, data) -> {
+                if(!chunk.isZero() && !locations.containsKey(chunk.getChecksum())){
+                    locations.put(chunk.getChecksum(), storeChunk(data, packEngine, chunk, compress));
+                }
+                chunks.add(chunk);
+            });
+        } catch(IOException exception){
+            throw new IOException("Error: Could not store chunks", exception);
+        }
+        return chunks;
+    }
+
+    /**
+     * Appends the chunks of <code>sourceFile</code> to the packs of <code>packEngine</code>.
+     * Chunks which occur more than once in the file are stored once.
+     * @return the location of every stored chunk by checksum; {@link PackEngine#flush()} them before recording them
+     */
+    public Map<ChunkId, PackLocation> storeChunks(File sourceFile, PackEngine packEngine,
+                                                 List<Chunk> chunks, boolean compress) throws IOException {
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
         try (
                 RandomAccessFile sourceRandomAccessFile = new RandomAccessFile(sourceFile, "r");
                 FileChannel sourceChannel = sourceRandomAccessFile.getChannel()
         ){
             for (Chunk chunk : chunks) {
-                storeChunk(sourceRandomAccessFile, sourceChannel, chunksDirectoryPath, chunk, compress);
+                if(!chunk.isZero() && !locations.containsKey(chunk.getChecksum())){
+                    locations.put(chunk.getChecksum(), storeChunk(sourceChannel, packEngine, chunk, compress));
+                }
             }
         } catch(IOException exception){
             throw new IOException("Error: Could not store chunks", exception);
         }
+        return locations;
+    }
+
+    /**
+     * Restores <code>targetFile</code> from chunks stored in packs. Zero chunks are left as holes.
+     * The file is extended to its final length first, then the chunks are written at their offsets, in parallel
+     * if a parallelism above 1 is set.
+     * @param locations - the pack location of every chunk by checksum
+     */
+    public void restoreFile(File targetFile, PackEngine packEngine, List<Chunk> chunks,
+                            Map<ChunkId, PackLocation> locations, boolean compress) throws IOException {
+        if(targetFile.exists()){
+            Files.delete(targetFile.toPath());
+        }
+        try (
+                RandomAccessFile targetRandomAccessFile = new RandomAccessFile(targetFile, "rw");
+                FileChannel targetChannel = targetRandomAccessFile.getChannel()
+        ){
+            List<Chunk> storedChunks = getStoredChunks(chunks);
+            for (Chunk chunk : storedChunks) {
+                if(!locations.containsKey(chunk.getChecksum())){
+                    throw new IOException("Unknown pack location of chunk " + chunk.getChecksum());
+                }
+            }
+            targetRandomAccessFile.setLength(getFileLength(chunks));
+            forEachChunk(storedChunks, chunk ->
+                    restoreChunk(targetChannel, packEngine, chunk, locations.get(chunk.getChecksum()), compress));
+        } catch(IOException exception){
+            throw new IOException("Error: Could not restore file", exception);
+        }
     }
 
+    /**
+     * Restores <code>targetFile</code> from chunk files. Zero chunks are not written; the file is extended to its
+     * final length first, so they become holes on file systems with sparse file support. The other chunks are
+     * written at their offsets, in parallel if a parallelism above 1 is set.
+     */
     public void restoreFile(File targetFile, File chunksDirectory,
                             List<Chunk> chunks, boolean compress) throws IOException {
         String chunksDirectoryPath = chunksDirectory.getAbsolutePath();
@@ -38,19 +230,21 @@ public class TransferEngine {
             RandomAccessFile targetRandomAccessFile = new RandomAccessFile(targetFile, "rw");
             FileChannel targetChannel = targetRandomAccessFile.getChannel()
         ){
-            for (Chunk chunk : chunks) {
-                restoreChunk(targetRandomAccessFile, targetChannel, chunksDirectoryPath, chunk, compress);
-            }
+            targetRandomAccessFile.setLength(getFileLength(chunks));
+            forEachChunk(getStoredChunks(chunks), chunk -> restoreChunk(targetChannel, chunksDirectoryPath, chunk, compress));
         } catch(IOException exception){
             throw new IOException("Error: Could not restore file", exception);
         }
     }
 
-    public void removeChunkFiles(File chunksDirectory, List<String> checksums) throws IOException, IllegalStateException {
+    public void removeChunkFiles(File chunksDirectory, List<ChunkId> checksums) throws IOException, IllegalStateException {
         boolean untouched = true;
         try {
-            for(String checksum : checksums){
-                File chunkFile = new File(chunksDirectory, checksum);
+            for(ChunkId checksum : checksums){
+                if(checksum.isZeroChunk()){
+                    continue;
+                }
+                File chunkFile = new File(chunksDirectory, checksum.toHex());
                 Files.delete(chunkFile.toPath());
                 untouched = false;
             }
@@ -62,46 +256,298 @@ public class TransferEngine {
         }
     }
 
-    private void storeChunk(RandomAccessFile source, FileChannel sourceChannel,
-                           String chunksDirectoryPath, Chunk chunk, boolean compress) throws IOException {
-        File chunkFile = new File(chunksDirectoryPath, chunk.getChecksum());
-        boolean created = chunkFile.createNewFile();
-        if(!created){
-            throw new IOException("Unknown Error - Chunk file was not created. Checksum: " + chunk.getChecksum());
+    /**
+     * Runs <code>action</code> for every chunk, on the calling thread or on {@link #parallelism} workers.
+     * If a chunk fails, chunks not yet started are skipped and running ones are finished, then the error of the
+     * first failing chunk in list order is thrown.
+     */
+    private void forEachChunk(List<Chunk> chunks, ChunkAction action) throws IOException {
+        int callParallelism = getParallelism();
+        if(Math.min(chunks.size(), callParallelism) <= 1){
+            for(Chunk chunk : chunks){
+                action.run(chunk);
+            }
+            return;
         }
-        try (
-                RandomAccessFile chunkRandomAccessFile = new RandomAccessFile(chunkFile, "rw");
-                FileChannel chunkChannel = chunkRandomAccessFile.getChannel()
-        ){
+        ExecutorService executor = getWorkers();
+        AtomicBoolean skip = new AtomicBoolean(false);
+        Deque<Future<?>> inFlight = new ArrayDeque<>();
+        try {
+            for(Chunk chunk : chunks){
+                if(inFlight.size() >= IN_FLIGHT_PER_WORKER * callParallelism){
+                    inFlight.peek().get();
+                    inFlight.poll();
+                }
+                inFlight.add(executor.submit(() -> {
+                    if(!skip.get()){
+                        action.run(chunk);
+                    }
+                    return null;
+                }));
+            }
+            while(!inFlight.isEmpty()){
+                inFlight.peek().get();
+                inFlight.poll();
+            }
+        } catch(ExecutionException exception){
+            Throwable cause = exception.getCause();
+            if(cause instanceof IOException){
+                throw (IOException) cause;
+            }
+            throw new IOException("Error while transferring chunks", cause);
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while transferring chunks");
+        } finally {
+            skip.set(true);
+            awaitCompletion(inFlight);
+        }
+    }
+
+    /**
+     * @return how many worker threads were started so far
+     */
+    int getStartedWorkerCount(){
+        return workerCount.get();
+    }
+
+    private synchronized int getParallelism(){
+        return parallelism;
+    }
+
+    private synchronized ExecutorService getWorkers(){
+        if(closed){
+            throw new IllegalStateException("Error: Transfer engine is closed.");
+        }
+        if(workers == null){
+            workers = new ThreadPoolExecutor(parallelism, parallelism, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "tfb-transfer-" + workerCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    /**
+     * Waits until the workers are done with the chunks of this call. Running chunks are not interrupted, since
+     * an interrupt would close the shared file channel under them; the caller closes it right after.
+     */
+    private static void awaitCompletion(Collection<Future<?>> tasks){
+        boolean interrupted = false;
+        for(Future<?> task : tasks){
+            while(!task.isDone()){
+                try {
+                    task.get();
+                } catch(InterruptedException exception){
+                    interrupted = true;
+                } catch(ExecutionException | CancellationException exception){
+                    break;
+                }
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<Chunk> getStoredChunks(List<Chunk> chunks){
+        List<Chunk> storedChunks = new ArrayList<>(chunks.size());
+        for(Chunk chunk : chunks){
+            if(!chunk.isZero()){
+                storedChunks.add(chunk);
+            }
+        }
+        return storedChunks;
+    }
+
+    private static List<Chunk> getDistinctStoredChunks(List<Chunk> chunks){
+        Map<ChunkId, Chunk> distinctChunks = new LinkedHashMap<>();
+        for(Chunk chunk : chunks){
+            if(!chunk.isZero()){
+                distinctChunks.putIfAbsent(chunk.getChecksum(), chunk);
+            }
+        }
+        return new ArrayList<>(distinctChunks.values());
+    }
+
+    private void storeChunk(FileChannel sourceChannel, String chunksDirectoryPath,
+                            Chunk chunk, boolean compress) throws IOException {
+        writeChunkFile(chunksDirectoryPath, chunk, partFile -> {
+            if(compress){
+                ByteBuffer chunkBytes = readChunk(sourceChannel, chunk);
+                Files.write(partFile.toPath(), compress(chunkBytes));
+            } else {
+                try (FileChannel chunkChannel = FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE)){
+                    transferFully(sourceChannel, chunk, chunkChannel);
+                }
+            }
+        });
+    }
+
+    private void storeChunk(ByteBuffer data, String chunksDirectoryPath, Chunk chunk, boolean compress) throws IOException {
+        writeChunkFile(chunksDirectoryPath, chunk, partFile -> {
             if(compress){
-                byte[] chunkBytes = new byte[chunk.getLength()];
-                source.seek(chunk.getOffset());
-                source.read(chunkBytes);
-                CompressionEngine.storeCompressed(chunkBytes, chunkFile);
+                Files.write(partFile.toPath(), compress(data));
             } else {
-                sourceChannel.transferTo(chunk.getOffset(), chunk.getLength(), chunkChannel);
+                try (FileChannel chunkChannel = FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE)){
+                    ByteBuffer remaining = data.duplicate();
+                    while(remaining.hasRemaining()){
+                        chunkChannel.write(remaining);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes a chunk file under a temporary name and renames it to the checksum when complete.
+     * The temporary file is removed if writing fails.
+     */
+    private static void writeChunkFile(String chunksDirectoryPath, Chunk chunk, ChunkFileWriter writer) throws IOException {
+        String name = chunk.getChecksum().toHex();
+        File chunkFile = new File(chunksDirectoryPath, name);
+        if(chunkFile.exists()){
+            throw new IOException("Chunk file already exists. Checksum: " + chunk.getChecksum());
+        }
+        File partFile = new File(chunksDirectoryPath, name + PART_SUFFIX);
+        try {
+            Files.deleteIfExists(partFile.toPath());
+            boolean created = partFile.createNewFile();
+            if(!created){
+                throw new IOException("Unknown Error - Chunk file was not created. Checksum: " + chunk.getChecksum());
             }
+            writer.write(partFile);
+            Files.move(partFile.toPath(), chunkFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException exception) {
+            try {
+                Files.deleteIfExists(partFile.toPath());
+            } catch (IOException deleteException) {
+                exception.addSuppressed(deleteException);
+            }
             throw new IOException("Error while storing chunk " + chunk.getChecksum(), exception);
         }
     }
 
-    private void restoreChunk(RandomAccessFile target, FileChannel targetChannel,
+    private static void transferFully(FileChannel sourceChannel, Chunk chunk, FileChannel target) throws IOException {
+        long transferred = 0;
+        while(transferred < chunk.getLength()){
+            long count = sourceChannel.transferTo(chunk.getOffset() + transferred, chunk.getLength() - transferred, target);
+            if(count <= 0 && chunk.getOffset() + transferred >= sourceChannel.size()){
+                throw new EOFException("Source file ends before chunk " + chunk.getChecksum());
+            }
+            transferred += count;
+        }
+    }
+
+    /**
+     * Reads the bytes of <code>chunk</code> with positional reads, so many threads can share the channel.
+     */
+    private static ByteBuffer readChunk(FileChannel sourceChannel, Chunk chunk) throws IOException {
+        ByteBuffer chunkBytes = ByteBuffer.allocate(chunk.getLength());
+        while(chunkBytes.hasRemaining()){
+            int read = sourceChannel.read(chunkBytes, chunk.getOffset() + chunkBytes.position());
+            if(read < 0){
+                throw new EOFException("Source file ends before chunk " + chunk.getChecksum());
+            }
+        }
+        chunkBytes.flip();
+        return chunkBytes;
+    }
+
+    private PackLocation storeChunk(FileChannel sourceChannel, PackEngine packEngine,
+                                    Chunk chunk, boolean compress) throws IOException {
+        return storeChunk(readChunk(sourceChannel, chunk), packEngine, chunk, compress);
+    }
+
+    private PackLocation storeChunk(ByteBuffer data, PackEngine packEngine, Chunk chunk, boolean compress) throws IOException {
+        if(compress){
+            byte[] compressed = compress(data);
+            return packEngine.append(chunk.getChecksum(), compressed, 0, compressed.length);
+        }
+        return packEngine.append(chunk.getChecksum(), data);
+    }
+
+    private byte[] compress(ByteBuffer data) throws IOException {
+        ByteBuffer heapData = toHeapBuffer(data);
+        int offset = heapData.arrayOffset() + heapData.position();
+        if(adaptiveCompression){
+            return CompressionEngine.compressAdaptive(codec, heapData.array(), offset, heapData.remaining(),
+                    compressionStats);
+        }
+        return CompressionEngine.compress(codec, heapData.array(), offset, heapData.remaining());
+    }
+
+    /**
+     * @return <code>data</code> itself if it is backed by an array, otherwise a heap copy of it
+     */
+    private static ByteBuffer toHeapBuffer(ByteBuffer data){
+        if(data.hasArray()){
+            return data;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    private void restoreChunk(FileChannel targetChannel, PackEngine packEngine, Chunk chunk,
+                              PackLocation location, boolean compress) throws IOException {
+        byte[] chunkBytes = packEngine.read(location);
+        if(compress){
+            chunkBytes = CompressionEngine.decompress(chunkBytes, chunk.getLength());
+        }
+        writeFully(targetChannel, ByteBuffer.wrap(chunkBytes), chunk.getOffset());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()){
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static long getFileLength(List<Chunk> chunks){
+        long length = 0;
+        for(Chunk chunk : chunks){
+            length = Math.max(length, chunk.getOffset() + chunk.getLength());
+        }
+        return length;
+    }
+
+    private void restoreChunk(FileChannel targetChannel,
                               String chunksDirectoryPath, Chunk chunk, boolean compress) throws IOException {
-        File chunkFile = new File(chunksDirectoryPath, chunk.getChecksum());
+        File chunkFile = new File(chunksDirectoryPath, chunk.getChecksum().toHex());
         try (
                 RandomAccessFile chunkRandomAccessFile = new RandomAccessFile(chunkFile, "r");
                 FileChannel chunkChannel = chunkRandomAccessFile.getChannel()
         ){
             if(compress){
                 byte[] chunkBytes = CompressionEngine.restoreDecompressed(chunkFile, chunk.getLength());
-                target.write(chunkBytes);
+                writeFully(targetChannel, ByteBuffer.wrap(chunkBytes), chunk.getOffset());
             } else {
-                targetChannel.transferFrom(chunkChannel, chunk.getOffset(), chunk.getLength());
+                long transferred = 0;
+                while(transferred < chunk.getLength()){
+                    long count = targetChannel.transferFrom(chunkChannel, chunk.getOffset() + transferred,
+                            chunk.getLength() - transferred);
+                    if(count <= 0){
+                        throw new EOFException("Chunk file is shorter than the chunk");
+                    }
+                    transferred += count;
+                }
             }
         } catch (IOException exception) {
             throw new IOException("Error while restoring chunk " + chunk.getChecksum(), exception);
         }
     }
 
+    private interface ChunkAction {
+        void run(Chunk chunk) throws IOException;
+    }
+
+    private interface ChunkFileWriter {
+        void write(File partFile) throws IOException;
+    }
+
 }
@@ -0,0 +1,68 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+
+import java.io.IOException;
+
+/**
+ * Zstandard frames at a fixed level, through zstd-jni. Every thread keeps its own compression and
+ * decompression context.
+ */
+class ZstdCodec implements CompressionCodec {
+
+    private static final ThreadLocal<ZstdDecompressCtx> DECOMPRESSORS = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+
+    private final int level;
+    private final ThreadLocal<ZstdCompressCtx> compressors;
+
+    ZstdCodec(int level){
+        if(level < Zstd.minCompressionLevel() || level > Zstd.maxCompressionLevel()){
+            throw new IllegalArgumentException("Zstd level must be from " + Zstd.minCompressionLevel() + " to " +
+                    Zstd.maxCompressionLevel() + ": " + level);
+        }
+        this.level = level;
+        this.compressors = ThreadLocal.withInitial(() -> new ZstdCompressCtx().setLevel(level));
+    }
+
+    @Override
+    public int getId() {
+        return CompressionCodecs.ZSTD_ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return (int) Zstd.compressBound(length);
+    }
+
+    @Override
+    public int compress(byte[] source, int offset, int length, byte[] target, int targetOffset) throws IOException {
+        try {
+            return compressors.get().compressByteArray(target, targetOffset, maxCompressedLength(length),
+                    source, offset, length);
+        } catch(ZstdException exception){
+            throw new IOException("Error while zstd compression", exception);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] source, int offset, int length, byte[] target, int targetOffset, int originalLength)
+            throws IOException {
+        int read;
+        try {
+            read = DECOMPRESSORS.get().decompressByteArray(target, targetOffset, originalLength, source, offset, length);
+        } catch(ZstdException exception){
+            throw new IOException("Damaged zstd frame", exception);
+        }
+        if(read != originalLength){
+            throw new IOException("Zstd frame holds " + read + " instead of " + originalLength + " bytes");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "zstd:" + level;
+    }
+}
@@ -0,0 +1,55 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+
+import java.sql.*;
+
+/**
+ * Rewrites chunk checksums stored as 32 hex digits to the 16 byte BLOBs of {@link ChunkId}. SQLite 3.32 has no
+ * <code>unhex()</code>, so the rows are converted here, a page at a time in rowid order. Rows which already hold
+ * a BLOB are left alone.
+ */
+class ChecksumBlobMigration implements Migration {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final String GET_HEX_CHECKSUMS_SQL = "SELECT rowid, checksum FROM chunk " +
+            "WHERE rowid > ? AND typeof(checksum) = 'text' " +
+            "ORDER BY rowid LIMIT " + PAGE_SIZE;
+    private static final String SET_CHECKSUM_SQL = "UPDATE chunk SET checksum = ? WHERE rowid = ?";
+
+    @Override
+    public String getVersion() {
+        return "1.5";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(GET_HEX_CHECKSUMS_SQL);
+             PreparedStatement update = connection.prepareStatement(SET_CHECKSUM_SQL)){
+            long lastRowId = Long.MIN_VALUE;
+            int converted;
+            do {
+                converted = 0;
+                select.setLong(1, lastRowId);
+                try (ResultSet resultSet = select.executeQuery()){
+                    while(resultSet.next()){
+                        lastRowId = resultSet.getLong(1);
+                        update.setBytes(1, toBytes(resultSet.getString(2), lastRowId));
+                        update.setLong(2, lastRowId);
+                        update.addBatch();
+                        converted++;
+                    }
+                }
+                update.executeBatch();
+            } while(converted == PAGE_SIZE);
+        }
+    }
+
+    private static byte[] toBytes(String hex, long rowId) throws SQLException {
+        try {
+            return ChunkId.fromHex(hex).toBytes();
+        } catch(IllegalArgumentException exception){
+            throw new SQLException("Error: Invalid checksum of chunk " + rowId + ": " + hex, exception);
+        }
+    }
+}
@@ -1,110 +1,261 @@
 package de.mherrmann.tomatofilebackup.persistence;
 
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.filetransfer.PackLocation;
 import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 class ChunkDatabaseEngine {
 
+    private static final String INSERT_CHUNK_SQL = "INSERT INTO chunk(chunk_id,checksum,length) VALUES(?,?,?);";
+    private static final String INSERT_RELATION_SQL =
+            "INSERT INTO file_chunk_relation(file_id,chunk_id,offset) VALUES(?,?,?);";
+
+    static final String GET_CHUNK_BY_CHECKSUM_SQL = "SELECT chunk.*, offset FROM chunk " +
+            "LEFT JOIN file_chunk_relation USING (chunk_id)" +
+            "WHERE checksum = ?";
+    static final String GET_CHUNKS_BY_FILE_ID_SQL = "SELECT chunk.*, offset From chunk " +
+            "LEFT JOIN file_chunk_relation USING(chunk_id) " +
+            "LEFT JOIN file USING(file_id) " +
+            "WHERE file_id = ? " +
+            "ORDER BY offset";
+    static final String GET_PACK_LOCATIONS_BY_PACK_ID_SQL =
+            "SELECT checksum, pack_id, pack_offset, pack_length FROM chunk WHERE pack_id = ?";
+    static final String GET_CHUNKS_BY_CHECKSUMS_SQL = "SELECT * FROM chunk WHERE checksum IN ";
+    static final String ORPHANED_CHUNKS_SQL = "SELECT chunk.chunk_id FROM chunk " +
+            "LEFT JOIN file_chunk_relation USING (chunk_id) " +
+            "WHERE file_id IS NULL";
+    private static final String SET_PACK_LOCATION_SQL =
+            "UPDATE chunk SET pack_id = ?, pack_offset = ?, pack_length = ? WHERE checksum = ?";
+    private static final String GET_LIVE_BYTES_BY_PACK_SQL = "SELECT pack_id, SUM(pack_length) AS live_bytes FROM chunk " +
+            "WHERE pack_id IS NOT NULL " +
+            "GROUP BY pack_id";
+    private static final String GET_ORPHANED_CHECKSUMS_SQL =
+            "SELECT checksum FROM chunk WHERE chunk_id IN (" + ORPHANED_CHUNKS_SQL + ")";
+    private static final String REMOVE_ORPHANED_CHUNKS_SQL = "DELETE FROM chunk WHERE chunk_id IN (" + ORPHANED_CHUNKS_SQL + ")";
+
     private final Connection connection;
+    private final StatementCache statements;
 
-    ChunkDatabaseEngine(Connection connection) {
+    ChunkDatabaseEngine(Connection connection, StatementCache statements) {
         this.connection = connection;
+        this.statements = statements;
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
-    ChunkEntity addChunk(Chunk chunk, String fileUuid) throws SQLException {
-        String chunkUuid = UUID.randomUUID().toString();
-        String sql = "INSERT INTO chunk(chunk_uuid,checksum,length) VALUES(?,?,?);";
+    ChunkEntity addChunk(Chunk chunk, long fileId) throws SQLException {
+        long chunkId;
         try {
             connection.setAutoCommit(false);
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setString(1, chunkUuid);
-            preparedStatement.setString(2, chunk.getChecksum());
+            PreparedStatement preparedStatement = statements.get(INSERT_CHUNK_SQL);
+            preparedStatement.setNull(1, Types.INTEGER);
+            preparedStatement.setBytes(2, chunk.getChecksum().toBytes());
             preparedStatement.setInt(3, chunk.getLength());
             preparedStatement.executeUpdate();
-            addChunkFileRelation(fileUuid, chunkUuid, chunk.getOffset());
+            chunkId = SqlUtil.getGeneratedId(preparedStatement);
+            addChunkFileRelation(fileId, chunkId, chunk.getOffset());
             connection.commit();
         } catch(SQLException exception){
             connection.rollback();
+            connection.setAutoCommit(true);
             throw new SQLException("Error: Could not add chunk. checksum: " + chunk.getChecksum(), exception);
         }
         connection.setAutoCommit(true);
-        return getChunkByChecksum(chunk.getChecksum()).get();
+        return new ChunkEntity(chunkId, chunk);
+    }
+
+    /**
+     * Adds all chunks of a file in one transaction. Chunks whose checksum is already known, from the repository
+     * or from earlier in the list, only get a relation to the file.
+     * @return an entity for every chunk, in the order of <code>chunks</code>
+     */
+    List<ChunkEntity> addChunks(List<Chunk> chunks, long fileId) throws SQLException {
+        Map<ChunkId, ChunkEntity> knownChunks = getChunksByChecksums(getChecksums(chunks));
+        List<ChunkEntity> chunkEntities = new ArrayList<>(chunks.size());
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement = statements.get(INSERT_CHUNK_SQL);
+            long nextId = SqlUtil.getMaxId(statements, "chunk", "chunk_id") + 1;
+            int batched = 0;
+            for(Chunk chunk : chunks){
+                ChunkEntity knownChunk = knownChunks.get(chunk.getChecksum());
+                if(knownChunk == null){
+                    knownChunk = new ChunkEntity(nextId++, chunk);
+                    knownChunks.put(chunk.getChecksum(), knownChunk);
+                    preparedStatement.setLong(1, knownChunk.getId());
+                    preparedStatement.setBytes(2, chunk.getChecksum().toBytes());
+                    preparedStatement.setInt(3, chunk.getLength());
+                    preparedStatement.addBatch();
+                    batched = SqlUtil.executeFullBatch(preparedStatement, batched + 1);
+                }
+                chunkEntities.add(new ChunkEntity(knownChunk.getId(), chunk, knownChunk.getPackLocation()));
+            }
+            preparedStatement.executeBatch();
+            insertChunkFileRelations(fileId, chunkEntities);
+            connection.commit();
+        } catch(SQLException exception){
+            connection.rollback();
+            connection.setAutoCommit(true);
+            throw new SQLException("Error: Could not add chunks of file " + fileId, exception);
+        }
+        connection.setAutoCommit(true);
+        return chunkEntities;
     }
 
-    void addChunkFileRelation(String fileUuid, String chunkUuid, long offset) throws SQLException {
-        String relationUuid = UUID.randomUUID().toString();
-        String sql = "INSERT INTO file_chunk_relation(relation_uuid,file_uuid,chunk_uuid,offset) VALUES(?,?,?,?);";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, relationUuid);
-        preparedStatement.setString(2, fileUuid);
-        preparedStatement.setString(3, chunkUuid);
-        preparedStatement.setLong(4, offset);
+    void addChunkFileRelation(long fileId, long chunkId, long offset) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(INSERT_RELATION_SQL);
+        preparedStatement.setLong(1, fileId);
+        preparedStatement.setLong(2, chunkId);
+        preparedStatement.setLong(3, offset);
         preparedStatement.executeUpdate();
     }
 
-    Optional<ChunkEntity> getChunkByChecksum(String checksum) throws SQLException {
-        String sql = "SELECT chunk.*, offset FROM chunk " +
-                "LEFT JOIN file_chunk_relation USING (chunk_uuid)" +
-                "WHERE checksum = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, checksum);
-        ResultSet resultSet = preparedStatement.executeQuery();
-        if(!resultSet.next()){
-            return Optional.empty();
+    /**
+     * Relates already stored chunks to a file, at the offsets of the given entities, in one transaction.
+     */
+    void addChunkFileRelations(long fileId, List<ChunkEntity> chunks) throws SQLException {
+        try {
+            connection.setAutoCommit(false);
+            insertChunkFileRelations(fileId, chunks);
+            connection.commit();
+        } catch(SQLException exception){
+            connection.rollback();
+            connection.setAutoCommit(true);
+            throw new SQLException("Error: Could not add chunk relations of file " + fileId, exception);
         }
-        Chunk chunk = new Chunk(resultSet.getLong("offset"), resultSet.getInt("length"));
-        chunk.setChecksum(checksum);
-        return Optional.of(new ChunkEntity(resultSet.getString("chunk_uuid"), chunk));
+        connection.setAutoCommit(true);
     }
 
-    List<ChunkEntity> getChunksByFileUuid(String fileUuid) throws SQLException {
-        List<ChunkEntity> chunks = new ArrayList<>();
-        String sql = "SELECT chunk.*, offset From chunk " +
-                "LEFT JOIN file_chunk_relation USING(chunk_uuid) " +
-                "LEFT JOIN file USING(file_uuid) " +
-                "WHERE file_uuid = ? " +
-                "ORDER BY offset";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, fileUuid);
-        ResultSet resultSet = preparedStatement.executeQuery();
-        while(resultSet.next()){
+    Optional<ChunkEntity> getChunkByChecksum(ChunkId checksum) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(GET_CHUNK_BY_CHECKSUM_SQL);
+        preparedStatement.setBytes(1, checksum.toBytes());
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            if(!resultSet.next()){
+                return Optional.empty();
+            }
             Chunk chunk = new Chunk(resultSet.getLong("offset"), resultSet.getInt("length"));
-            chunk.setChecksum(resultSet.getString("checksum"));
-            chunks.add(new ChunkEntity(resultSet.getString("chunk_uuid"), chunk));
+            chunk.setChecksum(checksum);
+            return Optional.of(new ChunkEntity(resultSet.getLong("chunk_id"), chunk, getPackLocation(resultSet)));
+        }
+    }
+
+    /**
+     * Looks all <code>checksums</code> up with as few <code>checksum IN (...)</code> queries as the parameter
+     * limit allows.
+     * @return the stored chunks by checksum; checksums which are not stored are missing
+     */
+    Map<ChunkId, ChunkEntity> getChunksByChecksums(Collection<ChunkId> checksums) throws SQLException {
+        Map<ChunkId, ChunkEntity> chunks = new HashMap<>();
+        List<ChunkId> checksumList = new ArrayList<>(checksums);
+        for(int from = 0; from < checksumList.size(); from += SqlUtil.MAX_PARAMETERS){
+            List<ChunkId> part = checksumList.subList(from, Math.min(from + SqlUtil.MAX_PARAMETERS, checksumList.size()));
+            int parameterCount = SqlUtil.getPaddedParameterCount(part.size());
+            PreparedStatement preparedStatement = statements.get(
+                    GET_CHUNKS_BY_CHECKSUMS_SQL + "(" + SqlUtil.getPlaceholders(parameterCount) + ")");
+            for(int i = 0; i < parameterCount; i++){
+                preparedStatement.setBytes(i + 1, part.get(Math.min(i, part.size() - 1)).toBytes());
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()){
+                while(resultSet.next()){
+                    ChunkId checksum = ChunkId.fromBytes(resultSet.getBytes("checksum"));
+                    Chunk chunk = new Chunk(0, resultSet.getInt("length"));
+                    chunk.setChecksum(checksum);
+                    chunks.putIfAbsent(checksum, new ChunkEntity(resultSet.getLong("chunk_id"), chunk, getPackLocation(resultSet)));
+                }
+            }
         }
         return chunks;
     }
 
-    List<String> removeOrphanedChunks() throws SQLException {
-        List<String> checksums = new ArrayList<>();
-        String getSql = "SELECT checksum FROM chunk WHERE chunk_uuid IN (" +
-                "SELECT chunk.chunk_uuid FROM chunk " +
-                "LEFT JOIN file_chunk_relation USING (chunk_uuid) " +
-                "WHERE file_uuid IS NULL" +
-                ")";
-        Statement getStatement = connection.createStatement();
-        ResultSet resultSet = getStatement.executeQuery(getSql);
-        while(resultSet.next()){
-            checksums.add(resultSet.getString("checksum"));
+    List<ChunkEntity> getChunksByFileId(long fileId) throws SQLException {
+        List<ChunkEntity> chunks = new ArrayList<>();
+        PreparedStatement preparedStatement = statements.get(GET_CHUNKS_BY_FILE_ID_SQL);
+        preparedStatement.setLong(1, fileId);
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            while(resultSet.next()){
+                Chunk chunk = new Chunk(resultSet.getLong("offset"), resultSet.getInt("length"));
+                chunk.setChecksum(ChunkId.fromBytes(resultSet.getBytes("checksum")));
+                chunks.add(new ChunkEntity(resultSet.getLong("chunk_id"), chunk, getPackLocation(resultSet)));
+            }
+        }
+        return chunks;
+    }
+
+    void setPackLocation(ChunkId checksum, PackLocation location) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(SET_PACK_LOCATION_SQL);
+        preparedStatement.setString(1, location.getPackId());
+        preparedStatement.setLong(2, location.getOffset());
+        preparedStatement.setInt(3, location.getLength());
+        preparedStatement.setBytes(4, checksum.toBytes());
+        preparedStatement.executeUpdate();
+    }
+
+    Map<String, Long> getLiveBytesByPack() throws SQLException {
+        Map<String, Long> liveBytes = new HashMap<>();
+        try (ResultSet resultSet = statements.get(GET_LIVE_BYTES_BY_PACK_SQL).executeQuery()){
+            while(resultSet.next()){
+                liveBytes.put(resultSet.getString("pack_id"), resultSet.getLong("live_bytes"));
+            }
+        }
+        return liveBytes;
+    }
+
+    Map<ChunkId, PackLocation> getPackLocationsByPackId(String packId) throws SQLException {
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
+        PreparedStatement preparedStatement = statements.get(GET_PACK_LOCATIONS_BY_PACK_ID_SQL);
+        preparedStatement.setString(1, packId);
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            while(resultSet.next()){
+                locations.put(ChunkId.fromBytes(resultSet.getBytes("checksum")), new PackLocation(
+                        resultSet.getString("pack_id"), resultSet.getLong("pack_offset"), resultSet.getInt("pack_length")));
+            }
+        }
+        return locations;
+    }
+
+    List<ChunkId> removeOrphanedChunks() throws SQLException {
+        List<ChunkId> checksums = new ArrayList<>();
+        try (ResultSet resultSet = statements.get(GET_ORPHANED_CHECKSUMS_SQL).executeQuery()){
+            while(resultSet.next()){
+                checksums.add(ChunkId.fromBytes(resultSet.getBytes("checksum")));
+            }
         }
         try {
-            String removeSql = "DELETE FROM chunk WHERE chunk_uuid IN (" +
-                    "SELECT chunk.chunk_uuid FROM chunk " +
-                    "LEFT JOIN file_chunk_relation USING (chunk_uuid) " +
-                    "WHERE file_uuid IS NULL" +
-                    ")";
-            Statement removeStatement = connection.createStatement();
-            removeStatement.executeUpdate(removeSql);
+            statements.get(REMOVE_ORPHANED_CHUNKS_SQL).executeUpdate();
         } catch(SQLException exception){
             throw new SQLException("Could not remove orphaned chunks.", exception);
         }
 
         return checksums;
     }
+
+    private void insertChunkFileRelations(long fileId, List<ChunkEntity> chunks) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(INSERT_RELATION_SQL);
+        int batched = 0;
+        for(ChunkEntity chunk : chunks){
+            preparedStatement.setLong(1, fileId);
+            preparedStatement.setLong(2, chunk.getId());
+            preparedStatement.setLong(3, chunk.getOffset());
+            preparedStatement.addBatch();
+            batched = SqlUtil.executeFullBatch(preparedStatement, batched + 1);
+        }
+        preparedStatement.executeBatch();
+    }
+
+    private static Set<ChunkId> getChecksums(List<Chunk> chunks){
+        Set<ChunkId> checksums = new LinkedHashSet<>();
+        for(Chunk chunk : chunks){
+            checksums.add(chunk.getChecksum());
+        }
+        return checksums;
+    }
+
+    private static PackLocation getPackLocation(ResultSet resultSet) throws SQLException {
+        String packId = resultSet.getString("pack_id");
+        if(packId == null){
+            return null;
+        }
+        return new PackLocation(packId, resultSet.getLong("pack_offset"), resultSet.getInt("pack_length"));
+    }
 }
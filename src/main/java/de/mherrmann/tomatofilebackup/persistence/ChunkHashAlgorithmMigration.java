@@ -0,0 +1,23 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Records the hash function chunk ids are computed with. Chunks of existing repositories are MurmurHash3 x64 128.
+ */
+class ChunkHashAlgorithmMigration implements Migration {
+
+    @Override
+    public String getVersion() {
+        return "1.4";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            statement.executeUpdate("ALTER TABLE repository ADD COLUMN chunk_hash_algorithm text NOT NULL DEFAULT 'MURMUR3_128'");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Records the chunking parameters per repository. Existing repositories were all chunked with FastCDC 2016,
+ * 512 KiB / 1 MiB / 8 MiB chunks and 16 MiB portions, so the columns default to exactly these values.
+ * They are written out here rather than taken from {@link de.mherrmann.tomatofilebackup.chunking.ChunkingParameters#DEFAULT},
+ * which may change for new repositories.
+ */
+class ChunkingParametersMigration implements Migration {
+
+    private static final String[] COLUMNS = {
+            "ALTER TABLE repository ADD COLUMN chunking_algorithm text NOT NULL DEFAULT 'FASTCDC_2016'",
+            "ALTER TABLE repository ADD COLUMN chunking_normalization integer NOT NULL DEFAULT 2",
+            "ALTER TABLE repository ADD COLUMN min_chunk_size integer NOT NULL DEFAULT 524288",
+            "ALTER TABLE repository ADD COLUMN avg_chunk_size integer NOT NULL DEFAULT 1048576",
+            "ALTER TABLE repository ADD COLUMN max_chunk_size integer NOT NULL DEFAULT 8388608",
+            "ALTER TABLE repository ADD COLUMN portion_size integer NOT NULL DEFAULT 16777216"
+    };
+
+    @Override
+    public String getVersion() {
+        return "1.3";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            for(String sql : COLUMNS){
+                statement.executeUpdate(sql);
+            }
+        }
+    }
+}
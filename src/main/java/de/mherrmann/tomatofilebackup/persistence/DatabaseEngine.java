@@ -2,6 +2,8 @@ package de.mherrmann.tomatofilebackup.persistence;
 
 import de.mherrmann.tomatofilebackup.Constants;
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.filetransfer.PackLocation;
 import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
 import de.mherrmann.tomatofilebackup.persistence.entities.FileEntity;
 import de.mherrmann.tomatofilebackup.persistence.entities.RepositoryEntity;
@@ -10,153 +12,249 @@ import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
 import java.io.File;
 import java.io.IOException;
 import java.sql.*;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Access to the database of a repository, opened in WAL mode. All writes go through one connection, one at a time;
+ * reads run on a pool of read-only connections, concurrently with each other and with the writer, and see the
+ * last commit.
+ */
 public class DatabaseEngine {
 
+    public static final int DEFAULT_READ_CONNECTIONS = 4;
+
     Connection connection;
+    final StatementCache statements;
+    final ReadConnectionPool readConnections;
     private final ChunkDatabaseEngine chunkDatabaseEngine;
     private final FileDatabaseEngine fileDatabaseEngine;
     private final SnapshotDatabaseEngine snapshotDatabaseEngine;
-    private final RepositoryDatabaseEngine repositoryDatabaseEngine;
 
     public DatabaseEngine(String repositoryPath) throws SQLException {
+        this(repositoryPath, PragmaProfile.DEFAULT);
+    }
+
+    public DatabaseEngine(String repositoryPath, PragmaProfile profile) throws SQLException {
+        this(repositoryPath, profile, DEFAULT_READ_CONNECTIONS);
+    }
+
+    /**
+     * @param profile - the pragmas to open the writer and the read connections with
+     * @param readConnections - how many reads can run at a time
+     */
+    public DatabaseEngine(String repositoryPath, PragmaProfile profile, int readConnections) throws SQLException {
         File dbFile = new File(repositoryPath, Constants.DB_FILENAME);
         String url = "jdbc:sqlite:"+dbFile.getAbsolutePath();
+        this.readConnections = new ReadConnectionPool(url, readConnections, profile);
         this.connection = DriverManager.getConnection(url);
-        this.chunkDatabaseEngine = new ChunkDatabaseEngine(connection);
-        this.fileDatabaseEngine = new FileDatabaseEngine(connection);
-        this.snapshotDatabaseEngine = new SnapshotDatabaseEngine(connection);
-        this.repositoryDatabaseEngine = new RepositoryDatabaseEngine(connection);
-        turnOnConstraints();
+        this.statements = new StatementCache(connection);
+        this.chunkDatabaseEngine = new ChunkDatabaseEngine(connection, statements);
+        this.fileDatabaseEngine = new FileDatabaseEngine(connection, statements);
+        this.snapshotDatabaseEngine = new SnapshotDatabaseEngine(connection, statements);
+
+        try {
+            turnOnWriteAheadLog();
+            profile.apply(connection);
+            turnOnConstraints();
+            RepositoryMigrator.migrate(connection);
+        } catch(SQLException exception){
+            connection.close();
+            throw exception;
+        }
     }
 
-    public void destroy() throws SQLException {
-        connection.close();
+    /**
+     * Closes the read connections, the cached statements and the writer.
+     */
+    public synchronized void destroy() throws SQLException {
+        try {
+            readConnections.close();
+            statements.close();
+        } finally {
+            connection.close();
+        }
     }
 
     public RepositoryEntity getRepository() throws SQLException {
-        return repositoryDatabaseEngine.getRepository();
+        return readConnections.read(reader -> reader.repository.getRepository());
     }
 
-    public ChunkEntity addChunk(Chunk chunk, String fileUuid) throws SQLException {
-        return chunkDatabaseEngine.addChunk(chunk, fileUuid);
+    public synchronized ChunkEntity addChunk(Chunk chunk, long fileId) throws SQLException {
+        return chunkDatabaseEngine.addChunk(chunk, fileId);
     }
 
-    public FileEntity addRegularFile(String path, long size, long inode, long ctime, long mtime, long atime,
+    /**
+     * Adds all chunks of a file in one transaction; chunks already in the repository only get a relation to the file.
+     * @return an entity for every chunk, in the order of <code>chunks</code>
+     */
+    public synchronized List<ChunkEntity> addChunks(List<Chunk> chunks, long fileId) throws SQLException {
+        return chunkDatabaseEngine.addChunks(chunks, fileId);
+    }
+
+    public synchronized FileEntity addRegularFile(String path, long size, long inode, long ctime, long mtime, long atime,
                                      boolean compressed, String ownerUser, String ownerGroup, String mod,
                                      SnapshotEntity snapshotEntity) throws SQLException {
         return fileDatabaseEngine.addRegularFile(path, size, inode, ctime, mtime, atime, compressed, ownerUser, ownerGroup, mod, snapshotEntity);
     }
 
-    public FileEntity addDirectory(String path, long inode, long ctime, long mtime, long atime,
+    public synchronized FileEntity addDirectory(String path, long inode, long ctime, long mtime, long atime,
                                    String ownerUser, String ownerGroup, String mod, SnapshotEntity snapshotEntity) throws SQLException {
         return fileDatabaseEngine.addDirectory(path, inode, ctime, mtime, atime, ownerUser, ownerGroup, mod, snapshotEntity);
     }
 
-    public FileEntity addSymlink(String path, long inode, long ctime, long mtime, long atime, boolean targetIsDirectory,
+    public synchronized FileEntity addSymlink(String path, long inode, long ctime, long mtime, long atime, boolean targetIsDirectory,
                                  String linkPath, String ownerUser, String ownerGroup, String mod,
                                  SnapshotEntity snapshotEntity) throws SQLException {
         return fileDatabaseEngine.addSymlink(path, inode, ctime, mtime, atime, targetIsDirectory, linkPath, ownerUser, ownerGroup, mod, snapshotEntity);
     }
 
-    public FileEntity addJunction(String path, long inode, long ctime, long mtime, long atime, String linkPath, String ownerUser,
+    public synchronized FileEntity addJunction(String path, long inode, long ctime, long mtime, long atime, String linkPath, String ownerUser,
                                   String ownerGroup, String mod, SnapshotEntity snapshotEntity) throws SQLException {
         return fileDatabaseEngine.addJunction(path, inode, ctime, mtime, atime, linkPath, ownerUser, ownerGroup, mod, snapshotEntity);
     }
 
-    public SnapshotEntity addSnapshot(String sourcePath, String host, long ctime) throws SQLException {
+    /**
+     * Adds all <code>files</code> to the snapshot in one transaction. The ids of the given entities are ignored.
+     * @return the added files with their new ids, in the order of <code>files</code>
+     */
+    public synchronized List<FileEntity> addFiles(List<FileEntity> files, SnapshotEntity snapshotEntity) throws SQLException {
+        return fileDatabaseEngine.addFiles(files, snapshotEntity);
+    }
+
+    public synchronized SnapshotEntity addSnapshot(String sourcePath, String host, long ctime) throws SQLException {
         return snapshotDatabaseEngine.addSnapshot(sourcePath, host, ctime);
     }
 
-    public void addChunkFileRelation(String fileUuid, String chunkUuid, long offset) throws SQLException {
-        chunkDatabaseEngine.addChunkFileRelation(fileUuid, chunkUuid, offset);
+    public synchronized void addChunkFileRelation(long fileId, long chunkId, long offset) throws SQLException {
+        chunkDatabaseEngine.addChunkFileRelation(fileId, chunkId, offset);
+    }
+
+    /**
+     * Relates already stored chunks to a file, at the offsets of the given entities, in one transaction.
+     */
+    public synchronized void addChunkFileRelations(long fileId, List<ChunkEntity> chunks) throws SQLException {
+        chunkDatabaseEngine.addChunkFileRelations(fileId, chunks);
     }
 
-    public void addFileSnapshotRelation(String fileUuid, String snapshotUuid, String path) throws SQLException {
-        fileDatabaseEngine.addFileSnapshotRelation(fileUuid, snapshotUuid, path);
+    public synchronized void addFileSnapshotRelation(long fileId, long snapshotId, String path) throws SQLException {
+        fileDatabaseEngine.addFileSnapshotRelation(fileId, snapshotId, path);
     }
 
-    public Optional<ChunkEntity> getChunkByChecksum(String checksum) throws SQLException {
-        return chunkDatabaseEngine.getChunkByChecksum(checksum);
+    public synchronized void setPackLocation(ChunkId checksum, PackLocation location) throws SQLException {
+        chunkDatabaseEngine.setPackLocation(checksum, location);
     }
 
-    public List<ChunkEntity> getChunksByFileUuid(String fileUuid) throws SQLException {
-        return chunkDatabaseEngine.getChunksByFileUuid(fileUuid);
+    /**
+     * @return the stored bytes of all chunks per pack; packs without chunks are missing
+     */
+    public Map<String, Long> getLiveBytesByPack() throws SQLException {
+        return readConnections.read(reader -> reader.chunks.getLiveBytesByPack());
+    }
+
+    /**
+     * @return the location of every chunk stored in the pack, by checksum; what {@link
+     *         de.mherrmann.tomatofilebackup.filetransfer.PackEngine#repack(String, Map)} copies
+     */
+    public Map<ChunkId, PackLocation> getPackLocationsByPackId(String packId) throws SQLException {
+        return readConnections.read(reader -> reader.chunks.getPackLocationsByPackId(packId));
+    }
+
+    public Optional<ChunkEntity> getChunkByChecksum(ChunkId checksum) throws SQLException {
+        return readConnections.read(reader -> reader.chunks.getChunkByChecksum(checksum));
+    }
+
+    /**
+     * @return the stored chunks by checksum; checksums which are not stored are missing
+     */
+    public Map<ChunkId, ChunkEntity> getChunksByChecksums(Collection<ChunkId> checksums) throws SQLException {
+        return readConnections.read(reader -> reader.chunks.getChunksByChecksums(checksums));
+    }
+
+    public List<ChunkEntity> getChunksByFileId(long fileId) throws SQLException {
+        return readConnections.read(reader -> reader.chunks.getChunksByFileId(fileId));
     }
 
     public Optional<FileEntity> getFileBySizeAndMtimeAndInode(long size, long mtime, long inode, SnapshotEntity snapshotEntity) throws SQLException {
-        return fileDatabaseEngine.getFileBySizeAndMtimeAndInode(size, mtime, inode, snapshotEntity);
+        return readConnections.read(reader -> reader.files.getFileBySizeAndMtimeAndInode(size, mtime, inode, snapshotEntity));
     }
 
     public Optional<FileEntity> getFileBySizeAndMtimeAndName(long size, long mtime, String name, SnapshotEntity snapshotEntity) throws SQLException {
-        return fileDatabaseEngine.getFileBySizeAndMtimeAndName(size, mtime, name, snapshotEntity);
+        return readConnections.read(reader -> reader.files.getFileBySizeAndMtimeAndName(size, mtime, name, snapshotEntity));
     }
 
-    public List<FileEntity> getFilesBySnapshotUuidOrderByInode(String snapshotUuid) throws SQLException {
-        return fileDatabaseEngine.getFilesBySnapshotUuidOrderByInode(snapshotUuid);
+    public List<FileEntity> getFilesBySnapshotIdOrderByInode(long snapshotId) throws SQLException {
+        return readConnections.read(reader -> reader.files.getFilesBySnapshotIdOrderByInode(snapshotId));
     }
 
-    public List<FileEntity> getFilesBySnapshotUuidOrderByPath(String snapshotUuid) throws SQLException {
-        return fileDatabaseEngine.getFilesBySnapshotUuidOrderByPath(snapshotUuid);
+    public List<FileEntity> getFilesBySnapshotIdOrderByPath(long snapshotId) throws SQLException {
+        return readConnections.read(reader -> reader.files.getFilesBySnapshotIdOrderByPath(snapshotId));
     }
 
     public Optional<SnapshotEntity> getSnapshotByHashId(String hashId) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotByHashId(hashId);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotByHashId(hashId));
     }
 
     public List<SnapshotEntity> getAllSnapshots() throws SQLException {
-        return snapshotDatabaseEngine.getAllSnapshots();
+        return readConnections.read(reader -> reader.snapshots.getAllSnapshots());
     }
 
     public List<SnapshotEntity> getAllSnapshotsSince(long ctimeThreshold) throws SQLException {
-        return snapshotDatabaseEngine.getAllSnapshotsSince(ctimeThreshold);
+        return readConnections.read(reader -> reader.snapshots.getAllSnapshotsSince(ctimeThreshold));
     }
 
     public List<SnapshotEntity> getSnapshotsBySource(String source) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsBySource(source);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsBySource(source));
     }
 
     public List<SnapshotEntity> getSnapshotsBySourceSince(String source, long ctimeThreshold) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsBySourceSince(source, ctimeThreshold);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsBySourceSince(source, ctimeThreshold));
     }
 
     public List<SnapshotEntity> getSnapshotsByHost(String host) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsByHost(host);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsByHost(host));
     }
 
     public List<SnapshotEntity> getSnapshotsByHostSince(String host, long ctimeThreshold) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsByHostSince(host, ctimeThreshold);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsByHostSince(host, ctimeThreshold));
     }
 
     public List<SnapshotEntity> getSnapshotsBySourceAndHost(String source, String host) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsBySourceAndHost(source, host);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsBySourceAndHost(source, host));
     }
 
     public List<SnapshotEntity> getSnapshotsBySourceAndHostSince(String source, String host, long ctimeThreshold) throws SQLException {
-        return snapshotDatabaseEngine.getSnapshotsBySourceAndHostSince(source, host, ctimeThreshold);
+        return readConnections.read(reader -> reader.snapshots.getSnapshotsBySourceAndHostSince(source, host, ctimeThreshold));
     }
 
-    public List<String> removeSnapshotByHashId(String hashId) throws SQLException {
+    public synchronized List<ChunkId> removeSnapshotByHashId(String hashId) throws SQLException {
         return snapshotDatabaseEngine.removeSnapshotByHashId(hashId, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    public List<String> removeSnapshotsButKeepLastRecent(int n) throws SQLException {
+    public synchronized List<ChunkId> removeSnapshotsButKeepLastRecent(int n) throws SQLException {
         return snapshotDatabaseEngine.removeSnapshotsButKeepLastRecent(n, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    public List<String> removeSnapshotsOlderThan(long threshold) throws SQLException {
+    public synchronized List<ChunkId> removeSnapshotsOlderThan(long threshold) throws SQLException {
         return snapshotDatabaseEngine.removeSnapshotsOlderThan(threshold, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    public List<String> removeSnapshotsByUuids(String... uuids) throws SQLException {
+    public synchronized List<ChunkId> removeSnapshotsByUuids(String... uuids) throws SQLException {
         return snapshotDatabaseEngine.removeSnapshotsByUuids(uuids, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
+    private void turnOnWriteAheadLog() throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            statement.execute("PRAGMA journal_mode = WAL");
+        }
+    }
+
     private void turnOnConstraints() throws SQLException {
         String sql = "PRAGMA foreign_keys = ON";
-        Statement statement = connection.createStatement();
-        statement.executeUpdate(sql);
+        try (Statement statement = connection.createStatement()){
+            statement.executeUpdate(sql);
+        }
     }
 }
@@ -8,14 +8,34 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
 
 class FileDatabaseEngine {
 
+    static final String GET_FILE_BY_SIZE_AND_MTIME_AND_INODE_SQL = "SELECT path,file.* FROM file " +
+            "LEFT JOIN file_snapshot_relation USING (file_id) " +
+            "LEFT JOIN snapshot USING (snapshot_id)" +
+            "WHERE file.size = ? AND file.mtime = ? AND file.inode = ? AND snapshot.source = ? AND snapshot.host = ?";
+    static final String GET_FILES_BY_SNAPSHOT_ID_SQL = "SELECT path,file.* From file " +
+            "LEFT JOIN file_snapshot_relation USING(file_id) " +
+            "LEFT JOIN snapshot USING(snapshot_id) " +
+            "WHERE snapshot_id = ? ORDER BY ";
+    private static final String INSERT_FILE_SQL = "INSERT INTO " +
+            "file(file_id,name,size,inode,ctime,mtime,atime,compressed,link,link_path,junction,directory,owner_user,owner_group,mod) " +
+            "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?);";
+    private static final String INSERT_RELATION_SQL =
+            "INSERT INTO file_snapshot_relation(file_id,snapshot_id,path) VALUES(?,?,?);";
+    static final String REMOVE_ORPHANED_FILES_SQL = "DELETE FROM file WHERE file_id IN (" +
+            "SELECT file.file_id FROM file " +
+            "LEFT JOIN file_snapshot_relation USING (file_id) " +
+            "WHERE snapshot_id IS NULL" +
+            ")";
+
     private final Connection connection;
+    private final StatementCache statements;
 
-    FileDatabaseEngine(Connection connection) {
+    FileDatabaseEngine(Connection connection, StatementCache statements) {
         this.connection = connection;
+        this.statements = statements;
     }
 
     FileEntity addRegularFile(String path, long size, long inode, long ctime, long mtime, long atime,
@@ -45,82 +65,102 @@ class FileDatabaseEngine {
                 true, ownerUser, ownerGroup, mod, snapshotEntity);
     }
 
-    void addFileSnapshotRelation(String fileUuid, String snapshotUuid, String path) throws SQLException {
-        String relationUuid = UUID.randomUUID().toString();
-        String sql = "INSERT INTO file_snapshot_relation(relation_uuid,file_uuid,snapshot_uuid,path) VALUES(?,?,?,?);";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, relationUuid);
-        preparedStatement.setString(2, fileUuid);
-        preparedStatement.setString(3, snapshotUuid);
-        preparedStatement.setString(4, path);
+    /**
+     * Adds all <code>files</code> to the snapshot in one transaction. The ids of the given entities are ignored.
+     * @return the added files with their new ids, in the order of <code>files</code>
+     */
+    List<FileEntity> addFiles(List<FileEntity> files, SnapshotEntity snapshotEntity) throws SQLException {
+        List<FileEntity> fileEntities = new ArrayList<>(files.size());
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement fileStatement = statements.get(INSERT_FILE_SQL);
+            PreparedStatement relationStatement = statements.get(INSERT_RELATION_SQL);
+            long nextId = SqlUtil.getMaxId(statements, "file", "file_id") + 1;
+            int batched = 0;
+            for(FileEntity file : files){
+                FileEntity fileEntity = withId(file, nextId++);
+                fileStatement.setLong(1, fileEntity.getId());
+                setFileParameters(fileStatement, fileEntity);
+                fileStatement.addBatch();
+                relationStatement.setLong(1, fileEntity.getId());
+                relationStatement.setLong(2, snapshotEntity.getId());
+                relationStatement.setString(3, fileEntity.getPath());
+                relationStatement.addBatch();
+                batched = SqlUtil.executeFullBatch(fileStatement, batched + 1);
+                if(batched == 0){
+                    relationStatement.executeBatch();
+                }
+                fileEntities.add(fileEntity);
+            }
+            fileStatement.executeBatch();
+            relationStatement.executeBatch();
+            connection.commit();
+        } catch(SQLException exception){
+            connection.rollback();
+            connection.setAutoCommit(true);
+            throw new SQLException("Error: Could not add files", exception);
+        }
+        connection.setAutoCommit(true);
+        return fileEntities;
+    }
+
+    void addFileSnapshotRelation(long fileId, long snapshotId, String path) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(INSERT_RELATION_SQL);
+        preparedStatement.setLong(1, fileId);
+        preparedStatement.setLong(2, snapshotId);
+        preparedStatement.setString(3, path);
         preparedStatement.executeUpdate();
     }
 
     Optional<FileEntity> getFileBySizeAndMtimeAndInode(long size, long mtime, long inode, SnapshotEntity snapshotEntity) throws SQLException {
-        String sql = "SELECT path,file.* FROM file " +
-                "LEFT JOIN file_snapshot_relation USING (file_uuid) " +
-                "LEFT JOIN snapshot USING (snapshot_uuid)" +
-                "WHERE file.size = ? AND file.mtime = ? AND file.inode = ? AND snapshot.source = ? AND snapshot.host = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(GET_FILE_BY_SIZE_AND_MTIME_AND_INODE_SQL);
         preparedStatement.setLong(1, size);
         preparedStatement.setLong(2, mtime);
         preparedStatement.setLong(3, inode);
         preparedStatement.setString(4, snapshotEntity.getSource());
         preparedStatement.setString(5, snapshotEntity.getHost());
-        ResultSet resultSet = preparedStatement.executeQuery();
-        if(!resultSet.next()) {
-            return Optional.empty();
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            if(!resultSet.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(buildFileEntity(resultSet));
         }
-        return Optional.of(buildFileEntity(resultSet));
     }
 
     Optional<FileEntity> getFileBySizeAndMtimeAndName(long size, long mtime, String name, SnapshotEntity snapshotEntity) throws SQLException {
         String sql = "SELECT path,file.* FROM file " +
-                "LEFT JOIN file_snapshot_relation USING (file_uuid) " +
-                "LEFT JOIN snapshot USING (snapshot_uuid)" +
+                "LEFT JOIN file_snapshot_relation USING (file_id) " +
+                "LEFT JOIN snapshot USING (snapshot_id)" +
                 "WHERE file.size = ? AND file.mtime = ? AND file.name = ? AND snapshot.source = ? AND snapshot.host = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setLong(1, size);
         preparedStatement.setLong(2, mtime);
         preparedStatement.setString(3, name);
         preparedStatement.setString(4, snapshotEntity.getSource());
         preparedStatement.setString(5, snapshotEntity.getHost());
-        ResultSet resultSet = preparedStatement.executeQuery();
-        if(!resultSet.next()) {
-            return Optional.empty();
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            if(!resultSet.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(buildFileEntity(resultSet));
         }
-        return Optional.of(buildFileEntity(resultSet));
     }
 
-    List<FileEntity> getFilesBySnapshotUuidOrderByInode(String snapshotUuid) throws SQLException {
-        String sql = "SELECT path,file.* From file " +
-                "LEFT JOIN file_snapshot_relation USING(file_uuid) " +
-                "LEFT JOIN snapshot USING(snapshot_uuid) " +
-                "WHERE snapshot_uuid = ? ORDER BY inode";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, snapshotUuid);
-        return getFilesBySnapshotUuid(preparedStatement);
+    List<FileEntity> getFilesBySnapshotIdOrderByInode(long snapshotId) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(GET_FILES_BY_SNAPSHOT_ID_SQL + "inode");
+        preparedStatement.setLong(1, snapshotId);
+        return getFilesBySnapshotId(preparedStatement);
     }
 
-    List<FileEntity> getFilesBySnapshotUuidOrderByPath(String snapshotUuid) throws SQLException {
-        String sql = "SELECT path,file.* From file " +
-                "LEFT JOIN file_snapshot_relation USING(file_uuid) " +
-                "LEFT JOIN snapshot USING(snapshot_uuid) " +
-                "WHERE snapshot_uuid = ? ORDER BY path";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, snapshotUuid);
-        return getFilesBySnapshotUuid(preparedStatement);
+    List<FileEntity> getFilesBySnapshotIdOrderByPath(long snapshotId) throws SQLException {
+        PreparedStatement preparedStatement = statements.get(GET_FILES_BY_SNAPSHOT_ID_SQL + "path");
+        preparedStatement.setLong(1, snapshotId);
+        return getFilesBySnapshotId(preparedStatement);
     }
 
     void removeOrphanedFiles() throws SQLException {
         try {
-            String sql = "DELETE FROM file WHERE file_uuid IN (" +
-                    "SELECT file.file_uuid FROM file " +
-                    "LEFT JOIN file_snapshot_relation USING (file_uuid) " +
-                    "WHERE snapshot_uuid IS NULL" +
-                    ")";
-            Statement statement = connection.createStatement();
-            statement.executeUpdate(sql);
+            statements.get(REMOVE_ORPHANED_FILES_SQL).executeUpdate();
         } catch(SQLException exception){
             throw new SQLException("Could not remove orphaned files.", exception);
         }
@@ -128,7 +168,7 @@ class FileDatabaseEngine {
 
     private FileEntity buildFileEntity(ResultSet resultSet) throws SQLException {
         return new FileEntity(
-                resultSet.getString("file_uuid"),
+                resultSet.getLong("file_id"),
                 resultSet.getString("path"),
                 resultSet.getLong("size"),
                 resultSet.getLong("inode"),
@@ -146,35 +186,19 @@ class FileDatabaseEngine {
         );
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     private FileEntity addFile(String path, long size, long inode, long ctime, long mtime, long atime, boolean compressed,
                                boolean isLink, String linkPath, boolean isJunction, boolean isDirectory,
                                String ownerUser, String ownerGroup, String mod, SnapshotEntity snapshotEntity) throws SQLException {
-        String fileUuid = UUID.randomUUID().toString();
-        String sql = "INSERT INTO " +
-                "file(file_uuid,name,size,inode,ctime,mtime,atime,compressed,link,link_path,junction,directory,owner_user,owner_group,mod) " +
-                "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?);";
+        FileEntity fileEntity = new FileEntity(0, path, size, inode, ctime, mtime, atime,
+                compressed, isLink, linkPath, isJunction, isDirectory, ownerUser, ownerGroup, mod);
         try {
             connection.setAutoCommit(false);
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            int i = 0;
-            preparedStatement.setString(++i, fileUuid);
-            preparedStatement.setString(++i, new File(path).getName());
-            preparedStatement.setLong(++i, size);
-            preparedStatement.setLong(++i, inode);
-            preparedStatement.setLong(++i, ctime);
-            preparedStatement.setLong(++i, mtime);
-            preparedStatement.setLong(++i, atime);
-            preparedStatement.setBoolean(++i, compressed);
-            preparedStatement.setBoolean(++i, isLink);
-            preparedStatement.setString(++i, linkPath);
-            preparedStatement.setBoolean(++i, isJunction);
-            preparedStatement.setBoolean(++i, isDirectory);
-            preparedStatement.setString(++i, ownerUser);
-            preparedStatement.setString(++i, ownerGroup);
-            preparedStatement.setString(++i, mod);
+            PreparedStatement preparedStatement = statements.get(INSERT_FILE_SQL);
+            preparedStatement.setNull(1, Types.INTEGER);
+            setFileParameters(preparedStatement, fileEntity);
             preparedStatement.executeUpdate();
-            addFileSnapshotRelation(fileUuid, snapshotEntity.getUuid(), path);
+            fileEntity = withId(fileEntity, SqlUtil.getGeneratedId(preparedStatement));
+            addFileSnapshotRelation(fileEntity.getId(), snapshotEntity.getId(), path);
             connection.commit();
         } catch(SQLException exception){
             connection.rollback();
@@ -182,15 +206,43 @@ class FileDatabaseEngine {
             throw new SQLException("Error: Could not add file", exception);
         }
         connection.setAutoCommit(true);
-        return getFileBySizeAndMtimeAndInode(size, mtime, inode, snapshotEntity).get();
+        return fileEntity;
+    }
+
+    /**
+     * Sets all parameters of {@link #INSERT_FILE_SQL} but the id.
+     */
+    private static void setFileParameters(PreparedStatement preparedStatement, FileEntity file) throws SQLException {
+        int i = 1;
+        preparedStatement.setString(++i, new File(file.getPath()).getName());
+        preparedStatement.setLong(++i, file.getSize());
+        preparedStatement.setLong(++i, file.getInode());
+        preparedStatement.setLong(++i, file.getCtime());
+        preparedStatement.setLong(++i, file.getMtime());
+        preparedStatement.setLong(++i, file.getAtime());
+        preparedStatement.setBoolean(++i, file.isCompressed());
+        preparedStatement.setBoolean(++i, file.isLink());
+        preparedStatement.setString(++i, file.getLinkPath());
+        preparedStatement.setBoolean(++i, file.isJunction());
+        preparedStatement.setBoolean(++i, file.isDirectory());
+        preparedStatement.setString(++i, file.getOwnerUser());
+        preparedStatement.setString(++i, file.getOwnerGroup());
+        preparedStatement.setString(++i, file.getMod());
+    }
+
+    private static FileEntity withId(FileEntity file, long id){
+        return new FileEntity(id, file.getPath(), file.getSize(), file.getInode(), file.getCtime(), file.getMtime(),
+                file.getAtime(), file.isCompressed(), file.isLink(), file.getLinkPath(), file.isJunction(),
+                file.isDirectory(), file.getOwnerUser(), file.getOwnerGroup(), file.getMod());
     }
 
-    private List<FileEntity> getFilesBySnapshotUuid(PreparedStatement preparedStatement) throws SQLException {
+    private List<FileEntity> getFilesBySnapshotId(PreparedStatement preparedStatement) throws SQLException {
         List<FileEntity> files = new ArrayList<>();
-        ResultSet resultSet = preparedStatement.executeQuery();
-        while (resultSet.next()) {
-            FileEntity fileEntity = buildFileEntity(resultSet);
-            files.add(fileEntity);
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            while (resultSet.next()) {
+                FileEntity fileEntity = buildFileEntity(resultSet);
+                files.add(fileEntity);
+            }
         }
         return files;
     }
@@ -0,0 +1,39 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Adds the indexes behind chunk lookups by checksum and pack, file lookups by size and mtime,
+ * snapshot lookups by hash id and the joins over both relation tables.
+ * The relation indexes also serve the cascading deletes and the orphan sweeps after removing snapshots.
+ */
+class IndexMigration implements Migration {
+
+    private static final String[] INDEXES = {
+            "CREATE INDEX IF NOT EXISTS chunk_checksum_index ON chunk(checksum)",
+            "CREATE INDEX IF NOT EXISTS chunk_pack_index ON chunk(pack_id, pack_length)",
+            "CREATE INDEX IF NOT EXISTS file_size_mtime_inode_index ON file(size, mtime, inode)",
+            "CREATE INDEX IF NOT EXISTS snapshot_hash_id_index ON snapshot(hash_id)",
+            "CREATE INDEX IF NOT EXISTS snapshot_ctime_index ON snapshot(ctime)",
+            "CREATE INDEX IF NOT EXISTS file_chunk_relation_file_index ON file_chunk_relation(file_uuid, offset)",
+            "CREATE INDEX IF NOT EXISTS file_chunk_relation_chunk_index ON file_chunk_relation(chunk_uuid)",
+            "CREATE INDEX IF NOT EXISTS file_snapshot_relation_snapshot_index ON file_snapshot_relation(snapshot_uuid)",
+            "CREATE INDEX IF NOT EXISTS file_snapshot_relation_file_index ON file_snapshot_relation(file_uuid)"
+    };
+
+    @Override
+    public String getVersion() {
+        return "1.2";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            for(String sql : INDEXES){
+                statement.executeUpdate(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Rebuilds chunk, file, snapshot and both relation tables with INTEGER PRIMARY KEY rowids instead of random
+ * text uuids. Keys are smaller, inserts append to the end of the tables instead of landing on random pages,
+ * and joins compare integers. Snapshots keep their uuid, which their hash id is made from.
+ * The old tables are renamed, their rows copied over with the rowids they already had and then dropped.
+ */
+class IntegerKeyMigration implements Migration {
+
+    private static final String[] RENAME_OLD_TABLES = {
+            "ALTER TABLE file_chunk_relation RENAME TO file_chunk_relation_v1",
+            "ALTER TABLE file_snapshot_relation RENAME TO file_snapshot_relation_v1",
+            "ALTER TABLE chunk RENAME TO chunk_v1",
+            "ALTER TABLE file RENAME TO file_v1",
+            "ALTER TABLE snapshot RENAME TO snapshot_v1"
+    };
+
+    private static final String[] CREATE_TABLES = {
+            "CREATE TABLE chunk(" +
+                    "chunk_id integer PRIMARY KEY," +
+                    "checksum blob," +
+                    "length integer," +
+                    "pack_id text," +
+                    "pack_offset integer," +
+                    "pack_length integer" +
+                    ")",
+            "CREATE TABLE file(" +
+                    "file_id integer PRIMARY KEY," +
+                    "name text," +
+                    "size integer," +
+                    "inode integer," +
+                    "ctime integer," +
+                    "mtime integer," +
+                    "atime integer," +
+                    "compressed integer," +
+                    "link integer," +
+                    "link_path text," +
+                    "junction integer," +
+                    "directory integer," +
+                    "owner_user text," +
+                    "owner_group text," +
+                    "mod text" +
+                    ")",
+            "CREATE TABLE snapshot(" +
+                    "snapshot_id integer PRIMARY KEY," +
+                    "snapshot_uuid text UNIQUE," +
+                    "hash_id text," +
+                    "source text," +
+                    "host text," +
+                    "ctime integer" +
+                    ")",
+            "CREATE TABLE file_chunk_relation(" +
+                    "file_id integer REFERENCES file(file_id) ON DELETE CASCADE," +
+                    "chunk_id integer REFERENCES chunk(chunk_id) ON DELETE CASCADE," +
+                    "offset integer" +
+                    ")",
+            "CREATE TABLE file_snapshot_relation(" +
+                    "file_id integer REFERENCES file(file_id) ON DELETE CASCADE," +
+                    "snapshot_id integer REFERENCES snapshot(snapshot_id) ON DELETE CASCADE," +
+                    "path text" +
+                    ")"
+    };
+
+    private static final String[] COPY_ROWS = {
+            "INSERT INTO chunk(chunk_id,checksum,length,pack_id,pack_offset,pack_length) " +
+                    "SELECT rowid,checksum,length,pack_id,pack_offset,pack_length FROM chunk_v1",
+            "INSERT INTO file(file_id,name,size,inode,ctime,mtime,atime,compressed,link,link_path,junction,directory," +
+                    "owner_user,owner_group,mod) " +
+                    "SELECT rowid,name,size,inode,ctime,mtime,atime,compressed,link,link_path,junction,directory," +
+                    "owner_user,owner_group,mod FROM file_v1",
+            "INSERT INTO snapshot(snapshot_id,snapshot_uuid,hash_id,source,host,ctime) " +
+                    "SELECT rowid,snapshot_uuid,hash_id,source,host,ctime FROM snapshot_v1",
+            "INSERT INTO file_chunk_relation(file_id,chunk_id,offset) " +
+                    "SELECT file_v1.rowid, chunk_v1.rowid, offset FROM file_chunk_relation_v1 " +
+                    "JOIN file_v1 USING (file_uuid) " +
+                    "JOIN chunk_v1 USING (chunk_uuid)",
+            "INSERT INTO file_snapshot_relation(file_id,snapshot_id,path) " +
+                    "SELECT file_v1.rowid, snapshot_v1.rowid, path FROM file_snapshot_relation_v1 " +
+                    "JOIN file_v1 USING (file_uuid) " +
+                    "JOIN snapshot_v1 USING (snapshot_uuid)"
+    };
+
+    private static final String[] DROP_OLD_TABLES = {
+            "DROP TABLE file_chunk_relation_v1",
+            "DROP TABLE file_snapshot_relation_v1",
+            "DROP TABLE chunk_v1",
+            "DROP TABLE file_v1",
+            "DROP TABLE snapshot_v1"
+    };
+
+    private static final String[] INDEXES = {
+            "CREATE INDEX chunk_checksum_index ON chunk(checksum)",
+            "CREATE INDEX chunk_pack_index ON chunk(pack_id, pack_length)",
+            "CREATE INDEX file_size_mtime_inode_index ON file(size, mtime, inode)",
+            "CREATE INDEX snapshot_hash_id_index ON snapshot(hash_id)",
+            "CREATE INDEX snapshot_ctime_index ON snapshot(ctime)",
+            "CREATE INDEX file_chunk_relation_file_index ON file_chunk_relation(file_id, offset)",
+            "CREATE INDEX file_chunk_relation_chunk_index ON file_chunk_relation(chunk_id)",
+            "CREATE INDEX file_snapshot_relation_snapshot_index ON file_snapshot_relation(snapshot_id)",
+            "CREATE INDEX file_snapshot_relation_file_index ON file_snapshot_relation(file_id)"
+    };
+
+    @Override
+    public String getVersion() {
+        return "2.0";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            for(String[] step : new String[][]{RENAME_OLD_TABLES, CREATE_TABLES, COPY_ROWS, DROP_OLD_TABLES, INDEXES}){
+                for(String sql : step){
+                    statement.executeUpdate(sql);
+                }
+            }
+        }
+    }
+}
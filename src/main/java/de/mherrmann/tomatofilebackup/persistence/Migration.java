@@ -0,0 +1,18 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One step of the repository schema. {@link RepositoryMigrator} applies it to repositories recorded with an older
+ * version, in a transaction together with raising <code>repository.version</code> to {@link #getVersion()}.
+ */
+interface Migration {
+
+    /**
+     * @return the repository version this migration leads to
+     */
+    String getVersion();
+
+    void apply(Connection connection) throws SQLException;
+}
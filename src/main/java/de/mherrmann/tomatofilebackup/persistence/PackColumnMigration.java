@@ -0,0 +1,31 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Adds the pack location of chunks. Chunks of existing repositories are chunk files, their location stays NULL.
+ */
+class PackColumnMigration implements Migration {
+
+    private static final String[] COLUMNS = {
+            "ALTER TABLE chunk ADD COLUMN pack_id text",
+            "ALTER TABLE chunk ADD COLUMN pack_offset integer",
+            "ALTER TABLE chunk ADD COLUMN pack_length integer"
+    };
+
+    @Override
+    public String getVersion() {
+        return "1.1";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            for(String sql : COLUMNS){
+                statement.executeUpdate(sql);
+            }
+        }
+    }
+}
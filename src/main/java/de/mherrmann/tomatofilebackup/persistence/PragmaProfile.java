@@ -0,0 +1,49 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Connection settings of a repository database per workload. Repositories are opened in WAL mode, where
+ * <code>synchronous = NORMAL</code> cannot corrupt the database; a power loss may only take the last commits.
+ * Cache sizes are in KiB (negative <code>cache_size</code>), per connection.
+ */
+public enum PragmaProfile {
+    /** Every commit is synced to disk. Small caches, no memory mapping. */
+    DEFAULT("FULL", 2*1024, 0),
+    /** Backups: many small write transactions, lookups of recently written chunks. */
+    BACKUP("NORMAL", 64*1024, 256L*1024*1024),
+    /** Restores, listings and pruning plans: large reads over the whole database. */
+    RESTORE("NORMAL", 32*1024, 1024L*1024*1024);
+
+    private final String synchronous;
+    private final int cacheSizeKib;
+    private final long mmapSize;
+
+    PragmaProfile(String synchronous, int cacheSizeKib, long mmapSize){
+        this.synchronous = synchronous;
+        this.cacheSizeKib = cacheSizeKib;
+        this.mmapSize = mmapSize;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public int getCacheSizeKib() {
+        return cacheSizeKib;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    void apply(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            statement.execute("PRAGMA cache_size = -" + cacheSizeKib);
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Read-only connections to a repository database in WAL mode. Readers see the last commit at the start of
+ * their query and neither block the writer nor each other. Connections are opened on demand, at most
+ * <code>size</code>; a reader waits while all of them are taken.
+ */
+class ReadConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final PragmaProfile profile;
+    private final Semaphore permits;
+    private final Queue<ReadConnection> idle = new ConcurrentLinkedQueue<>();
+    private final List<ReadConnection> opened = new ArrayList<>();
+    private volatile boolean closed;
+
+    ReadConnectionPool(String url, int size, PragmaProfile profile){
+        if(size < 1){
+            throw new IllegalArgumentException("Read connection pool size must be positive: " + size);
+        }
+        this.url = url;
+        this.profile = profile;
+        this.permits = new Semaphore(size, true);
+    }
+
+    <T> T read(ReadOperation<T> operation) throws SQLException {
+        try {
+            permits.acquire();
+        } catch(InterruptedException exception){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", exception);
+        }
+        try {
+            ReadConnection connection = take();
+            try {
+                return operation.apply(connection);
+            } finally {
+                idle.add(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    synchronized int getOpenedCount(){
+        return opened.size();
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        closed = true;
+        SQLException failure = null;
+        for(ReadConnection connection : opened){
+            try {
+                connection.close();
+            } catch(SQLException exception){
+                failure = exception;
+            }
+        }
+        opened.clear();
+        idle.clear();
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    private ReadConnection take() throws SQLException {
+        ReadConnection connection = idle.poll();
+        if(connection != null && !closed){
+            return connection;
+        }
+        return open();
+    }
+
+    private synchronized ReadConnection open() throws SQLException {
+        if(closed){
+            throw new SQLException("Error: Read connection pool is closed.");
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        Connection connection = DriverManager.getConnection(url, config.toProperties());
+        try {
+            profile.apply(connection);
+        } catch(SQLException exception){
+            connection.close();
+            throw exception;
+        }
+        ReadConnection readConnection = new ReadConnection(connection);
+        opened.add(readConnection);
+        return readConnection;
+    }
+
+    @FunctionalInterface
+    interface ReadOperation<T> {
+        T apply(ReadConnection connection) throws SQLException;
+    }
+
+    /**
+     * One read-only connection with its own statements and the engines which query through them.
+     */
+    static class ReadConnection {
+        private final Connection connection;
+        final StatementCache statements;
+        final ChunkDatabaseEngine chunks;
+        final FileDatabaseEngine files;
+        final SnapshotDatabaseEngine snapshots;
+        final RepositoryDatabaseEngine repository;
+
+        private ReadConnection(Connection connection){
+            this.connection = connection;
+            this.statements = new StatementCache(connection);
+            this.chunks = new ChunkDatabaseEngine(connection, statements);
+            this.files = new FileDatabaseEngine(connection, statements);
+            this.snapshots = new SnapshotDatabaseEngine(connection, statements);
+            this.repository = new RepositoryDatabaseEngine(statements);
+        }
+
+        private void close() throws SQLException {
+            try {
+                statements.close();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package de.mherrmann.tomatofilebackup.persistence;
 
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
 import de.mherrmann.tomatofilebackup.persistence.entities.RepositoryEntity;
 
 import java.io.IOException;
@@ -7,21 +10,34 @@ import java.sql.*;
 
 class RepositoryDatabaseEngine {
 
-    private final Connection connection;
+    private final StatementCache statements;
 
-    RepositoryDatabaseEngine(Connection connection) {
-        this.connection = connection;
+    RepositoryDatabaseEngine(StatementCache statements) {
+        this.statements = statements;
     }
 
     RepositoryEntity getRepository() throws SQLException {
         String sql = "SELECT * FROM repository";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        ResultSet resultSet = preparedStatement.executeQuery();
-        resultSet.next();
+        try (ResultSet resultSet = statements.get(sql).executeQuery()){
+            resultSet.next();
+            return buildRepositoryEntity(resultSet);
+        }
+    }
+
+    private static RepositoryEntity buildRepositoryEntity(ResultSet resultSet) throws SQLException {
         return new RepositoryEntity(
                 resultSet.getString("repository_uuid"),
                 resultSet.getString("path"),
-                resultSet.getString("version")
+                resultSet.getString("version"),
+                new ChunkingParameters(
+                        ChunkingAlgorithm.valueOf(resultSet.getString("chunking_algorithm")),
+                        resultSet.getInt("chunking_normalization"),
+                        resultSet.getInt("min_chunk_size"),
+                        resultSet.getInt("avg_chunk_size"),
+                        resultSet.getInt("max_chunk_size"),
+                        resultSet.getInt("portion_size"),
+                        ChunkHashAlgorithm.valueOf(resultSet.getString("chunk_hash_algorithm"))
+                )
         );
     }
 }
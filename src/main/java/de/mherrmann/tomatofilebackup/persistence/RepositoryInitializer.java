@@ -1,6 +1,7 @@
 package de.mherrmann.tomatofilebackup.persistence;
 
 import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,10 +12,27 @@ import java.util.UUID;
 public class RepositoryInitializer {
 
     public static void initialize(String repositoryPath) throws IOException, SQLException {
+        initialize(repositoryPath, ChunkingParameters.DEFAULT);
+    }
+
+    public static void initialize(String repositoryPath, ChunkingParameters chunkingParameters) throws IOException, SQLException {
+        Connection connection = initializeBaseVersion(repositoryPath);
+        RepositoryMigrator.migrate(connection);
+        putChunkingParameters(connection, chunkingParameters);
+        connection.close();
+    }
+
+    /**
+     * Creates the repository at {@link RepositoryMigrator#BASE_VERSION} without migrating it. The tables are
+     * exactly those of version 1.0 and must stay so; schema changes go into a new {@link Migration}.
+     * @return the open connection to the new repository database
+     */
+    static Connection initializeBaseVersion(String repositoryPath) throws IOException, SQLException {
         initializeRepositoryDirectory(repositoryPath);
         Connection connection = createDb(repositoryPath);
         createTables(connection);
         putRepositoryData(connection, repositoryPath);
+        return connection;
     }
 
     private static void initializeRepositoryDirectory(String repositoryPath) throws IOException {
@@ -48,8 +66,7 @@ public class RepositoryInitializer {
                   "checksum text," +
                   "length integer" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void createFileTable(Connection connection) throws SQLException {
@@ -70,8 +87,7 @@ public class RepositoryInitializer {
                   "owner_group text," +
                   "mod text" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void createSnapshotTable(Connection connection) throws SQLException {
@@ -82,8 +98,7 @@ public class RepositoryInitializer {
                   "host text," +
                   "ctime integer" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void createRepositoryTable(Connection connection) throws SQLException {
@@ -92,8 +107,7 @@ public class RepositoryInitializer {
                   "path text," +
                   "version text" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void createFileChunkRelationTable(Connection connection) throws SQLException {
@@ -103,8 +117,7 @@ public class RepositoryInitializer {
                   "chunk_uuid text REFERENCES chunk(chunk_uuid) ON DELETE CASCADE," +
                   "offset integer" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void createFileSnapshotRelationTable(Connection connection) throws SQLException {
@@ -114,18 +127,39 @@ public class RepositoryInitializer {
                   "snapshot_uuid text REFERENCES snapshot(snapshot_uuid) ON DELETE CASCADE, " +
                   "path text" +
                 ");";
-        Statement statement = connection.createStatement();
-        statement.execute(sql);
+        execute(connection, sql);
     }
 
     private static void putRepositoryData(Connection connection, String repositoryPath) throws SQLException {
         String uuid = UUID.randomUUID().toString();
         String sql = "INSERT INTO repository(repository_uuid,path,version) VALUES(?,?,?)";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        preparedStatement.setString(1, uuid);
-        preparedStatement.setString(2, repositoryPath);
-        preparedStatement.setString(3, Constants.VERSION);
-        preparedStatement.executeUpdate();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+            preparedStatement.setString(1, uuid);
+            preparedStatement.setString(2, repositoryPath);
+            preparedStatement.setString(3, RepositoryMigrator.BASE_VERSION);
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    private static void putChunkingParameters(Connection connection, ChunkingParameters chunkingParameters) throws SQLException {
+        String sql = "UPDATE repository SET chunking_algorithm = ?, chunking_normalization = ?, min_chunk_size = ?, " +
+                "avg_chunk_size = ?, max_chunk_size = ?, portion_size = ?, chunk_hash_algorithm = ?";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+            preparedStatement.setString(1, chunkingParameters.getAlgorithm().name());
+            preparedStatement.setInt(2, chunkingParameters.getNormalizationLevel());
+            preparedStatement.setInt(3, chunkingParameters.getMinSize());
+            preparedStatement.setInt(4, chunkingParameters.getAvgSize());
+            preparedStatement.setInt(5, chunkingParameters.getMaxSize());
+            preparedStatement.setInt(6, chunkingParameters.getPortionSize());
+            preparedStatement.setString(7, chunkingParameters.getHashAlgorithm().name());
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()){
+            statement.execute(sql);
+        }
     }
 
 }
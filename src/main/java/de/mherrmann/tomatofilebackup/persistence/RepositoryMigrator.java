@@ -0,0 +1,93 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.Constants;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings the schema of a repository up to {@link Constants#VERSION}. The version a repository is at is recorded
+ * in <code>repository.version</code>. Every {@link Migration} newer than that is applied in order, each in its
+ * own transaction, so an interrupted upgrade resumes with the first migration which is not recorded yet.
+ */
+class RepositoryMigrator {
+
+    /**
+     * The version of the schema {@link RepositoryInitializer} creates, before any migration. Repositories created
+     * by tomato file backup 1.0 are at this version.
+     */
+    static final String BASE_VERSION = "1.0";
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new PackColumnMigration(),
+            new IndexMigration(),
+            new ChunkingParametersMigration(),
+            new ChunkHashAlgorithmMigration(),
+            new ChecksumBlobMigration(),
+            new IntegerKeyMigration()
+    );
+
+    private RepositoryMigrator(){}
+
+    static void migrate(Connection connection) throws SQLException {
+        migrate(connection, MIGRATIONS);
+    }
+
+    static void migrate(Connection connection, List<Migration> migrations) throws SQLException {
+        String version = getVersion(connection);
+        if(compareVersions(version, Constants.VERSION) > 0){
+            throw new SQLException("Error: Repository version " + version + " is newer than supported version " +
+                    Constants.VERSION + ".");
+        }
+        for(Migration migration : migrations){
+            if(compareVersions(migration.getVersion(), version) > 0){
+                apply(connection, migration);
+                version = migration.getVersion();
+            }
+        }
+    }
+
+    static String getVersion(Connection connection) throws SQLException {
+        String sql = "SELECT version FROM repository";
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)){
+            if(!resultSet.next()){
+                throw new SQLException("Error: Repository data is missing.");
+            }
+            return resultSet.getString("version");
+        }
+    }
+
+    /**
+     * Compares dotted versions number by number, so "1.10" is newer than "1.9".
+     */
+    static int compareVersions(String version, String otherVersion){
+        String[] numbers = version.split("\\.");
+        String[] otherNumbers = otherVersion.split("\\.");
+        for(int i = 0; i < Math.max(numbers.length, otherNumbers.length); i++){
+            int number = i < numbers.length ? Integer.parseInt(numbers[i]) : 0;
+            int otherNumber = i < otherNumbers.length ? Integer.parseInt(otherNumbers[i]) : 0;
+            if(number != otherNumber){
+                return Integer.compare(number, otherNumber);
+            }
+        }
+        return 0;
+    }
+
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        try {
+            connection.setAutoCommit(false);
+            migration.apply(connection);
+            try (PreparedStatement preparedStatement = connection.prepareStatement("UPDATE repository SET version = ?")){
+                preparedStatement.setString(1, migration.getVersion());
+                preparedStatement.executeUpdate();
+            }
+            connection.commit();
+        } catch(SQLException exception){
+            connection.rollback();
+            connection.setAutoCommit(true);
+            throw new SQLException("Error: Could not migrate repository to version " + migration.getVersion(), exception);
+        }
+        connection.setAutoCommit(true);
+    }
+}
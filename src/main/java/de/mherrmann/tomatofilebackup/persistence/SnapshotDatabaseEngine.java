@@ -1,6 +1,7 @@
 package de.mherrmann.tomatofilebackup.persistence;
 
 import de.mherrmann.tomatofilebackup.chunking.ChecksumEngine;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
 import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
 
 import java.sql.*;
@@ -8,61 +9,65 @@ import java.util.*;
 
 class SnapshotDatabaseEngine {
 
+    static final String GET_SNAPSHOT_BY_HASH_ID_SQL = "SELECT * FROM snapshot WHERE hash_id = ?";
+
     private final Connection connection;
+    private final StatementCache statements;
 
-    SnapshotDatabaseEngine(Connection connection) {
+    SnapshotDatabaseEngine(Connection connection, StatementCache statements) {
         this.connection = connection;
+        this.statements = statements;
     }
 
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     SnapshotEntity addSnapshot(String sourcePath, String host, long ctime) throws SQLException {
         String snapshotUuid = UUID.randomUUID().toString();
         String hashId = ChecksumEngine.getSnapshotChecksum(snapshotUuid);
         String sql = "INSERT INTO snapshot(snapshot_uuid,hash_id,source,host,ctime) VALUES(?,?,?,?,?);";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, snapshotUuid);
         preparedStatement.setString(2, hashId);
         preparedStatement.setString(3, sourcePath);
         preparedStatement.setString(4, host);
         preparedStatement.setLong(5, ctime);
         preparedStatement.executeUpdate();
-        return getSnapshotByHashId(hashId).get();
+        long snapshotId = SqlUtil.getGeneratedId(preparedStatement);
+        return new SnapshotEntity(snapshotId, snapshotUuid, hashId, sourcePath, host, ctime);
     }
 
     Optional<SnapshotEntity> getSnapshotByHashId(String hashId) throws SQLException {
-        String sql = "SELECT * FROM snapshot WHERE hash_id = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(GET_SNAPSHOT_BY_HASH_ID_SQL);
         preparedStatement.setString(1, hashId);
-        ResultSet resultSet = preparedStatement.executeQuery();
-        if(!resultSet.next()){
-            return Optional.empty();
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            if(!resultSet.next()){
+                return Optional.empty();
+            }
+            return Optional.of(buildSnapshotEntity(resultSet));
         }
-        return Optional.of(buildSnapshotEntity(resultSet));
     }
 
     List<SnapshotEntity> getAllSnapshots() throws SQLException {
         String sql = "SELECT * FROM snapshot ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         return buildSnapshotEntityList(preparedStatement);
     }
 
     List<SnapshotEntity> getAllSnapshotsSince(long ctimeThreshold) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE ctime >= ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setLong(1, ctimeThreshold);
         return buildSnapshotEntityList(preparedStatement);
     }
 
     List<SnapshotEntity> getSnapshotsBySource(String source) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE source = ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, source);
         return buildSnapshotEntityList(preparedStatement);
     }
 
     List<SnapshotEntity> getSnapshotsBySourceSince(String source, long ctimeThreshold) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE source = ? AND ctime >= ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, source);
         preparedStatement.setLong(2, ctimeThreshold);
         return buildSnapshotEntityList(preparedStatement);
@@ -70,14 +75,14 @@ class SnapshotDatabaseEngine {
 
     List<SnapshotEntity> getSnapshotsByHost(String host) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE host = ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, host);
         return buildSnapshotEntityList(preparedStatement);
     }
 
     List<SnapshotEntity> getSnapshotsByHostSince(String host, long ctimeThreshold) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE host = ? AND ctime >= ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, host);
         preparedStatement.setLong(2, ctimeThreshold);
         return buildSnapshotEntityList(preparedStatement);
@@ -85,7 +90,7 @@ class SnapshotDatabaseEngine {
 
     List<SnapshotEntity> getSnapshotsBySourceAndHost(String source, String host) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE source = ? AND host = ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, source);
         preparedStatement.setString(2, host);
         return buildSnapshotEntityList(preparedStatement);
@@ -93,63 +98,66 @@ class SnapshotDatabaseEngine {
 
     List<SnapshotEntity> getSnapshotsBySourceAndHostSince(String source, String host, long ctimeThreshold) throws SQLException {
         String sql = "SELECT * FROM snapshot WHERE source = ? AND host = ? AND ctime >= ? ORDER BY ctime DESC";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, source);
         preparedStatement.setString(2, host);
         preparedStatement.setLong(3, ctimeThreshold);
         return buildSnapshotEntityList(preparedStatement);
     }
 
-    List<String> removeSnapshotByHashId(String hashId, FileDatabaseEngine fileDatabaseEngine,
+    List<ChunkId> removeSnapshotByHashId(String hashId, FileDatabaseEngine fileDatabaseEngine,
                                        ChunkDatabaseEngine chunkDatabaseEngine) throws SQLException {
         connection.setAutoCommit(false);
         String sql = "DELETE FROM snapshot WHERE hash_id = ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setString(1, hashId);
         return removeSnapshots(preparedStatement, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    List<String> removeSnapshotsButKeepLastRecent(int n, FileDatabaseEngine fileDatabaseEngine,
+    List<ChunkId> removeSnapshotsButKeepLastRecent(int n, FileDatabaseEngine fileDatabaseEngine,
                                                   ChunkDatabaseEngine chunkDatabaseEngine) throws SQLException {
         connection.setAutoCommit(false);
-        String sql = "DELETE FROM snapshot WHERE snapshot_uuid NOT IN (SELECT snapshot_uuid FROM snapshot ORDER BY ctime DESC LIMIT ?)";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "DELETE FROM snapshot WHERE snapshot_id NOT IN (SELECT snapshot_id FROM snapshot ORDER BY ctime DESC LIMIT ?)";
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setInt(1, n);
         return removeSnapshots(preparedStatement, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    List<String> removeSnapshotsOlderThan(long threshold, FileDatabaseEngine fileDatabaseEngine,
+    List<ChunkId> removeSnapshotsOlderThan(long threshold, FileDatabaseEngine fileDatabaseEngine,
                                 ChunkDatabaseEngine chunkDatabaseEngine) throws SQLException {
         connection.setAutoCommit(false);
         String sql = "DELETE FROM snapshot WHERE ctime < ?";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        PreparedStatement preparedStatement = statements.get(sql);
         preparedStatement.setLong(1, threshold);
         return removeSnapshots(preparedStatement, fileDatabaseEngine, chunkDatabaseEngine);
     }
 
-    List<String> removeSnapshotsByUuids(String[] uuids, FileDatabaseEngine fileDatabaseEngine,
+    List<ChunkId> removeSnapshotsByUuids(String[] uuids, FileDatabaseEngine fileDatabaseEngine,
                                           ChunkDatabaseEngine chunkDatabaseEngine) throws SQLException {
         if(uuids.length == 0){
             return Collections.emptyList();
         }
         connection.setAutoCommit(false);
-        String sql = "DELETE FROM snapshot WHERE snapshot_uuid IN (" + getPlaceholders(uuids.length) + ")";
-        PreparedStatement preparedStatement = connection.prepareStatement(sql);
-        addUuidsToStatement(uuids, preparedStatement);
-        return removeSnapshots(preparedStatement, fileDatabaseEngine, chunkDatabaseEngine);
+        String sql = "DELETE FROM snapshot WHERE snapshot_uuid IN (" + SqlUtil.getPlaceholders(uuids.length) + ")";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql)){
+            addUuidsToStatement(uuids, preparedStatement);
+            return removeSnapshots(preparedStatement, fileDatabaseEngine, chunkDatabaseEngine);
+        }
     }
 
     private List<SnapshotEntity> buildSnapshotEntityList(PreparedStatement preparedStatement) throws SQLException {
         List<SnapshotEntity> snapshots = new ArrayList<>();
-        ResultSet resultSet = preparedStatement.executeQuery();
-        while(resultSet.next()){
-            snapshots.add(buildSnapshotEntity(resultSet));
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            while(resultSet.next()){
+                snapshots.add(buildSnapshotEntity(resultSet));
+            }
         }
         return snapshots;
     }
 
     private SnapshotEntity buildSnapshotEntity(ResultSet resultSet) throws SQLException {
         return new SnapshotEntity(
+                resultSet.getLong("snapshot_id"),
                 resultSet.getString("snapshot_uuid"),
                 resultSet.getString("hash_id"),
                 resultSet.getString("source"),
@@ -158,9 +166,9 @@ class SnapshotDatabaseEngine {
         );
     }
 
-    private List<String> removeSnapshots(PreparedStatement preparedStatement, FileDatabaseEngine fileDatabaseEngine,
+    private List<ChunkId> removeSnapshots(PreparedStatement preparedStatement, FileDatabaseEngine fileDatabaseEngine,
                                  ChunkDatabaseEngine chunkDatabaseEngine) throws SQLException {
-        List<String> checksums;
+        List<ChunkId> checksums;
         try {
             preparedStatement.executeUpdate();
             fileDatabaseEngine.removeOrphanedFiles();
@@ -181,15 +189,4 @@ class SnapshotDatabaseEngine {
             preparedStatement.setString(++i, uuid);
         }
     }
-
-    private String getPlaceholders(int n){
-        StringBuilder placeholderBuilder = new StringBuilder();
-        for(int i = 1; i <= n; i++){
-            placeholderBuilder.append("?");
-            if(i != n){
-                placeholderBuilder.append(",");
-            }
-        }
-        return placeholderBuilder.toString();
-    }
 }
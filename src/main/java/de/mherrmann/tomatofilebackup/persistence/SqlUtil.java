@@ -0,0 +1,74 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.*;
+
+class SqlUtil {
+
+    /// Stays below the 999 host parameters SQLite allows per statement.
+    static final int MAX_PARAMETERS = 500;
+    static final int BATCH_SIZE = 1000;
+
+    private SqlUtil(){}
+
+    /**
+     * Rounds the number of <code>IN (...)</code> parameters up to a power of two, at most {@link #MAX_PARAMETERS},
+     * so lookups of any size share a handful of cached statements. Fill the extra parameters with repeats.
+     */
+    static int getPaddedParameterCount(int n){
+        int padded = 8;
+        while(padded < n){
+            padded *= 2;
+        }
+        return Math.min(padded, MAX_PARAMETERS);
+    }
+
+    static String getPlaceholders(int n){
+        StringBuilder placeholderBuilder = new StringBuilder();
+        for(int i = 1; i <= n; i++){
+            placeholderBuilder.append("?");
+            if(i != n){
+                placeholderBuilder.append(",");
+            }
+        }
+        return placeholderBuilder.toString();
+    }
+
+    /**
+     * Executes the batch of <code>preparedStatement</code> once it holds {@link #BATCH_SIZE} rows.
+     * @param batched - how many rows are batched, including the one just added
+     * @return how many rows are batched afterwards
+     */
+    static int executeFullBatch(PreparedStatement preparedStatement, int batched) throws SQLException {
+        if(batched < BATCH_SIZE){
+            return batched;
+        }
+        preparedStatement.executeBatch();
+        return 0;
+    }
+
+    /**
+     * @return the rowid <code>statement</code> just inserted
+     */
+    static long getGeneratedId(Statement statement) throws SQLException {
+        try (ResultSet resultSet = statement.getGeneratedKeys()){
+            if(!resultSet.next()){
+                throw new SQLException("Error: No id was generated.");
+            }
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * Rows inserted in a batch get their ids assigned up front, counting up from the highest id in use.
+     * Call it inside the inserting transaction; a concurrent writer then fails on the primary key
+     * instead of taking the same ids.
+     * @return the highest id in <code>table</code>, 0 if it is empty
+     */
+    static long getMaxId(StatementCache statements, String table, String idColumn) throws SQLException {
+        PreparedStatement preparedStatement = statements.get("SELECT IFNULL(MAX(" + idColumn + "), 0) FROM " + table);
+        try (ResultSet resultSet = preparedStatement.executeQuery()){
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one connection, by SQL, so hot queries are parsed by SQLite only once.
+ * The least recently used statement is closed when more than <code>capacity</code> are cached, the rest
+ * when the cache is closed. Callers must not close cached statements, but have to close their result sets,
+ * which resets the statement for the next use.
+ * Not thread-safe, like the connection it belongs to.
+ */
+class StatementCache implements AutoCloseable {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection connection){
+        this(connection, DEFAULT_CAPACITY);
+    }
+
+    StatementCache(Connection connection, int capacity){
+        this.connection = connection;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the cached statement for <code>sql</code>, prepared on first use, without batched rows
+     */
+    PreparedStatement get(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if(statement != null){
+            statement.clearBatch();
+            return statement;
+        }
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        if(statements.size() > capacity){
+            evictEldest();
+        }
+        return statement;
+    }
+
+    int size(){
+        return statements.size();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for(PreparedStatement statement : statements.values()){
+            try {
+                statement.close();
+            } catch(SQLException exception){
+                failure = exception;
+            }
+        }
+        statements.clear();
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    private void evictEldest() throws SQLException {
+        Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+        PreparedStatement statement = eldest.next().getValue();
+        eldest.remove();
+        statement.close();
+    }
+}
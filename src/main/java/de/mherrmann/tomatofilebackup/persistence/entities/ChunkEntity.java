@@ -1,17 +1,31 @@
 package de.mherrmann.tomatofilebackup.persistence.entities;
 
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.filetransfer.PackLocation;
 
 public class ChunkEntity extends Chunk {
-    private String uuid;
+    private long id;
+    private PackLocation packLocation;
 
-    public ChunkEntity(String uuid, Chunk chunk) {
+    public ChunkEntity(long id, Chunk chunk) {
+        this(id, chunk, null);
+    }
+
+    public ChunkEntity(long id, Chunk chunk, PackLocation packLocation) {
         super(chunk.getOffset(), chunk.getLength());
         setChecksum(chunk.getChecksum());
-        this.uuid = uuid;
+        this.id = id;
+        this.packLocation = packLocation;
+    }
+
+    public long getId() {
+        return id;
     }
 
-    public String getUuid() {
-        return uuid;
+    /**
+     * @return where the chunk is stored, or null if it is stored in its own chunk file
+     */
+    public PackLocation getPackLocation() {
+        return packLocation;
     }
 }
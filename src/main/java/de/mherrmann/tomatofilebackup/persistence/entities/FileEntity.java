@@ -1,7 +1,7 @@
 package de.mherrmann.tomatofilebackup.persistence.entities;
 
 public class FileEntity {
-    private final String uuid;
+    private final long id;
     private final String path;
     private final long size;
     private final long inode;
@@ -17,15 +17,15 @@ public class FileEntity {
     private final String ownerGroup;
     private final String mod;
 
-    public FileEntity(String uuid, String path, long size, long inode, long ctime, long mtime, long atime, boolean compressed,
+    public FileEntity(long id, String path, long size, long inode, long ctime, long mtime, long atime, boolean compressed,
                       boolean link, String linkPath, boolean junction, boolean directory, String ownerUser, String ownerGroup, String mod) {
-        this.uuid = uuid;
+        this.id = id;
         this.path = path;
         this.size = size;
         this.inode = inode;
-        this.ctime = mtime;
+        this.ctime = ctime;
         this.mtime = mtime;
-        this.atime = mtime;
+        this.atime = atime;
         this.compressed = compressed;
         this.link = link;
         this.linkPath = linkPath;
@@ -36,8 +36,8 @@ public class FileEntity {
         this.mod = mod;
     }
 
-    public String getUuid() {
-        return uuid;
+    public long getId() {
+        return id;
     }
 
     public String getPath() {
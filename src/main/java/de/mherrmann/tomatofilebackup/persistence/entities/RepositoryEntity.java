@@ -1,14 +1,18 @@
 package de.mherrmann.tomatofilebackup.persistence.entities;
 
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
+
 public class RepositoryEntity {
     private String uuid;
     private String path;
     private String version;
+    private ChunkingParameters chunkingParameters;
 
-    public RepositoryEntity(String uuid, String path, String version) {
+    public RepositoryEntity(String uuid, String path, String version, ChunkingParameters chunkingParameters) {
         this.uuid = uuid;
         this.path = path;
         this.version = version;
+        this.chunkingParameters = chunkingParameters;
     }
 
     public String getUuid() {
@@ -22,4 +26,8 @@ public class RepositoryEntity {
     public String getVersion() {
         return version;
     }
+
+    public ChunkingParameters getChunkingParameters() {
+        return chunkingParameters;
+    }
 }
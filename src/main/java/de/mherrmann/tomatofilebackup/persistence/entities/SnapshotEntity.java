@@ -1,13 +1,15 @@
 package de.mherrmann.tomatofilebackup.persistence.entities;
 
 public class SnapshotEntity {
+    private long id;
     private String uuid;
     private String hashId;
     private String source;
     private String host;
     private long ctime;
 
-    public SnapshotEntity(String uuid, String hashId, String source, String host, long ctime) {
+    public SnapshotEntity(long id, String uuid, String hashId, String source, String host, long ctime) {
+        this.id = id;
         this.uuid = uuid;
         this.hashId = hashId;
         this.source = source;
@@ -15,6 +17,10 @@ public class SnapshotEntity {
         this.ctime = ctime;
     }
 
+    public long getId() {
+        return id;
+    }
+
     public String getUuid() {
         return uuid;
     }
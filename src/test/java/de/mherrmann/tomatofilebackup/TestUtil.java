@@ -27,10 +27,14 @@ public class TestUtil {
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static File buildRandomTestFile(long length) throws Exception {
+        return buildRandomTestFile(new File("./test.bin"), length);
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static File buildRandomTestFile(File file, long length) throws Exception {
         Random random = new Random();
         long remaining = length;
         long maxStepLength = 1024*1024*1024;
-        File file = new File("./test.bin");
         file.createNewFile();
         FileOutputStream outputStream = new FileOutputStream(file);
         while(remaining > 0){
@@ -58,6 +62,23 @@ public class TestUtil {
         return file;
     }
 
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    public static File buildTestFileWithZeroRun(int leadingLength, int zeroLength, int trailingLength) throws Exception {
+        File file = new File("./test.bin");
+        file.createNewFile();
+        Random random = new Random();
+        byte[] leading = new byte[leadingLength];
+        byte[] trailing = new byte[trailingLength];
+        random.nextBytes(leading);
+        random.nextBytes(trailing);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(leading);
+        outputStream.write(new byte[zeroLength]);
+        outputStream.write(trailing);
+        outputStream.close();
+        return file;
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void createTestDirectory() {
         File dir = new File("./test");
@@ -3,26 +3,94 @@ package de.mherrmann.tomatofilebackup.chunking;
 import static org.junit.jupiter.api.Assertions.*;
 
 import de.mherrmann.tomatofilebackup.TestUtil;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
 class ChecksumEngineTest {
 
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @AfterEach
+    public void tearDown(){
+        new File("./test.bin").delete();
+    }
+
     @Test
     void shouldGetChecksumFromFixedMessage(){
         byte[] bytes = "HASH".getBytes();
 
-        String checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
+        ChunkId checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
 
-        assertEquals("4341BCFB28F64BED93ACA9A378AE7D8C", checksum);
+        assertEquals("4341BCFB28F64BED93ACA9A378AE7D8C", checksum.toHex());
     }
 
     @Test
     void shouldGetChecksumFromReproducibleRandomBytes(){
         byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
 
-        String checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
+        ChunkId checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
+
+        assertEquals("BD09C7FCA1866E2CA6FB601FB9E9626F", checksum.toHex());
+    }
+
+    @Test
+    void shouldGetSameChecksumFromDirectBuffer(){
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+
+        for(int length = 0; length <= 64; length++){
+            ChunkId checksum = ChecksumEngine.getChunkChecksum(buffer, 7, length);
+
+            assertEquals(ChecksumEngine.getChunkChecksum(bytes, 7, length), checksum);
+        }
+        assertEquals("BD09C7FCA1866E2CA6FB601FB9E9626F", ChecksumEngine.getChunkChecksum(buffer, 0, bytes.length).toHex());
+    }
+
+    @Test
+    void shouldGetSameChecksumAsCommonsCodec(){
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        ByteBuffer bigEndian = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.BIG_ENDIAN);
+        bigEndian.put(bytes);
+        ByteBuffer readOnly = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        ByteBuffer slice = ByteBuffer.wrap(bytes, 3, bytes.length - 3).slice();
+
+        for(int length = 0; length <= 300; length += 7){
+            for(int start = 0; start < 16; start++){
+                long[] expected = MurmurHash3.hash128x64(bytes, start + 3, length, 0);
+                ChunkId expectedChecksum = new ChunkId(expected[0], expected[1]);
+
+                assertEquals(expectedChecksum, ChecksumEngine.getChunkChecksum(bytes, start + 3, length));
+                assertEquals(expectedChecksum, ChecksumEngine.getChunkChecksum(bigEndian, start + 3, length));
+                assertEquals(expectedChecksum, ChecksumEngine.getChunkChecksum(readOnly, start + 3, length));
+                assertEquals(expectedChecksum, ChecksumEngine.getChunkChecksum(slice, start, length));
+            }
+        }
+    }
+
+    @Test
+    void shouldGetSameChecksumFromMappedBuffer() throws Exception {
+        File file = TestUtil.buildRandomTestFile(1024*1024 + 13);
+        byte[] bytes = new byte[(int) file.length()];
+        try (
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel()
+        ){
+            randomAccessFile.readFully(bytes);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+
+            ChunkId checksum = ChecksumEngine.getChunkChecksum(mapped, 5, bytes.length - 5);
 
-        assertEquals("BD09C7FCA1866E2CA6FB601FB9E9626F", checksum);
+            long[] expected = MurmurHash3.hash128x64(bytes, 5, bytes.length - 5, 0);
+            assertEquals(new ChunkId(expected[0], expected[1]), checksum);
+        }
     }
 
 }
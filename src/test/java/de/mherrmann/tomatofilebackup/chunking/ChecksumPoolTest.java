@@ -0,0 +1,81 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ChecksumPoolTest {
+
+    private final ChecksumPool pool = new ChecksumPool(2, 2);
+
+    @AfterEach
+    void tearDown(){
+        pool.shutdown();
+    }
+
+    @Test
+    void shouldRunAllTasks() throws Exception {
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        for(int i = 0; i < 100; i++){
+            tasks.add(pool.submit(counter::incrementAndGet));
+        }
+
+        for(Future<?> task : tasks){
+            task.get();
+        }
+        assertEquals(100, counter.get());
+    }
+
+    @Test
+    void shouldReportFailure() throws Exception {
+        Future<?> task = pool.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class, task::get);
+
+        assertEquals(IllegalStateException.class, exception.getCause().getClass());
+    }
+
+    @Test
+    void shouldBlockWhileSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for(int i = 0; i < 4; i++){
+            pool.submit(() -> awaitQuietly(release));
+        }
+        CountDownLatch submitted = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            try {
+                pool.submit(() -> {});
+                submitted.countDown();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        reader.start();
+
+        assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitQuietly(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
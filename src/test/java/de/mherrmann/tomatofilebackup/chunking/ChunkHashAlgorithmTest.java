@@ -0,0 +1,57 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+class ChunkHashAlgorithmTest {
+
+    @Test
+    void shouldHashMurmur3LikeChecksumEngine() {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+
+        ChunkId hash = ChunkHashAlgorithm.MURMUR3_128.hash(bytes, 10, 1000);
+
+        assertEquals(ChecksumEngine.getChunkChecksum(bytes, 10, 1000), hash);
+    }
+
+    @Test
+    void shouldHashXxh3() {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+
+        ChunkId hash = ChunkHashAlgorithm.XXH3_128.hash(bytes, 10, 1000);
+
+        assertEquals(Xxh3.hash128(bytes, 10, 1000), hash);
+    }
+
+    @Test
+    void shouldHashSha256TruncatedTo128Bits() throws Exception {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(bytes, 10, 1000);
+        byte[] expected = Arrays.copyOf(digest.digest(), ChunkId.BYTES);
+
+        ChunkId hash = ChunkHashAlgorithm.SHA_256.hash(bytes, 10, 1000);
+
+        assertArrayEquals(expected, hash.toBytes());
+    }
+
+    @Test
+    void shouldHashBuffersLikeArrays() {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+
+        for(ChunkHashAlgorithm algorithm : ChunkHashAlgorithm.values()){
+            ChunkId expected = algorithm.hash(bytes, 17, 100_000);
+
+            assertEquals(expected, algorithm.hash(direct, 17, 100_000), algorithm.name());
+            assertEquals(expected, algorithm.hash(ByteBuffer.wrap(bytes), 17, 100_000), algorithm.name());
+        }
+    }
+}
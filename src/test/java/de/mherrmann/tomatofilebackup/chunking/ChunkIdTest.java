@@ -0,0 +1,58 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkIdTest {
+
+    private static final String HEX = "BD09C7FCA1866E2CA6FB601FB9E9626F";
+
+    @Test
+    void shouldConvertToSameHexAsFormat() {
+        ChunkId chunkId = new ChunkId(0xBD09C7FCA1866E2CL, 0xA6FB601FB9E9626FL);
+
+        String hex = chunkId.toHex();
+
+        assertEquals(String.format("%016X%016X", chunkId.getHigh(), chunkId.getLow()), hex);
+        assertEquals(HEX, hex);
+    }
+
+    @Test
+    void shouldParseHex() {
+        ChunkId chunkId = ChunkId.fromHex(HEX.toLowerCase());
+
+        assertEquals(0xBD09C7FCA1866E2CL, chunkId.getHigh());
+        assertEquals(0xA6FB601FB9E9626FL, chunkId.getLow());
+    }
+
+    @Test
+    void shouldConvertBytesBothWays() {
+        ChunkId chunkId = ChunkId.fromHex(HEX);
+
+        byte[] bytes = chunkId.toBytes();
+
+        assertEquals(ChunkId.BYTES, bytes.length);
+        assertEquals((byte) 0xBD, bytes[0]);
+        assertEquals((byte) 0x6F, bytes[15]);
+        assertEquals(chunkId, ChunkId.fromBytes(bytes));
+        assertEquals(chunkId.hashCode(), ChunkId.fromBytes(bytes).hashCode());
+    }
+
+    @Test
+    void shouldFailWithInvalidHex() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex("ABC"));
+        assertThrows(IllegalArgumentException.class, () -> ChunkId.fromHex(HEX.replace('B', 'X')));
+    }
+
+    @Test
+    void shouldMarkZeroChunks() {
+        ChunkId zeroChunkId = ChunkId.forZeroChunk(4096);
+
+        assertTrue(zeroChunkId.isZeroChunk());
+        assertEquals(ChunkId.forZeroChunk(4096), zeroChunkId);
+        assertNotEquals(ChunkId.forZeroChunk(4097), zeroChunkId);
+        assertFalse(new ChunkId(0, 4096).isZeroChunk());
+        assertFalse(ChunkId.fromHex(HEX).isZeroChunk());
+    }
+}
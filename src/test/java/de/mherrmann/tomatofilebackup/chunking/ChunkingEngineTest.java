@@ -8,7 +8,12 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 class ChunkingEngineTest {
 
@@ -16,6 +21,7 @@ class ChunkingEngineTest {
     @AfterEach
     public void tearDown(){
         new File("./test.bin").delete();
+        TestUtil.removeTestFiles();
     }
 
     @Test
@@ -51,6 +57,280 @@ class ChunkingEngineTest {
         assertValidChunking(chunks, new RandomAccessFile(file, "rw"));
     }
 
+    @Test
+    void shouldGetChunksForLargeSizeFileWithFastCDC2020() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine(new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2020, 2));
+        ChunkingEngine mappingEngine = new ChunkingEngine(new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2020, 2));
+        mappingEngine.enableMemoryMapping(ChunkingEngine.MAX_CHUNK_SIZE*2);
+
+        List<Chunk> chunks = engine.getChunks(file);
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+        assertSameChunks(chunks, mappingEngine.getChunks(file));
+    }
+
+    @Test
+    void shouldGetChunksForLargeSizeFileWithFastCDC64() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine(new ChunkingParameters(ChunkingAlgorithm.FASTCDC_64, 3));
+
+        List<Chunk> chunks = engine.getChunks(file);
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+    }
+
+    @Test
+    void shouldGetChunksWithRepositoryHashAlgorithm() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE);
+        ChunkingParameters parameters = new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2,
+                ChunkingEngine.MIN_CHUNK_SIZE, ChunkingEngine.AVG_CHUNK_SIZE, ChunkingEngine.MAX_CHUNK_SIZE,
+                ChunkingEngine.PORTION, ChunkHashAlgorithm.XXH3_128);
+        List<Chunk> murmurChunks = new ChunkingEngine().getChunks(file);
+
+        List<Chunk> chunks = new ChunkingEngine(parameters).getChunks(file);
+
+        assertEquals(murmurChunks.size(), chunks.size());
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        for(Chunk chunk : chunks){
+            byte[] bytes = new byte[chunk.getLength()];
+            randomAccessFile.seek(chunk.getOffset());
+            randomAccessFile.readFully(bytes);
+            assertEquals(Xxh3.hash128(bytes, 0, bytes.length), chunk.getChecksum());
+        }
+        randomAccessFile.close();
+    }
+
+    @Test
+    void shouldGetChunksWithRepositoryChunkSizes() throws Exception {
+        ChunkingParameters parameters = new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2,
+                16*1024, 64*1024, 256*1024, 1024*1024);
+        File file = TestUtil.buildRandomTestFile(parameters.getPortionSize() * 3L + 1000);
+        ChunkingEngine engine = new ChunkingEngine(parameters);
+
+        List<Chunk> chunks = engine.getChunks(file);
+
+        assertEquals(file.length(), getTotalLength(chunks));
+        assertContinuous(chunks);
+        assertValidChecksums(chunks, new RandomAccessFile(file, "r"));
+        for(int i = 0; i < chunks.size() - 1; i++){
+            assertTrue(chunks.get(i).getLength() >= parameters.getMinSize());
+            assertTrue(chunks.get(i).getLength() <= parameters.getMaxSize());
+        }
+        assertTrue(chunks.size() > file.length() / parameters.getMaxSize());
+    }
+
+    @Test
+    void shouldDetectZeroChunks() throws Exception {
+        int zeroLength = ChunkingEngine.PORTION * 2;
+        File file = TestUtil.buildTestFileWithZeroRun(ChunkingEngine.MAX_CHUNK_SIZE, zeroLength, ChunkingEngine.MAX_CHUNK_SIZE);
+        ChunkingEngine engine = new ChunkingEngine();
+
+        List<Chunk> chunks = engine.getChunks(file);
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+        long zeroChunksLength = 0;
+        for(Chunk chunk : chunks){
+            if(chunk.isZero()){
+                assertEquals(ChunkId.forZeroChunk(chunk.getLength()), chunk.getChecksum());
+                zeroChunksLength += chunk.getLength();
+            }
+        }
+        assertTrue(zeroChunksLength > zeroLength - 2L*ChunkingEngine.MAX_CHUNK_SIZE);
+        assertFalse(chunks.get(0).isZero());
+        assertFalse(chunks.get(chunks.size()-1).isZero());
+    }
+
+    @Test
+    void shouldStreamChunksInOffsetOrder() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine();
+        List<Chunk> chunks = new ArrayList<>();
+
+        engine.streamChunks(file, chunk -> {
+            assertNotNull(chunk.getChecksum());
+            chunks.add(chunk);
+        });
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "rw"));
+    }
+
+    @Test
+    void shouldStreamChunkData() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine();
+        ChunkingEngine mappingEngine = new ChunkingEngine();
+        mappingEngine.enableMemoryMapping(ChunkingEngine.MAX_CHUNK_SIZE*2);
+        byte[] fileBytes = Files.readAllBytes(file.toPath());
+        List<Chunk> chunks = new ArrayList<>();
+
+        engine.streamChunkData(file, (chunk, data) -> assertChunkData(fileBytes, chunk, data));
+        mappingEngine.streamChunkData(file, (chunk, data) -> {
+            assertChunkData(fileBytes, chunk, data);
+            chunks.add(chunk);
+        });
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+    }
+
+    @Test
+    void shouldPassConsumerFailure() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION);
+        ChunkingEngine engine = new ChunkingEngine();
+
+        IOException exception = assertThrows(IOException.class, () -> engine.streamChunks(file, chunk -> {
+            throw new IOException("consumer failed");
+        }));
+
+        assertEquals("consumer failed", exception.getMessage());
+    }
+
+    @Test
+    void shouldChunkFilesInParallel() throws Exception {
+        TestUtil.createTestDirectory();
+        List<File> files = new ArrayList<>();
+        files.add(TestUtil.buildRandomTestFile(new File("./test/1.bin"), ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE));
+        files.add(TestUtil.buildRandomTestFile(new File("./test/2.bin"), ChunkingEngine.PORTION));
+        files.add(TestUtil.buildRandomTestFile(new File("./test/3.bin"), ChunkingEngine.MIN_CHUNK_SIZE));
+        ChunkingEngine engine = new ChunkingEngine();
+
+        Map<File, List<Chunk>> chunksByFile = engine.getChunks(files);
+
+        assertEquals(files, new ArrayList<>(chunksByFile.keySet()));
+        for(File file : files){
+            assertValidChunking(chunksByFile.get(file), new RandomAccessFile(file, "r"));
+            assertSameChunks(engine.getChunks(file), chunksByFile.get(file));
+        }
+    }
+
+    @Test
+    void shouldReuseFileReadersAcrossCalls() throws Exception {
+        TestUtil.createTestDirectory();
+        List<File> files = new ArrayList<>();
+        for(int i = 0; i < 4; i++){
+            files.add(TestUtil.buildRandomTestFile(new File("./test/" + i + ".bin"), ChunkingEngine.MIN_CHUNK_SIZE));
+        }
+        ChunkingEngine engine = new ChunkingEngine();
+
+        for(int i = 0; i < 5; i++){
+            engine.getChunks(files);
+        }
+
+        List<Thread> readers = new ArrayList<>();
+        for(Thread thread : Thread.getAllStackTraces().keySet()){
+            if(thread.getName().startsWith("tfb-file-reader-")){
+                readers.add(thread);
+            }
+        }
+        assertTrue(readers.size() <= Runtime.getRuntime().availableProcessors(), String.valueOf(readers.size()));
+        for(Thread reader : readers){
+            assertTrue(reader.isDaemon());
+        }
+    }
+
+    @Test
+    void shouldReleaseMemoryBudget() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE);
+        ChunkingEngine engine = new ChunkingEngine(ChunkingEngine.PORTION);
+
+        List<Chunk> chunks = engine.getChunks(file);
+        engine.releaseBuffers();
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+        assertEquals(ChunkingEngine.PORTION, engine.getAvailableMemoryBudget());
+    }
+
+    @Test
+    void shouldRecyclePortionBuffers() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 6 + ChunkingEngine.MAX_CHUNK_SIZE);
+        ChunkingEngine engine = new ChunkingEngine();
+        List<Chunk> expected = new ChunkingEngine(ChunkingEngine.PORTION).getChunks(file);
+
+        List<Chunk> first = engine.getChunks(file);
+        int buffersAfterFirst = engine.getIdleBufferCount();
+        List<Chunk> second = engine.getChunks(file);
+
+        assertSameChunks(expected, first);
+        assertSameChunks(expected, second);
+        assertTrue(buffersAfterFirst > 0);
+        assertTrue(buffersAfterFirst < 6);
+        assertEquals(buffersAfterFirst, engine.getIdleBufferCount());
+    }
+
+    @Test
+    void shouldGetSameChunksWithReadAhead() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 4 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine();
+        engine.setPrefetchDepth(0);
+        ChunkingEngine readAheadEngine = new ChunkingEngine();
+        readAheadEngine.setPrefetchDepth(3);
+        List<Chunk> expectedChunks = engine.getChunks(file);
+
+        List<Chunk> chunks = readAheadEngine.getChunks(file);
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+        assertSameChunks(expectedChunks, chunks);
+        assertEquals(file.length(), readAheadEngine.getReadAheadStats().getBytesRead());
+        assertTrue(readAheadEngine.getReadAheadStats().getIoWaitNanos() > 0);
+    }
+
+    @Test
+    void shouldReadAheadWithinMemoryBudget() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 3 + ChunkingEngine.MAX_CHUNK_SIZE);
+        ChunkingEngine engine = new ChunkingEngine(ChunkingEngine.PORTION);
+        engine.setPrefetchDepth(2);
+
+        List<Chunk> chunks = engine.getChunks(file);
+        engine.releaseBuffers();
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "r"));
+        assertEquals(ChunkingEngine.PORTION, engine.getAvailableMemoryBudget());
+    }
+
+    @Test
+    void shouldFailSetNegativePrefetchDepth() {
+        ChunkingEngine engine = new ChunkingEngine();
+
+        assertThrows(IllegalArgumentException.class, () -> engine.setPrefetchDepth(-1));
+    }
+
+    @Test
+    void shouldGetSameChunksWithMemoryMapping() throws Exception {
+        File file = TestUtil.buildRandomTestFile(ChunkingEngine.PORTION * 2 + ChunkingEngine.MAX_CHUNK_SIZE*3);
+        ChunkingEngine engine = new ChunkingEngine();
+        ChunkingEngine mappingEngine = new ChunkingEngine();
+        mappingEngine.enableMemoryMapping(ChunkingEngine.MAX_CHUNK_SIZE*2);
+        List<Chunk> expectedChunks = engine.getChunks(file);
+
+        List<Chunk> chunks = mappingEngine.getChunks(file);
+
+        assertValidChunking(chunks, new RandomAccessFile(file, "rw"));
+        assertSameChunks(expectedChunks, chunks);
+    }
+
+    @Test
+    void shouldFailEnableMemoryMappingWithTooSmallWindow() {
+        ChunkingEngine engine = new ChunkingEngine();
+
+        assertThrows(IllegalArgumentException.class, () -> engine.enableMemoryMapping(ChunkingEngine.MAX_CHUNK_SIZE));
+    }
+
+    private void assertChunkData(byte[] fileBytes, Chunk chunk, ByteBuffer data){
+        byte[] chunkBytes = new byte[data.remaining()];
+        data.get(chunkBytes);
+        int from = (int) chunk.getOffset();
+        assertArrayEquals(Arrays.copyOfRange(fileBytes, from, from + chunk.getLength()), chunkBytes);
+    }
+
+    private void assertSameChunks(List<Chunk> expected, List<Chunk> actual){
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            assertEquals(expected.get(i).getOffset(), actual.get(i).getOffset());
+            assertEquals(expected.get(i).getLength(), actual.get(i).getLength());
+            assertEquals(expected.get(i).getChecksum(), actual.get(i).getChecksum());
+        }
+    }
+
     private void assertValidChunking(List<Chunk> chunks, RandomAccessFile file) throws Exception {
         assertEquals(file.length(), getTotalLength(chunks));
         assertTrue(getMaxChunkSize(chunks) <= ChunkingEngine.MAX_CHUNK_SIZE);
@@ -73,7 +353,11 @@ class ChunkingEngineTest {
             file.seek(chunk.getOffset());
             byte[] bytes = new byte[chunk.getLength()];
             file.read(bytes);
-            String checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
+            if(chunk.isZero()){
+                assertArrayEquals(new byte[bytes.length], bytes);
+                continue;
+            }
+            ChunkId checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
             assertEquals(checksum, chunk.getChecksum());
         }
     }
@@ -0,0 +1,64 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ChunkingParametersTest {
+
+    @Test
+    void shouldAcceptConfigurableNormalizationLevels() {
+        for(int level = 1; level <= 3; level++){
+            ChunkingParameters parameters = new ChunkingParameters(ChunkingAlgorithm.FASTCDC_64, level);
+
+            assertEquals(level, parameters.getNormalizationLevel());
+        }
+    }
+
+    @Test
+    void shouldFailWithNormalizationLevelOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new ChunkingParameters(ChunkingAlgorithm.FASTCDC_64, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ChunkingParameters(ChunkingAlgorithm.FASTCDC_64, 4));
+    }
+
+    @Test
+    void shouldFailWithNormalizationLevelOfFixedAlgorithm() {
+        assertThrows(IllegalArgumentException.class, () -> new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 3));
+        assertThrows(IllegalArgumentException.class, () -> new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2020, 1));
+    }
+
+    @Test
+    void shouldAcceptCustomChunkSizes() {
+        ChunkingParameters parameters = new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2020, 2,
+                1024*1024, 4*1024*1024, 32*1024*1024, 64*1024*1024);
+
+        assertEquals(1024*1024, parameters.getMinSize());
+        assertEquals(4*1024*1024, parameters.getAvgSize());
+        assertEquals(32*1024*1024, parameters.getMaxSize());
+        assertEquals(64*1024*1024, parameters.getPortionSize());
+    }
+
+    @Test
+    void shouldFailWithChunkSizesOutOfFastCDCBounds() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 32, 1024, 8192, 16384));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 64, 128, 8192, 16384));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 64, 256, 512, 16384));
+    }
+
+    @Test
+    void shouldFailWithUnorderedChunkSizes() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 4096, 2048, 8192, 16384));
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 1024, 8192, 8192, 16384));
+    }
+
+    @Test
+    void shouldFailWithPortionSmallerThanTwoMaximumChunks() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new ChunkingParameters(ChunkingAlgorithm.FASTCDC_2016, 2, 1024, 2048, 8192, 16383));
+    }
+}
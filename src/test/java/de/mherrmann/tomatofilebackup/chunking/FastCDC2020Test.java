@@ -0,0 +1,86 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class FastCDC2020Test {
+
+    private static final int MIN = 256;
+    private static final int AVG = 1024;
+    private static final int MAX = 8192;
+
+    @Test
+    void shouldCutSameAsOneByteLeftShiftGear() {
+        byte[] source = TestUtil.buildBiggerReproducibleRandomTestBytes();
+        FastCDC fastCDC = new FastCDC2020(source, MIN, AVG, MAX);
+
+        List<Chunk> chunks = new ArrayList<>();
+        while(fastCDC.hasNext()){
+            chunks.add(fastCDC.next());
+        }
+
+        List<Integer> expectedLengths = cutWithOneByteReference(source);
+        assertEquals(expectedLengths.size(), chunks.size());
+        long offset = 0;
+        for(int i = 0; i < chunks.size(); i++){
+            assertEquals(offset, chunks.get(i).getOffset());
+            assertEquals(expectedLengths.get(i), chunks.get(i).getLength());
+            offset += chunks.get(i).getLength();
+        }
+        assertEquals(source.length, offset);
+    }
+
+    @Test
+    void shouldRespectChunkSizeBounds() {
+        byte[] source = TestUtil.buildBiggerReproducibleRandomTestBytes();
+        FastCDC fastCDC = new FastCDC2020(source, MIN, AVG, MAX);
+
+        while(fastCDC.hasNext()){
+            Chunk chunk = fastCDC.next();
+            boolean last = !fastCDC.hasNext();
+
+            assertTrue(chunk.getLength() <= MAX);
+            assertTrue(last || chunk.getLength() >= MIN);
+        }
+    }
+
+    @Test
+    void shouldSpreadMaskBits() {
+        long mask = FastCDC2020.spreadMask(20);
+
+        assertEquals(20, Long.bitCount(mask));
+        assertTrue(mask > 0);
+    }
+
+    private List<Integer> cutWithOneByteReference(byte[] source){
+        long maskS = FastCDC2020.spreadMask((int) (FastCDC.logarithm2(AVG) + 2));
+        long maskL = FastCDC2020.spreadMask((int) (FastCDC.logarithm2(AVG) - 2));
+        List<Integer> lengths = new ArrayList<>();
+        int processed = 0;
+        while(processed < source.length){
+            int remaining = source.length - processed;
+            int length = remaining;
+            if(remaining > MIN){
+                int total = Math.min(remaining, MAX);
+                int normal = Math.min(AVG, total);
+                long fingerprint = 0;
+                length = total;
+                for(int size = MIN; size < total; size++){
+                    fingerprint = (fingerprint << 1) + FastCDC.GEAR[source[processed + size] & 0xff];
+                    if((fingerprint & (size < normal ? maskS : maskL)) == 0){
+                        length = size;
+                        break;
+                    }
+                }
+            }
+            lengths.add(length);
+            processed += length;
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,87 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class FastCDC64Test {
+
+    private static final int MIN = 256;
+    private static final int AVG = 1024;
+    private static final int MAX = 8192;
+
+    @Test
+    void shouldCutSameAsOneByteLeftShiftGear() {
+        byte[] source = TestUtil.buildBiggerReproducibleRandomTestBytes();
+
+        for(int level = FastCDC64.MIN_NORMALIZATION_LEVEL; level <= FastCDC64.MAX_NORMALIZATION_LEVEL; level++){
+            List<Integer> lengths = cut(source, level);
+
+            assertEquals(cutWithOneByteReference(source, level), lengths);
+        }
+    }
+
+    @Test
+    void shouldNarrowChunkSizesWithHigherNormalizationLevel() {
+        byte[] source = TestUtil.buildBiggerReproducibleRandomTestBytes();
+
+        double deviationNC1 = standardDeviation(cut(source, 1));
+        double deviationNC3 = standardDeviation(cut(source, 3));
+
+        assertTrue(deviationNC3 < deviationNC1);
+    }
+
+    @Test
+    void shouldKeepGearTable() {
+        // repositories depend on these values; a changed table changes every chunk boundary
+        assertEquals(256, FastCDC64.GEAR_64.length);
+        assertEquals(7073467729336217783L, FastCDC64.GEAR_64[0]);
+        assertEquals(4083078196005992091L, FastCDC64.GEAR_64[1]);
+    }
+
+    private static List<Integer> cut(byte[] source, int normalizationLevel){
+        FastCDC fastCDC = new FastCDC64(source, MIN, AVG, MAX, normalizationLevel);
+        List<Integer> lengths = new ArrayList<>();
+        while(fastCDC.hasNext()){
+            lengths.add(fastCDC.next().getLength());
+        }
+        return lengths;
+    }
+
+    private static double standardDeviation(List<Integer> lengths){
+        double mean = lengths.stream().mapToInt(Integer::intValue).average().orElse(0);
+        double variance = lengths.stream().mapToDouble(length -> (length - mean) * (length - mean)).average().orElse(0);
+        return Math.sqrt(variance);
+    }
+
+    private List<Integer> cutWithOneByteReference(byte[] source, int normalizationLevel){
+        long maskS = FastCDC2020.spreadMask((int) (FastCDC.logarithm2(AVG) + normalizationLevel));
+        long maskL = FastCDC2020.spreadMask((int) (FastCDC.logarithm2(AVG) - normalizationLevel));
+        List<Integer> lengths = new ArrayList<>();
+        int processed = 0;
+        while(processed < source.length){
+            int remaining = source.length - processed;
+            int length = remaining;
+            if(remaining > MIN){
+                int total = Math.min(remaining, MAX);
+                int normal = Math.min(AVG, total);
+                long fingerprint = 0;
+                length = total;
+                for(int size = MIN; size < total; size++){
+                    fingerprint = (fingerprint << 1) + FastCDC64.GEAR_64[source[processed + size] & 0xff];
+                    if((fingerprint & (size < normal ? maskS : maskL)) == 0){
+                        length = size;
+                        break;
+                    }
+                }
+            }
+            lengths.add(length);
+            processed += length;
+        }
+        return lengths;
+    }
+}
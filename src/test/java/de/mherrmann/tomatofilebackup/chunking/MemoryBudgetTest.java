@@ -0,0 +1,43 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class MemoryBudgetTest {
+
+    private static final long BUDGET = 1024*1024;
+
+    @Test
+    void shouldAcquireAndRelease() throws Exception {
+        MemoryBudget budget = new MemoryBudget(BUDGET);
+
+        MemoryBudget.Lease lease = budget.acquire(1000);
+
+        assertEquals(BUDGET - 1024, budget.getAvailableBytes());
+        lease.release();
+        lease.release();
+        assertEquals(BUDGET, budget.getAvailableBytes());
+    }
+
+    @Test
+    void shouldNotAcquireWhenExhausted() throws Exception {
+        MemoryBudget budget = new MemoryBudget(BUDGET);
+        budget.acquire(BUDGET);
+
+        MemoryBudget.Lease lease = budget.tryAcquire(1);
+
+        assertNull(lease);
+    }
+
+    @Test
+    void shouldCapRequestToWholeBudget() throws Exception {
+        MemoryBudget budget = new MemoryBudget(BUDGET);
+
+        MemoryBudget.Lease lease = budget.acquire(BUDGET * 4);
+
+        assertEquals(0, budget.getAvailableBytes());
+        lease.release();
+        assertEquals(BUDGET, budget.getAvailableBytes());
+    }
+}
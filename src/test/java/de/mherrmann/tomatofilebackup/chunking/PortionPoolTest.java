@@ -0,0 +1,77 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class PortionPoolTest {
+
+    private static final int BUFFER_SIZE = 64*1024;
+
+    @Test
+    void shouldRecycleReleasedBuffer() {
+        MemoryBudget budget = new MemoryBudget(BUFFER_SIZE * 4);
+        PortionPool pool = new PortionPool(budget, BUFFER_SIZE);
+
+        PortionPool.Buffer buffer = pool.tryAcquire();
+        pool.release(buffer);
+        PortionPool.Buffer recycled = pool.tryAcquire();
+
+        assertSame(buffer, recycled);
+        assertEquals(BUFFER_SIZE, recycled.getBytes().length);
+        assertEquals(BUFFER_SIZE * 3, budget.getAvailableBytes());
+    }
+
+    @Test
+    void shouldNotAcquireBeyondBudget() {
+        MemoryBudget budget = new MemoryBudget(BUFFER_SIZE * 2);
+        PortionPool pool = new PortionPool(budget, BUFFER_SIZE);
+        pool.tryAcquire();
+        pool.tryAcquire();
+
+        PortionPool.Buffer buffer = pool.tryAcquire();
+
+        assertNull(buffer);
+    }
+
+    @Test
+    void shouldTrimIdleBuffers() {
+        MemoryBudget budget = new MemoryBudget(BUFFER_SIZE * 2);
+        PortionPool pool = new PortionPool(budget, BUFFER_SIZE);
+        pool.release(pool.tryAcquire());
+        pool.release(pool.tryAcquire());
+
+        pool.trim();
+
+        assertEquals(0, pool.getIdleBufferCount());
+        assertEquals(BUFFER_SIZE * 2, budget.getAvailableBytes());
+    }
+
+    @Test
+    void shouldDropReleasedBufferWhileBudgetIsAwaited() throws Exception {
+        MemoryBudget budget = new MemoryBudget(BUFFER_SIZE);
+        PortionPool pool = new PortionPool(budget, BUFFER_SIZE);
+        PortionPool.Buffer buffer = pool.tryAcquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                budget.acquire(BUFFER_SIZE);
+                acquired.countDown();
+            } catch (Exception ignored) {
+                // the latch stays closed and the test fails
+            }
+        });
+        waiter.start();
+        while(!budget.hasWaiters()){
+            Thread.sleep(1);
+        }
+
+        pool.release(buffer);
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getIdleBufferCount());
+    }
+}
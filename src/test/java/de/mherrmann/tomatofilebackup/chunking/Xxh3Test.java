@@ -0,0 +1,88 @@
+package de.mherrmann.tomatofilebackup.chunking;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+class Xxh3Test {
+
+    /// Length and XXH3_128bits of the reference implementation (libxxhash 0.8.1) over {@link #buildInput(int)}.
+    private static final String[][] REFERENCE = {
+            {"0", "99AA06D3014798D86001C324468D497F"},
+            {"1", "22BBB76B211A39BA13E608BC156DEFED"},
+            {"2", "A6B9DD53B14487221C9074B93943B86C"},
+            {"3", "CE31763CBF8245A5A9088DDA485B481C"},
+            {"4", "47197970590746B1788A609154B0FE20"},
+            {"5", "5787F33CBC36D4C8D3497975144F78A7"},
+            {"7", "A051EEFB8DF8740E7AF1E487627DD4BC"},
+            {"8", "E3BC8A5F461715553CD024E3D63A1588"},
+            {"9", "C72C88247A9A56D7EAFAB1C7F123109F"},
+            {"15", "68F75783C1D1A650C30B29715D7282A3"},
+            {"16", "CE0B9647AB24F88460D75C5E47D40A24"},
+            {"17", "BFD327EDCC2FBD12EEED7654312A26D7"},
+            {"31", "670EE2D79D2552F8262DECA043341A5B"},
+            {"32", "4F130F27AB6BAF45D761FD22E8AD5262"},
+            {"33", "D15B272993D9830F4193C535612AC940"},
+            {"63", "3FE3BC9CDC4CA070E9070987ED88500A"},
+            {"64", "FED953FE6A8B2B63AA549D72C69CD267"},
+            {"65", "9F5580903F79BEC343622EA01271A860"},
+            {"95", "154B6C3A0D2A8C90E403110CFC24666C"},
+            {"96", "2A350495986DB37A0AB63BCFBC907ABB"},
+            {"97", "3FFE2E0F781D623C8D17D1AFEC22619E"},
+            {"127", "53745BA8FA76A647ADF3A645363F89F8"},
+            {"128", "1B1962A096BAC78BC580008B6C92AC53"},
+            {"129", "293E4968C4619023BD91CE7ACE4D385B"},
+            {"160", "D71519A37CB75AB60E298E02860A8FD0"},
+            {"200", "32200A52A918BEAF380142CDD5843BBD"},
+            {"239", "CB7A8DA57AD8329249FB6A0A5210E031"},
+            {"240", "AD46C1021B076BC704E0B5F034BEE80B"},
+            {"241", "AC6C3492C3D6B45D8BEADD3A8874FE17"},
+            {"255", "D054B43EB9C37CD3B67B6637A76E6C39"},
+            {"256", "77F21DB933350C7E3C38817F6D79C0DA"},
+            {"1023", "DEDD3C0D6BCEED34D26986A0B85DCC44"},
+            {"1024", "18BC0EACA9A336369B81661C641C72B1"},
+            {"1025", "BF447251CFA98D7C806C2072ED713576"},
+            {"1088", "3D034F977992699D2F8781E01841F0DA"},
+            {"2048", "F81F6E8F418D8075ABE604813BA62ED1"},
+            {"4096", "1546867423105CD5D7428746842BE37E"},
+            {"10007", "8E27346ADA954D59F15877BCFE300C7F"},
+            {"100000", "D9E155DD16E141D00C056F6FCC340974"}
+    };
+
+    @Test
+    void shouldHashLikeReferenceImplementation() {
+        for(String[] reference : REFERENCE){
+            int length = Integer.parseInt(reference[0]);
+            byte[] input = buildInput(length);
+
+            ChunkId hash = Xxh3.hash128(input, 0, length);
+
+            assertEquals(reference[1], hash.toHex(), "length " + length);
+        }
+    }
+
+    @Test
+    void shouldHashDirectBufferWithOffsetLikeArray() {
+        for(String[] reference : REFERENCE){
+            int length = Integer.parseInt(reference[0]);
+            byte[] input = buildInput(length);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length + 3);
+            buffer.position(3);
+            buffer.put(input);
+
+            ChunkId hash = Xxh3.hash128(buffer, 3, length);
+
+            assertEquals(reference[1], hash.toHex(), "length " + length);
+        }
+    }
+
+    private static byte[] buildInput(int length){
+        byte[] input = new byte[length];
+        for(int i = 0; i < length; i++){
+            input[i] = (byte) (i*7 + 3);
+        }
+        return input;
+    }
+}
@@ -2,6 +2,10 @@ package de.mherrmann.tomatofilebackup.core.actions;
 
 import de.mherrmann.tomatofilebackup.Constants;
 import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
+import de.mherrmann.tomatofilebackup.core.Option;
 import de.mherrmann.tomatofilebackup.exceptions.IllegalActionCommandException;
 import de.mherrmann.tomatofilebackup.persistence.RepositoryInitializer;
 import org.junit.jupiter.api.AfterEach;
@@ -14,12 +18,15 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class InitializeActionEngineTest {
 
     private static final String TEST_REPOSITORY_PATH = "./test/repo/";
     private static final String TEST_REPOSITORY_DB_PATH = "./test/repo/"+ Constants.DB_FILENAME;
     private static final String TEST_REPOSITORY_CHUNKS_PATH = "./test/repo/"+ Constants.CHUNKS_DIRECTORY_NAME;
+    private static final String TEST_REPOSITORY_PACKS_PATH = "./test/repo/"+ Constants.PACKS_DIRECTORY_NAME;
 
     @BeforeEach
     void setUp() {
@@ -39,6 +46,81 @@ public class InitializeActionEngineTest {
 
         assertTrue(new File(TEST_REPOSITORY_DB_PATH).exists());
         assertTrue(new File(TEST_REPOSITORY_CHUNKS_PATH).exists());
+        assertTrue(new File(TEST_REPOSITORY_PACKS_PATH).exists());
+    }
+
+    @Test
+    void shouldBuildChunkingParametersFromAverageSize() {
+        Map<Option.Property, String> properties = new EnumMap<>(Option.Property.class);
+        properties.put(Option.Property.chunkingAlgorithm, "FASTCDC_64");
+        properties.put(Option.Property.normalizationLevel, "3");
+        properties.put(Option.Property.avgChunkSize, "64K");
+        properties.put(Option.Property.hashAlgorithm, "SHA_256");
+
+        ChunkingParameters parameters = InitializeActionEngine.buildChunkingParameters(properties);
+
+        assertEquals(ChunkingAlgorithm.FASTCDC_64, parameters.getAlgorithm());
+        assertEquals(3, parameters.getNormalizationLevel());
+        assertEquals(32*1024, parameters.getMinSize());
+        assertEquals(64*1024, parameters.getAvgSize());
+        assertEquals(512*1024, parameters.getMaxSize());
+        assertEquals(ChunkingParameters.DEFAULT.getPortionSize(), parameters.getPortionSize());
+        assertEquals(ChunkHashAlgorithm.SHA_256, parameters.getHashAlgorithm());
+    }
+
+    @Test
+    void shouldBuildChunkingParametersFromAllSizes() {
+        Map<Option.Property, String> properties = new EnumMap<>(Option.Property.class);
+        properties.put(Option.Property.minChunkSize, "1M");
+        properties.put(Option.Property.avgChunkSize, "4M");
+        properties.put(Option.Property.maxChunkSize, "32M");
+        properties.put(Option.Property.portionSize, "67108864");
+
+        ChunkingParameters parameters = InitializeActionEngine.buildChunkingParameters(properties);
+
+        assertEquals(1024*1024, parameters.getMinSize());
+        assertEquals(4*1024*1024, parameters.getAvgSize());
+        assertEquals(32*1024*1024, parameters.getMaxSize());
+        assertEquals(64*1024*1024, parameters.getPortionSize());
+        assertEquals(ChunkHashAlgorithm.MURMUR3_128, parameters.getHashAlgorithm());
+    }
+
+    @Test
+    void shouldFailBuildChunkingParametersWithUnknownHashAlgorithm() {
+        Map<Option.Property, String> properties = new EnumMap<>(Option.Property.class);
+        properties.put(Option.Property.hashAlgorithm, "MD5");
+
+        assertThrows(IllegalActionCommandException.class, () -> InitializeActionEngine.buildChunkingParameters(properties));
+    }
+
+    @Test
+    void shouldRejectSizesWhichOverflow() {
+        Map<Option.Property, String> properties = new EnumMap<>(Option.Property.class);
+        properties.put(Option.Property.portionSize, "8589934593G");
+
+        assertThrows(IllegalActionCommandException.class,
+                () -> InitializeActionEngine.buildChunkingParameters(properties));
+        properties.put(Option.Property.portionSize, "4294967297K");
+        assertThrows(IllegalActionCommandException.class,
+                () -> InitializeActionEngine.buildChunkingParameters(properties));
+    }
+
+    @Test
+    void shouldFailInitializeRepositoryCausedByInvalidChunkingParameters() {
+        InitializeActionEngine engine = new InitializeActionEngine();
+        Map<Option.Property, String> properties = new EnumMap<>(Option.Property.class);
+        properties.put(Option.Property.avgChunkSize, "128");
+        Exception exception = null;
+
+        try {
+            engine.run(properties, Collections.emptyList(), Collections.singletonList(TEST_REPOSITORY_PATH));
+        } catch (Exception ex){
+            exception = ex;
+        }
+
+        assertFalse(new File(TEST_REPOSITORY_DB_PATH).exists());
+        assertNotNull(exception);
+        assertEquals(IllegalActionCommandException.class, exception.getClass());
     }
 
     @Test
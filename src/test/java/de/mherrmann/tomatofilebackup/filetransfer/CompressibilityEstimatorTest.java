@@ -0,0 +1,54 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class CompressibilityEstimatorTest {
+
+    @Test
+    void shouldEstimateRandomBytesIncompressible() {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+
+        double entropy = CompressibilityEstimator.getEntropy(bytes, 0, bytes.length);
+
+        assertTrue(entropy > 7.9);
+        assertFalse(CompressibilityEstimator.isCompressible(bytes, 0, bytes.length));
+        assertFalse(CompressibilityEstimator.isCompressible(bytes, 100, 5000));
+    }
+
+    @Test
+    void shouldEstimateTextCompressible() {
+        byte[] bytes = "Tomato file backup stores chunks of files in packs. ".repeat(20_000)
+                .getBytes(StandardCharsets.US_ASCII);
+
+        double entropy = CompressibilityEstimator.getEntropy(bytes, 0, bytes.length);
+
+        assertTrue(entropy < 5);
+        assertTrue(CompressibilityEstimator.isCompressible(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void shouldEstimateZerosCompressible() {
+        byte[] bytes = new byte[1024*1024];
+
+        double entropy = CompressibilityEstimator.getEntropy(bytes, 0, bytes.length);
+
+        assertEquals(0, entropy);
+        assertTrue(CompressibilityEstimator.isCompressible(bytes, 0, 0));
+    }
+
+    @Test
+    void shouldSampleWholeLargeChunk() {
+        byte[] bytes = Arrays.copyOf(TestUtil.buildReproducibleRandomTestBytes(), 2*1024*1024);
+
+        double entropy = CompressibilityEstimator.getEntropy(bytes, 0, bytes.length);
+
+        assertTrue(entropy > 3);
+        assertTrue(entropy < 7.9);
+    }
+}
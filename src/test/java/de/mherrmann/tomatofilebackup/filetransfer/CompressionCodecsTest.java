@@ -0,0 +1,72 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+class CompressionCodecsTest {
+
+    @Test
+    void shouldGetCodecsByName() {
+        assertEquals("deflate:9", CompressionCodecs.forName("deflate:9").toString());
+        assertEquals("deflate:6", CompressionCodecs.forName("DEFLATE").toString());
+        assertEquals("lz4", CompressionCodecs.forName("lz4").toString());
+        assertEquals("zstd:19", CompressionCodecs.forName("zstd:19").toString());
+        assertSame(CompressionCodecs.DEFAULT, CompressionCodecs.forName("deflate"));
+    }
+
+    @Test
+    void shouldFailGetCodecsByInvalidName() {
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodecs.forName("gzip"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodecs.forName("deflate:10"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodecs.forName("lz4:1"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodecs.forName("zstd:fast"));
+    }
+
+    @Test
+    void shouldGetCodecsById() {
+        for(CompressionCodec codec : new CompressionCodec[]{CompressionCodecs.deflate(1), CompressionCodecs.lz4(),
+                CompressionCodecs.zstd(19)}){
+            assertEquals(codec.getId(), CompressionCodecs.forId(codec.getId()).getId());
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodecs.forId(0x1f));
+    }
+
+    @Test
+    void shouldCompressAndDecompressWithEveryCodec() throws IOException {
+        byte[] random = TestUtil.buildReproducibleRandomTestBytes();
+        byte[] zeros = new byte[100_000];
+        CompressionCodec[] codecs = {CompressionCodecs.deflate(0), CompressionCodecs.deflate(1),
+                CompressionCodecs.DEFAULT, CompressionCodecs.deflate(9), CompressionCodecs.lz4(),
+                CompressionCodecs.zstd(1), CompressionCodecs.zstd(CompressionCodecs.DEFAULT_ZSTD_LEVEL)};
+
+        for(CompressionCodec codec : codecs){
+            for(byte[] input : new byte[][]{new byte[0], zeros, random, random}){
+                byte[] compressed = new byte[codec.maxCompressedLength(input.length)];
+                int compressedLength = codec.compress(input, 0, input.length, compressed, 0);
+                byte[] decompressed = new byte[input.length];
+
+                CompressionCodecs.forId(codec.getId()).decompress(compressed, 0, compressedLength, decompressed, 0, input.length);
+
+                assertArrayEquals(input, decompressed, codec.toString());
+            }
+        }
+    }
+
+    @Test
+    void shouldFailDecompressToWrongLength() throws IOException {
+        byte[] input = Arrays.copyOf(TestUtil.buildReproducibleRandomTestBytes(), 10_000);
+
+        for(CompressionCodec codec : new CompressionCodec[]{CompressionCodecs.DEFAULT, CompressionCodecs.lz4(),
+                CompressionCodecs.zstd(3)}){
+            byte[] compressed = new byte[codec.maxCompressedLength(input.length)];
+            int compressedLength = codec.compress(input, 0, input.length, compressed, 0);
+
+            assertThrows(IOException.class, () -> codec.decompress(compressed, 0, compressedLength, new byte[20_000], 0, 20_000));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package de.mherrmann.tomatofilebackup.filetransfer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import de.mherrmann.tomatofilebackup.TestUtil;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -47,6 +48,83 @@ class CompressionEngineTest {
         assertArrayEquals(unzipped, bytesUncompressed);
     }
 
+    @Test
+    void shouldCompressWithCodecHeader() throws IOException {
+        CompressionCodec codec = CompressionCodecs.lz4();
+
+        byte[] compressed = CompressionEngine.compress(codec, unzipped, 0, unzipped.length);
+
+        assertEquals(codec.getId(), compressed[0]);
+        assertTrue(compressed.length < unzipped.length);
+        assertArrayEquals(unzipped, CompressionEngine.decompress(compressed, unzipped.length));
+    }
+
+    @Test
+    void shouldRestoreChunksOfEveryCodec() throws IOException {
+        for(CompressionCodec codec : new CompressionCodec[]{CompressionCodecs.deflate(1), CompressionCodecs.lz4(),
+                CompressionCodecs.zstd(3)}){
+            CompressionEngine.storeCompressed(codec, unzipped, 0, unzipped.length, testFile);
+
+            byte[] bytesUncompressed = CompressionEngine.restoreDecompressed(testFile, unzipped.length);
+
+            assertArrayEquals(unzipped, bytesUncompressed);
+        }
+    }
+
+    @Test
+    void shouldDecompressLegacyGzipChunk() throws IOException {
+        byte[] bytesUncompressed = CompressionEngine.decompress(zipped, unzipped.length);
+
+        assertArrayEquals(unzipped, bytesUncompressed);
+    }
+
+    @Test
+    void shouldFailDecompressUnknownCodec() {
+        byte[] compressed = {42, 1, 2, 3};
+
+        assertThrows(IOException.class, () -> CompressionEngine.decompress(compressed, unzipped.length));
+    }
+
+    @Test
+    void shouldStoreIncompressibleChunkRaw() throws IOException {
+        byte[] random = TestUtil.buildReproducibleRandomTestBytes();
+        CompressionStats stats = new CompressionStats();
+
+        byte[] compressed = CompressionEngine.compressAdaptive(CompressionCodecs.DEFAULT, random, 0, random.length, stats);
+
+        assertEquals(CompressionCodecs.stored().getId(), compressed[0]);
+        assertEquals(random.length + 1, compressed.length);
+        assertArrayEquals(random, CompressionEngine.decompress(compressed, random.length));
+        assertEquals(1, stats.getSkippedChunks());
+        assertEquals(random.length, stats.getSkippedBytes());
+        assertEquals(0, stats.getCompressedChunks());
+    }
+
+    @Test
+    void shouldCompressCompressibleChunkAdaptive() throws IOException {
+        CompressionStats stats = new CompressionStats();
+
+        byte[] compressed = CompressionEngine.compressAdaptive(CompressionCodecs.lz4(), unzipped, 0, unzipped.length, stats);
+
+        assertEquals(CompressionCodecs.lz4().getId(), compressed[0]);
+        assertArrayEquals(unzipped, CompressionEngine.decompress(compressed, unzipped.length));
+        assertEquals(0, stats.getSkippedChunks());
+        assertEquals(1, stats.getCompressedChunks());
+        assertEquals(unzipped.length, stats.getCompressedInputBytes());
+        assertEquals(compressed.length - 1, stats.getCompressedOutputBytes());
+    }
+
+    @Test
+    void shouldStoreChunkRawWhichDoesNotGetSmaller() throws IOException {
+        byte[] tiny = {1, 2, 3};
+        CompressionStats stats = new CompressionStats();
+
+        byte[] compressed = CompressionEngine.compressAdaptive(CompressionCodecs.DEFAULT, tiny, 0, tiny.length, stats);
+
+        assertArrayEquals(new byte[]{0, 1, 2, 3}, compressed);
+        assertEquals(1, stats.getExpandedChunks());
+    }
+
     private byte[] get1024Zeros(){
         byte[] bytes = new byte[1024];
         Arrays.fill(bytes, (byte) 48); //48 is ascii for 0 (hex: 30)
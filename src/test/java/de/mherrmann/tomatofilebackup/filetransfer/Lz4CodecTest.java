@@ -0,0 +1,68 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class Lz4CodecTest {
+
+    private static final byte[] TEXT = Arrays.copyOf(
+            "tomato file backup chunks tomato file backup packs ".repeat(20).getBytes(StandardCharsets.US_ASCII), 1000);
+
+    @Test
+    void shouldDecompressBlockOfReferenceImplementation() throws IOException {
+        byte[] compressed = {
+                -1, 11, 116, 111, 109, 97, 116, 111, 32, 102, 105, 108, 101, 32, 98, 97, 99, 107, 117, 112, 32, 99,
+                104, 117, 110, 107, 115, 32, 26, 0, 0, 63, 112, 97, 99, 25, 0, 3, 15, 51, 0, -1, -1, -1, -115, 80,
+                116, 111, 109, 97, 116
+        };
+        byte[] decompressed = new byte[TEXT.length];
+
+        new Lz4Codec().decompress(compressed, 0, compressed.length, decompressed, 0, TEXT.length);
+
+        assertArrayEquals(TEXT, decompressed);
+    }
+
+    @Test
+    void shouldCompressAndDecompress() throws IOException {
+        Lz4Codec codec = new Lz4Codec();
+        byte[] random = TestUtil.buildReproducibleRandomTestBytes();
+        byte[][] inputs = {new byte[0], Arrays.copyOf(TEXT, 5), Arrays.copyOf(TEXT, 13), TEXT, new byte[100_000], random};
+
+        for(byte[] input : inputs){
+            byte[] compressed = new byte[codec.maxCompressedLength(input.length) + 3];
+            int compressedLength = codec.compress(input, 0, input.length, compressed, 3);
+            byte[] decompressed = new byte[input.length + 2];
+
+            codec.decompress(compressed, 3, compressedLength, decompressed, 2, input.length);
+
+            assertArrayEquals(input, Arrays.copyOfRange(decompressed, 2, decompressed.length));
+        }
+    }
+
+    @Test
+    void shouldCompressRepetitiveBytes() {
+        Lz4Codec codec = new Lz4Codec();
+        byte[] compressed = new byte[codec.maxCompressedLength(TEXT.length)];
+
+        int compressedLength = codec.compress(TEXT, 0, TEXT.length, compressed, 0);
+
+        assertTrue(compressedLength < 100);
+    }
+
+    @Test
+    void shouldFailDecompressDamagedBlock() {
+        Lz4Codec codec = new Lz4Codec();
+        byte[] compressed = new byte[codec.maxCompressedLength(TEXT.length)];
+        int compressedLength = codec.compress(TEXT, 0, TEXT.length, compressed, 0);
+        byte[] decompressed = new byte[TEXT.length];
+
+        assertThrows(IOException.class, () -> codec.decompress(compressed, 0, compressedLength - 3, decompressed, 0, TEXT.length));
+        assertThrows(IOException.class, () -> codec.decompress(compressed, 0, compressedLength, decompressed, 0, TEXT.length - 1));
+    }
+}
@@ -0,0 +1,231 @@
+package de.mherrmann.tomatofilebackup.filetransfer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+class PackEngineTest {
+
+    private static final int ENTRY_LENGTH = 1000;
+
+    private final File packsDirectory = new File("./test/packs");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestUtil.createTestDirectory();
+        Files.createDirectory(packsDirectory.toPath());
+    }
+
+    @AfterEach
+    void tearDown(){
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldReadAppendedBytes() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+
+        PackLocation first = engine.append(chunkId(1), bytes, 0, ENTRY_LENGTH);
+        PackLocation second = engine.append(chunkId(2), bytes, ENTRY_LENGTH, ENTRY_LENGTH);
+
+        assertEquals(first.getPackId(), second.getPackId());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 0, ENTRY_LENGTH), engine.read(first));
+        assertArrayEquals(Arrays.copyOfRange(bytes, ENTRY_LENGTH, 2*ENTRY_LENGTH), engine.read(second));
+        engine.close();
+        assertArrayEquals(Arrays.copyOfRange(bytes, ENTRY_LENGTH, 2*ENTRY_LENGTH), engine.read(second));
+    }
+
+    @Test
+    void shouldKeepOneReadChannelPerPack() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory, 2500);
+        List<PackLocation> locations = appendEntries(engine, bytes, 4);
+
+        for(PackLocation location : locations){
+            engine.read(location);
+            engine.read(location);
+        }
+
+        assertEquals(2, engine.getReadChannelCount());
+        engine.close();
+        assertEquals(0, engine.getReadChannelCount());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 0, ENTRY_LENGTH), engine.read(locations.get(0)));
+        engine.close();
+    }
+
+    @Test
+    void shouldLimitOpenReadChannels() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory, 1);
+        List<PackLocation> locations = appendEntries(engine, bytes, PackEngine.MAX_READ_CHANNELS + 4);
+        engine.close();
+
+        for(PackLocation location : locations){
+            engine.read(location);
+        }
+
+        assertEquals(PackEngine.MAX_READ_CHANNELS, engine.getReadChannelCount());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 0, ENTRY_LENGTH), engine.read(locations.get(0)));
+        engine.close();
+    }
+
+    @Test
+    void shouldCloseReadChannelOfRemovedPack() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        PackLocation location = engine.append(chunkId(1), bytes, 0, ENTRY_LENGTH);
+        engine.close();
+        engine.read(location);
+
+        engine.removePack(location.getPackId());
+
+        assertEquals(0, engine.getReadChannelCount());
+        assertThrows(IOException.class, () -> engine.read(location));
+    }
+
+    @Test
+    void shouldStartNewPackWhenFull() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory, 2500);
+
+        List<PackLocation> locations = appendEntries(engine, bytes, 5);
+        engine.close();
+
+        assertEquals(3, engine.getPackIds().size());
+        assertEquals(locations.get(0).getPackId(), locations.get(1).getPackId());
+        assertNotEquals(locations.get(1).getPackId(), locations.get(2).getPackId());
+    }
+
+    @Test
+    void shouldWriteIndexWhenSealed() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        List<PackLocation> locations = appendEntries(engine, bytes, 3);
+
+        engine.close();
+
+        List<PackEngine.PackEntry> index = engine.readIndex(locations.get(0).getPackId());
+        assertEquals(3, index.size());
+        for(int i = 0; i < index.size(); i++){
+            assertEquals(chunkId(i), index.get(i).getChecksum());
+            assertEquals(locations.get(i).getOffset(), index.get(i).getOffset());
+            assertEquals(locations.get(i).getLength(), index.get(i).getLength());
+        }
+    }
+
+    @Test
+    void shouldFailReadIndexOfUnsealedPack() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        PackLocation location = engine.append(chunkId(0), bytes, 0, ENTRY_LENGTH);
+
+        assertThrows(IOException.class, () -> engine.readIndex(location.getPackId()));
+    }
+
+    @Test
+    void shouldRepackLiveEntries() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        List<PackLocation> locations = appendEntries(engine, bytes, 4);
+        String sparsePack = locations.get(0).getPackId();
+        engine.close();
+        Map<String, Long> liveBytes = Collections.singletonMap(sparsePack, (long) ENTRY_LENGTH);
+        Map<ChunkId, PackLocation> liveLocations = Collections.singletonMap(chunkId(2), locations.get(2));
+
+        List<String> sparsePacks = engine.findSparsePacks(liveBytes, 0.5);
+        Map<ChunkId, PackLocation> newLocations = engine.repack(sparsePack, liveLocations);
+        engine.close();
+        engine.removePack(sparsePack);
+
+        assertEquals(Collections.singletonList(sparsePack), sparsePacks);
+        assertEquals(1, newLocations.size());
+        assertNotEquals(sparsePack, newLocations.get(chunkId(2)).getPackId());
+        assertArrayEquals(Arrays.copyOfRange(bytes, 2*ENTRY_LENGTH, 3*ENTRY_LENGTH), engine.read(newLocations.get(chunkId(2))));
+        assertEquals(Collections.singletonList(newLocations.get(chunkId(2)).getPackId()), engine.getPackIds());
+    }
+
+    @Test
+    void shouldRepackPackOfEngineWhichWasNotClosed() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine abandoned = new PackEngine(packsDirectory);
+        List<PackLocation> locations = appendEntries(abandoned, bytes, 4);
+        abandoned.flush();
+        String orphanedPack = locations.get(0).getPackId();
+        PackEngine engine = new PackEngine(packsDirectory);
+        Map<ChunkId, PackLocation> liveLocations = new HashMap<>();
+        liveLocations.put(chunkId(3), locations.get(3));
+        liveLocations.put(chunkId(1), locations.get(1));
+
+        List<String> sparsePacks = engine.findSparsePacks(Collections.singletonMap(orphanedPack, 2L*ENTRY_LENGTH), 0.9);
+        Map<ChunkId, PackLocation> newLocations = engine.repack(orphanedPack, liveLocations);
+        engine.close();
+        engine.removePack(orphanedPack);
+
+        assertThrows(IOException.class, () -> engine.readIndex(orphanedPack));
+        assertEquals(Collections.singletonList(orphanedPack), sparsePacks);
+        assertTrue(newLocations.get(chunkId(1)).getOffset() < newLocations.get(chunkId(3)).getOffset());
+        assertArrayEquals(Arrays.copyOfRange(bytes, ENTRY_LENGTH, 2*ENTRY_LENGTH), engine.read(newLocations.get(chunkId(1))));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 3*ENTRY_LENGTH, 4*ENTRY_LENGTH), engine.read(newLocations.get(chunkId(3))));
+        assertEquals(2, engine.readIndex(newLocations.get(chunkId(1)).getPackId()).size());
+        assertEquals(Collections.singletonList(newLocations.get(chunkId(1)).getPackId()), engine.getPackIds());
+    }
+
+    @Test
+    void shouldRepackPackWithoutLiveEntries() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine abandoned = new PackEngine(packsDirectory);
+        String orphanedPack = appendEntries(abandoned, bytes, 2).get(0).getPackId();
+        PackEngine engine = new PackEngine(packsDirectory);
+
+        assertEquals(Collections.singletonList(orphanedPack), engine.findSparsePacks(Collections.emptyMap(), 0.5));
+        assertTrue(engine.repack(orphanedPack, Collections.emptyMap()).isEmpty());
+        engine.removePack(orphanedPack);
+        assertTrue(engine.getPackIds().isEmpty());
+    }
+
+    @Test
+    void shouldRejectLocationOfOtherPack() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        PackLocation location = engine.append(chunkId(1), bytes, 0, ENTRY_LENGTH);
+        engine.close();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.repack("other", Collections.singletonMap(chunkId(1), location)));
+    }
+
+    @Test
+    void shouldNotFindDensePacks() throws IOException {
+        byte[] bytes = TestUtil.buildReproducibleRandomTestBytes();
+        PackEngine engine = new PackEngine(packsDirectory);
+        List<PackLocation> locations = appendEntries(engine, bytes, 4);
+        engine.close();
+        String packId = locations.get(0).getPackId();
+
+        List<String> sparsePacks = engine.findSparsePacks(Collections.singletonMap(packId, 3L*ENTRY_LENGTH), 0.5);
+
+        assertTrue(sparsePacks.isEmpty());
+    }
+
+    private List<PackLocation> appendEntries(PackEngine engine, byte[] bytes, int count) throws IOException {
+        List<PackLocation> locations = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            locations.add(engine.append(chunkId(i), bytes, i*ENTRY_LENGTH, ENTRY_LENGTH));
+        }
+        return locations;
+    }
+
+    private static ChunkId chunkId(int number){
+        return new ChunkId(number, -number);
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import de.mherrmann.tomatofilebackup.TestUtil;
 import de.mherrmann.tomatofilebackup.chunking.ChecksumEngine;
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
 import de.mherrmann.tomatofilebackup.chunking.ChunkingEngine;
 import de.mherrmann.tomatofilebackup.persistence.DatabaseEngine;
 import de.mherrmann.tomatofilebackup.persistence.RepositoryInitializer;
@@ -17,7 +18,9 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class TransferEngineTest {
 
@@ -86,27 +89,298 @@ class TransferEngineTest {
         assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
     }
 
+    @Test
+    void shouldRestoreFileFromChunksStoredInParallel() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(4);
+        ChunkingEngine chunkingEngine = new ChunkingEngine();
+        List<Chunk> chunks = chunkingEngine.getChunks(sourceFile);
+        transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, true);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, chunksDirectory, chunks, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        assertEquals(chunks.size(), chunksDirectory.list().length);
+    }
+
+    @Test
+    void shouldReuseWorkersAcrossFiles() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(4);
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, true);
+        for(int i = 0; i < 3; i++){
+            transferEngine.restoreFile(testFile, chunksDirectory, chunks, true);
+        }
+
+        assertTrue(transferEngine.getStartedWorkerCount() <= 4, String.valueOf(transferEngine.getStartedWorkerCount()));
+        transferEngine.close();
+        assertThrows(IllegalStateException.class, () -> transferEngine.restoreFile(testFile, chunksDirectory, chunks, true));
+    }
+
+    @Test
+    void shouldLeaveOnlyCompleteChunkFilesWhenStoringInParallelFails() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(4);
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        Chunk beyondEnd = new Chunk(sourceFile.length() - 100, 1000);
+        beyondEnd.setChecksum(new ChunkId(1, 2));
+        chunks.add(chunks.size() / 2, beyondEnd);
+
+        for(boolean compress : new boolean[]{false, true}){
+            for(File chunkFile : chunksDirectory.listFiles()){
+                Files.delete(chunkFile.toPath());
+            }
+
+            assertThrows(IOException.class, () -> transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, compress));
+
+            assertFalse(new File(chunksDirectory, beyondEnd.getChecksum().toHex()).exists());
+            for(Chunk chunk : chunks){
+                if(chunk != beyondEnd && new File(chunksDirectory, chunk.getChecksum().toHex()).exists()){
+                    assertValidStored(chunk, compress);
+                }
+            }
+            for(String name : chunksDirectory.list()){
+                assertFalse(name.endsWith(".part"), name);
+            }
+        }
+    }
+
+    @Test
+    void shouldFailSetParallelismBelowOne() {
+        TransferEngine transferEngine = new TransferEngine();
+
+        assertThrows(IllegalArgumentException.class, () -> transferEngine.setParallelism(0));
+    }
+
+    @Test
+    void shouldRestoreFileFromChunksStoredWhileChunking() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        ChunkingEngine chunkingEngine = new ChunkingEngine();
+        List<Chunk> chunks = transferEngine.chunkAndStore(sourceFile, chunksDirectory, chunkingEngine, true);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, chunksDirectory, chunks, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+    }
+
+    @Test
+    void shouldRestoreFileFromPacks() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        TransferEngine transferEngine = new TransferEngine();
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        Map<ChunkId, PackLocation> locations;
+        try (PackEngine packEngine = new PackEngine(packsDirectory)) {
+            locations = transferEngine.storeChunks(sourceFile, packEngine, chunks, false);
+        }
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, new PackEngine(packsDirectory), chunks, locations, false);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        assertEquals(1, packsDirectory.list().length);
+    }
+
+    @Test
+    void shouldRestoreFileFromCompressedPacks() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        TransferEngine transferEngine = new TransferEngine();
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        Map<ChunkId, PackLocation> locations = transferEngine.storeChunks(sourceFile, packEngine, chunks, true);
+        packEngine.close();
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, packEngine, chunks, locations, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+    }
+
+    @Test
+    void shouldRestoreFileFromPacksWithChangedCodec() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        TransferEngine transferEngine = new TransferEngine();
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        transferEngine.setCodec(CompressionCodecs.lz4());
+        Map<ChunkId, PackLocation> locations = transferEngine.storeChunks(sourceFile, packEngine,
+                chunks.subList(0, chunks.size() / 2), true);
+        transferEngine.setCodec(CompressionCodecs.zstd(3));
+        locations.putAll(transferEngine.storeChunks(sourceFile, packEngine, chunks.subList(chunks.size() / 2, chunks.size()), true));
+        packEngine.close();
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, packEngine, chunks, locations, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+    }
+
+    @Test
+    void shouldStoreIncompressibleChunksRaw() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, true);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, chunksDirectory, chunks, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        CompressionStats stats = transferEngine.getCompressionStats();
+        assertEquals(chunks.size(), stats.getSkippedChunks());
+        assertEquals(sourceFile.length(), stats.getSkippedBytes());
+        assertEquals(0, stats.getCompressedChunks());
+    }
+
+    @Test
+    void shouldCompressEveryChunkWithoutAdaptiveCompression() throws Exception {
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setAdaptiveCompression(false);
+        transferEngine.setCodec(CompressionCodecs.lz4());
+        Chunk chunk = prepareChunk();
+        List<Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk);
+
+        transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, true);
+
+        byte[] stored = Files.readAllBytes(new File(chunksDirectory, chunk.getChecksum().toHex()).toPath());
+        assertEquals(CompressionCodecs.lz4().getId(), stored[0]);
+        assertEquals(0, transferEngine.getCompressionStats().getSkippedChunks());
+    }
+
+    @Test
+    void shouldRestoreFileFromPacksStoredWhileChunking() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        TransferEngine transferEngine = new TransferEngine();
+        ChunkingEngine chunkingEngine = new ChunkingEngine();
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        List<Chunk> chunks = transferEngine.chunkAndStore(sourceFile, packEngine, chunkingEngine, true, locations);
+        String packId = locations.values().iterator().next().getPackId();
+        long storedSize = packEngine.getPackSize(packId);
+        List<Chunk> secondChunks = transferEngine.chunkAndStore(sourceFile, packEngine, chunkingEngine, true, locations);
+        long storedSizeAfterSecond = packEngine.getPackSize(packId);
+        packEngine.close();
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, packEngine, secondChunks, locations, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        assertEquals(chunks.size(), secondChunks.size());
+        assertEquals(chunks.size(), locations.size());
+        assertEquals(storedSize, storedSizeAfterSecond);
+    }
+
+    @Test
+    void shouldRestoreZeroChunksAsHoles() throws Exception {
+        sourceFile = TestUtil.buildTestFileWithZeroRun(2*1024*1024, 24*1024*1024, 0);
+        TransferEngine transferEngine = new TransferEngine();
+        ChunkingEngine chunkingEngine = new ChunkingEngine();
+        List<Chunk> chunks = transferEngine.chunkAndStore(sourceFile, chunksDirectory, chunkingEngine, true);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, chunksDirectory, chunks, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        assertTrue(chunks.get(chunks.size()-1).isZero());
+        assertTrue(chunksDirectory.list().length < chunks.size());
+    }
+
+    @Test
+    void shouldRestoreZeroChunksFromPacksAsHoles() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        sourceFile = TestUtil.buildTestFileWithZeroRun(2*1024*1024, 24*1024*1024, 0);
+        TransferEngine transferEngine = new TransferEngine();
+        Map<ChunkId, PackLocation> locations = new HashMap<>();
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        List<Chunk> chunks = transferEngine.chunkAndStore(sourceFile, packEngine, new ChunkingEngine(), false, locations);
+        packEngine.close();
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, packEngine, chunks, locations, false);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+        assertTrue(locations.size() < chunks.size());
+        assertTrue(packEngine.getPackSize(packsDirectory.list()[0].replace(PackEngine.PACK_FILE_SUFFIX, "")) < sourceFile.length() / 2);
+    }
+
+    @Test
+    void shouldRestoreFileInParallelFromUncompressedChunks() throws Exception {
+        sourceFile = TestUtil.buildTestFileWithZeroRun(12*1024*1024, 12*1024*1024, 3*1024*1024);
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(3);
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        transferEngine.storeChunks(sourceFile, chunksDirectory, chunks, false);
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, chunksDirectory, chunks, false);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+    }
+
+    @Test
+    void shouldRestoreFileInParallelFromCompressedPacks() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        sourceFile = TestUtil.buildTestFileWithZeroRun(12*1024*1024, 12*1024*1024, 3*1024*1024);
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(3);
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        Map<ChunkId, PackLocation> locations = transferEngine.storeChunks(sourceFile, packEngine, chunks, true);
+        packEngine.close();
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        transferEngine.restoreFile(testFile, packEngine, chunks, locations, true);
+
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(testFile.toPath()));
+    }
+
+    @Test
+    void shouldFailRestoreFromPacksWithUnknownLocation() throws Exception {
+        File packsDirectory = new File("./test/packs");
+        Files.createDirectory(packsDirectory.toPath());
+        TransferEngine transferEngine = new TransferEngine();
+        transferEngine.setParallelism(3);
+        List<Chunk> chunks = new ChunkingEngine().getChunks(sourceFile);
+        PackEngine packEngine = new PackEngine(packsDirectory);
+        Map<ChunkId, PackLocation> locations = transferEngine.storeChunks(sourceFile, packEngine, chunks, false);
+        packEngine.close();
+        locations.remove(chunks.get(chunks.size()-1).getChecksum());
+        File testFile = new File(sourceFile.getAbsolutePath()+".restored");
+
+        assertThrows(IOException.class, () -> transferEngine.restoreFile(testFile, packEngine, chunks, locations, false));
+    }
+
     @Test
     void shouldRemoveChunksByChecksums() throws Exception {
         Chunk chunkToBeRemained = prepareChunk();
         Chunk chunkToBeRemoved = prepareChunk();
-        chunkToBeRemoved.setChecksum("toRemove");
+        chunkToBeRemoved.setChecksum(new ChunkId(0, 0));
         TransferEngine engine = new TransferEngine();
         List<Chunk> chunks = new ArrayList<>();
         chunks.add(chunkToBeRemained);
         chunks.add(chunkToBeRemoved);
         engine.storeChunks(sourceFile, chunksDirectory, chunks, true);
-        List<String> checksums = new ArrayList<>();
+        List<ChunkId> checksums = new ArrayList<>();
         checksums.add(chunkToBeRemoved.getChecksum());
 
         engine.removeChunkFiles(chunksDirectory, checksums);
 
-        assertTrue(new File(chunksDirectory, chunkToBeRemained.getChecksum()).exists());
-        assertFalse(new File(chunksDirectory, chunkToBeRemoved.getChecksum()).exists());
+        assertTrue(new File(chunksDirectory, chunkToBeRemained.getChecksum().toHex()).exists());
+        assertFalse(new File(chunksDirectory, chunkToBeRemoved.getChecksum().toHex()).exists());
     }
 
     private void assertValidStored(Chunk chunk, boolean compressed) throws IOException {
-        File file = new File(chunksDirectory.getAbsolutePath()+"/"+chunk.getChecksum());
+        File file = new File(chunksDirectory.getAbsolutePath()+"/"+chunk.getChecksum().toHex());
         assertTrue(file.exists());
         RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
         byte[] bytes = new byte[(int) randomAccessFile.length()];
@@ -116,7 +390,7 @@ class TransferEngineTest {
             bytes = CompressionEngine.restoreDecompressed(file, chunk.getLength());
         }
         assertEquals(chunk.getLength(), bytes.length);
-        String checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
+        ChunkId checksum = ChecksumEngine.getChunkChecksum(bytes, 0, bytes.length);
         assertEquals(chunk.getChecksum(), checksum);
     }
 
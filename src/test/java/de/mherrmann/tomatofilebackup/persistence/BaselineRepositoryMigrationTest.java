@@ -0,0 +1,137 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
+import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.FileEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens a repository database written with the tables of tomato file backup 1.0, copied here verbatim,
+ * independent of {@link RepositoryInitializer}.
+ */
+public class BaselineRepositoryMigrationTest {
+
+    private static final String REPO = "./test/";
+    private static final String SNAPSHOT_UUID = "5b0e1a3c-0d2f-4c6e-9a7b-1c2d3e4f5a6b";
+    private static final String HASH_ID = "abcdef";
+    private static final ChunkId CHECKSUM = new ChunkId(0x0123456789ABCDEFL, 0xFEDCBA9876543210L);
+    private static final ChunkId OTHER_CHECKSUM = new ChunkId(1, 2);
+
+    private static final String[] BASELINE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS chunk(chunk_uuid text PRIMARY KEY,checksum text,length integer);",
+            "CREATE TABLE IF NOT EXISTS file(file_uuid text PRIMARY KEY,name text,size integer,inode integer, " +
+                    "ctime integer,mtime integer,atime integer,compressed integer,link integer,link_path text, " +
+                    "junction integer,directory integer,owner_user text,owner_group text,mod text);",
+            "CREATE TABLE IF NOT EXISTS snapshot(snapshot_uuid text PRIMARY KEY,hash_id text,source text,host text,ctime integer);",
+            "CREATE TABLE IF NOT EXISTS repository(repository_uuid text PRIMARY KEY,path text,version text);",
+            "CREATE TABLE IF NOT EXISTS file_chunk_relation(relation_uuid text PRIMARY KEY," +
+                    "file_uuid text REFERENCES file(file_uuid) ON DELETE CASCADE," +
+                    "chunk_uuid text REFERENCES chunk(chunk_uuid) ON DELETE CASCADE,offset integer);",
+            "CREATE TABLE IF NOT EXISTS file_snapshot_relation(relation_uuid text PRIMARY KEY," +
+                    "file_uuid text REFERENCES file(file_uuid) ON DELETE CASCADE," +
+                    "snapshot_uuid text REFERENCES snapshot(snapshot_uuid) ON DELETE CASCADE, path text);"
+    };
+
+    private static final String[] BASELINE_ROWS = {
+            "INSERT INTO repository VALUES ('repository', '" + REPO + "', '1.0')",
+            "INSERT INTO snapshot VALUES ('" + SNAPSHOT_UUID + "', '" + HASH_ID + "', '/', 'host', 1)",
+            "INSERT INTO file(file_uuid, name, size, mtime) VALUES ('file-a', 'a', 20, 1)",
+            "INSERT INTO chunk VALUES ('chunk-1', '" + CHECKSUM.toHex() + "', 10)",
+            "INSERT INTO chunk VALUES ('chunk-2', '" + OTHER_CHECKSUM.toHex() + "', 10)",
+            "INSERT INTO file_snapshot_relation VALUES ('fs-1', 'file-a', '" + SNAPSHOT_UUID + "', '/a')",
+            "INSERT INTO file_chunk_relation VALUES ('fc-1', 'file-a', 'chunk-2', 10)",
+            "INSERT INTO file_chunk_relation VALUES ('fc-2', 'file-a', 'chunk-1', 0)"
+    };
+
+    private DatabaseEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        Files.createDirectory(new File(REPO).toPath());
+        File dbFile = new File(REPO, Constants.DB_FILENAME);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+             Statement statement = connection.createStatement()){
+            for(String sql : BASELINE_TABLES){
+                statement.execute(sql);
+            }
+            for(String sql : BASELINE_ROWS){
+                statement.executeUpdate(sql);
+            }
+        }
+        engine = new DatabaseEngine(REPO);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        engine.destroy();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldMigrateToCurrentVersion() throws SQLException {
+        assertEquals(Constants.VERSION, engine.getRepository().getVersion());
+    }
+
+    @Test
+    void shouldRecordBaselineChunkingParameters() throws SQLException {
+        ChunkingParameters parameters = engine.getRepository().getChunkingParameters();
+
+        assertEquals(ChunkingAlgorithm.FASTCDC_2016, parameters.getAlgorithm());
+        assertEquals(ChunkingParameters.DEFAULT.getNormalizationLevel(), parameters.getNormalizationLevel());
+        assertEquals(512*1024, parameters.getMinSize());
+        assertEquals(1024*1024, parameters.getAvgSize());
+        assertEquals(8*1024*1024, parameters.getMaxSize());
+        assertEquals(16*1024*1024, parameters.getPortionSize());
+        assertEquals(ChunkHashAlgorithm.MURMUR3_128, parameters.getHashAlgorithm());
+    }
+
+    @Test
+    void shouldFindChunksByHexChecksumOfVersionOne() throws SQLException {
+        Optional<ChunkEntity> chunk = engine.getChunkByChecksum(CHECKSUM);
+
+        assertTrue(chunk.isPresent());
+        assertEquals(CHECKSUM, chunk.get().getChecksum());
+        assertNull(chunk.get().getPackLocation());
+    }
+
+    @Test
+    void shouldDeduplicateAgainstChunksOfVersionOne() throws SQLException {
+        Chunk chunk = new Chunk(0, 10);
+        chunk.setChecksum(OTHER_CHECKSUM);
+
+        List<ChunkEntity> added = engine.addChunks(List.of(chunk), 1);
+
+        assertEquals(engine.getChunkByChecksum(OTHER_CHECKSUM).get().getId(), added.get(0).getId());
+        assertEquals(2, engine.getChunksByChecksums(List.of(CHECKSUM, OTHER_CHECKSUM)).size());
+    }
+
+    @Test
+    void shouldKeepFilesAndChunksOfSnapshots() throws SQLException {
+        SnapshotEntity snapshot = engine.getSnapshotByHashId(HASH_ID).get();
+        List<FileEntity> files = engine.getFilesBySnapshotIdOrderByPath(snapshot.getId());
+        List<ChunkEntity> chunks = engine.getChunksByFileId(files.get(0).getId());
+
+        assertEquals(SNAPSHOT_UUID, snapshot.getUuid());
+        assertEquals("/a", files.get(0).getPath());
+        assertEquals(CHECKSUM, chunks.get(0).getChecksum());
+        assertEquals(OTHER_CHECKSUM, chunks.get(1).getChecksum());
+    }
+}
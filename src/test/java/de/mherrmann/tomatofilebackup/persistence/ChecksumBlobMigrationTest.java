@@ -0,0 +1,88 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksumBlobMigrationTest {
+
+    private static final String REPO = "./test/";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        connection = RepositoryInitializer.initializeBaseVersion(REPO);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldConvertHexChecksumsToBlobs() throws SQLException {
+        insertChunk("chunk-1", DatabaseEngineChunkTest.testChecksum(1).toHex());
+        insertChunk("chunk-2", DatabaseEngineChunkTest.testChecksum(2).toHex().toLowerCase());
+
+        RepositoryMigrator.migrate(connection);
+
+        DatabaseEngine engine = new DatabaseEngine(REPO);
+        assertTrue(engine.getChunkByChecksum(DatabaseEngineChunkTest.testChecksum(1)).isPresent());
+        assertTrue(engine.getChunkByChecksum(DatabaseEngineChunkTest.testChecksum(2)).isPresent());
+        engine.destroy();
+        ResultSet resultSet = connection.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM chunk WHERE typeof(checksum) != 'blob' OR length(checksum) != " + ChunkId.BYTES);
+        resultSet.next();
+        assertEquals(0, resultSet.getInt(1));
+    }
+
+    @Test
+    void shouldConvertMoreChunksThanOnePage() throws SQLException {
+        connection.setAutoCommit(false);
+        for(int i = 0; i < 2500; i++){
+            insertChunk("chunk-" + i, DatabaseEngineChunkTest.testChecksum(i).toHex());
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        RepositoryMigrator.migrate(connection, Collections.singletonList(new ChecksumBlobMigration()));
+
+        ResultSet resultSet = connection.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM chunk WHERE typeof(checksum) = 'blob'");
+        resultSet.next();
+        assertEquals(2500, resultSet.getInt(1));
+    }
+
+    @Test
+    void shouldRollBackOnInvalidChecksum() throws SQLException {
+        insertChunk("chunk-1", DatabaseEngineChunkTest.testChecksum(1).toHex());
+        insertChunk("chunk-2", "not a checksum");
+
+        assertThrows(SQLException.class,
+                () -> RepositoryMigrator.migrate(connection, Collections.singletonList(new ChecksumBlobMigration())));
+
+        ResultSet resultSet = connection.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM chunk WHERE typeof(checksum) = 'text'");
+        resultSet.next();
+        assertEquals(2, resultSet.getInt(1));
+        assertEquals(RepositoryMigrator.BASE_VERSION, RepositoryMigrator.getVersion(connection));
+    }
+
+    private void insertChunk(String uuid, String checksum) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(
+                "INSERT INTO chunk(chunk_uuid, checksum, length) VALUES (?, ?, 10)");
+        preparedStatement.setString(1, uuid);
+        preparedStatement.setString(2, checksum);
+        preparedStatement.executeUpdate();
+    }
+}
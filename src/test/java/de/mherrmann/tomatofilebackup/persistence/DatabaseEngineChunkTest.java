@@ -3,6 +3,8 @@ package de.mherrmann.tomatofilebackup.persistence;
 import static org.junit.jupiter.api.Assertions.*;
 
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.filetransfer.PackLocation;
 import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
 import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
 import org.junit.jupiter.api.*;
@@ -12,15 +14,13 @@ import de.mherrmann.tomatofilebackup.TestUtil;
 import java.io.File;
 import java.io.IOException;
 import java.sql.*;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
 public class DatabaseEngineChunkTest {
 
     private static final String TEST_REPOSITORY_PATH = "./test/";
-    static final String TEST_CHECKSUM = "testChecksum";
-    static final String TEST_FILE_UUID = UUID.randomUUID().toString();
+    static final ChunkId TEST_CHECKSUM = testChecksum(0);
+    static final long TEST_FILE_ID = 42;
     static final long TEST_OFFSET = 456;
     static final int TEST_LENGTH = 123;
     private static final String TEST_FILE_PATH = new File("./test/testFile.txt").getAbsolutePath();
@@ -49,7 +49,7 @@ public class DatabaseEngineChunkTest {
         Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
         chunk.setChecksum(TEST_CHECKSUM);
 
-        engine.addChunk(chunk, TEST_FILE_UUID);
+        engine.addChunk(chunk, TEST_FILE_ID);
 
         assertValidChunk();
     }
@@ -58,20 +58,101 @@ public class DatabaseEngineChunkTest {
     void shouldAddChunkFileRelation() throws SQLException {
         Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
         chunk.setChecksum(TEST_CHECKSUM);
-        ChunkEntity chunkEntity = engine.addChunk(chunk, TEST_FILE_UUID);
+        ChunkEntity chunkEntity = engine.addChunk(chunk, TEST_FILE_ID);
 
-        engine.addChunkFileRelation(TEST_FILE_UUID, chunkEntity.getUuid(), chunkEntity.getOffset());
+        engine.addChunkFileRelation(TEST_FILE_ID, chunkEntity.getId(), chunkEntity.getOffset());
 
-        assertValidChunkFileRelation(chunkEntity.getUuid());
+        assertValidChunkFileRelation(chunkEntity.getId());
+    }
+
+    @Test
+    void shouldAddChunks() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        Chunk chunk2 = new Chunk(TEST_OFFSET+TEST_LENGTH, TEST_LENGTH);
+        Chunk duplicate = new Chunk(TEST_OFFSET+TEST_LENGTH*2, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+        chunk2.setChecksum(testChecksum(2));
+        duplicate.setChecksum(TEST_CHECKSUM);
+
+        List<ChunkEntity> added = engine.addChunks(Arrays.asList(chunk, chunk2, duplicate), TEST_FILE_ID);
+
+        List<ChunkEntity> chunks = engine.getChunksByFileId(TEST_FILE_ID);
+        assertEquals(3, added.size());
+        assertEquals(added.get(0).getId(), added.get(2).getId());
+        assertNotEquals(added.get(0).getId(), added.get(1).getId());
+        assertEquals(TEST_OFFSET+TEST_LENGTH*2, added.get(2).getOffset());
+        assertEquals(2, countChunks());
+        assertEquals(3, chunks.size());
+        assertEquals(TEST_CHECKSUM, chunks.get(2).getChecksum());
+        assertEquals(TEST_OFFSET+TEST_LENGTH*2, chunks.get(2).getOffset());
+    }
+
+    @Test
+    void shouldAddOnlyRelationsForStoredChunks() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+        ChunkEntity stored = engine.addChunk(chunk, TEST_FILE_ID + 1);
+        engine.setPackLocation(TEST_CHECKSUM, new PackLocation("pack", 8, 100));
+
+        List<ChunkEntity> added = engine.addChunks(Collections.singletonList(chunk), TEST_FILE_ID);
+
+        assertEquals(1, countChunks());
+        assertEquals(stored.getId(), added.get(0).getId());
+        assertEquals("pack", added.get(0).getPackLocation().getPackId());
+        assertValidChunkFileRelation(stored.getId());
+    }
+
+    @Test
+    void shouldAddChunkFileRelations() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+        ChunkEntity stored = engine.addChunk(chunk, TEST_FILE_ID + 1);
+
+        engine.addChunkFileRelations(TEST_FILE_ID, Collections.singletonList(stored));
+
+        assertValidChunkFileRelation(stored.getId());
+    }
+
+    @Test
+    void shouldGetChunksByChecksums() throws SQLException {
+        List<Chunk> chunks = new ArrayList<>();
+        Set<ChunkId> checksums = new HashSet<>();
+        for(int i = 0; i < SqlUtil.MAX_PARAMETERS*2+1; i++){
+            Chunk chunk = new Chunk((long) i*TEST_LENGTH, TEST_LENGTH);
+            chunk.setChecksum(testChecksum(i));
+            chunks.add(chunk);
+            checksums.add(testChecksum(i));
+        }
+        engine.addChunks(chunks, TEST_FILE_ID);
+        checksums.add(new ChunkId(0, 0));
+
+        Map<ChunkId, ChunkEntity> found = engine.getChunksByChecksums(checksums);
+
+        assertEquals(chunks.size(), found.size());
+        assertFalse(found.containsKey(new ChunkId(0, 0)));
+        assertEquals(TEST_LENGTH, found.get(testChecksum(SqlUtil.MAX_PARAMETERS*2)).getLength());
+    }
+
+    @Test
+    void shouldShareStatementsOfLookupsOfAnySize() throws SQLException {
+        List<ChunkId> checksums = new ArrayList<>();
+        for(int i = 0; i < SqlUtil.MAX_PARAMETERS; i++){
+            checksums.add(testChecksum(i));
+            engine.getChunksByChecksums(checksums);
+            engine.getChunkByChecksum(testChecksum(i));
+        }
+
+        int cached = engine.readConnections.read(reader -> reader.statements.size());
+        assertTrue(cached <= 10, "cached statements: " + cached);
     }
 
     @Test
     void shouldNotBePresentByChecksum() throws SQLException {
         Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
         chunk.setChecksum(TEST_CHECKSUM);
-        engine.addChunk(chunk, TEST_FILE_UUID);
+        engine.addChunk(chunk, TEST_FILE_ID);
 
-        Optional<ChunkEntity> returnedChunk = engine.getChunkByChecksum("invalid");
+        Optional<ChunkEntity> returnedChunk = engine.getChunkByChecksum(new ChunkId(0, 0));
 
         assertFalse(returnedChunk.isPresent());
     }
@@ -80,7 +161,7 @@ public class DatabaseEngineChunkTest {
     void shouldGetChunkByChecksum() throws SQLException {
         Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
         chunk.setChecksum(TEST_CHECKSUM);
-        engine.addChunk(chunk, TEST_FILE_UUID);
+        engine.addChunk(chunk, TEST_FILE_ID);
 
         Optional<ChunkEntity> returnedChunk = engine.getChunkByChecksum(TEST_CHECKSUM);
 
@@ -98,37 +179,94 @@ public class DatabaseEngineChunkTest {
         Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
         Chunk chunk2 = new Chunk(TEST_OFFSET+TEST_LENGTH, TEST_LENGTH);
         chunk.setChecksum(TEST_CHECKSUM);
-        chunk2.setChecksum(TEST_CHECKSUM+2);
-        engine.addChunk(chunk2, TEST_FILE_UUID);
-        engine.addChunk(chunk, TEST_FILE_UUID);
+        chunk2.setChecksum(testChecksum(2));
+        engine.addChunk(chunk2, TEST_FILE_ID);
+        engine.addChunk(chunk, TEST_FILE_ID);
 
-        List<ChunkEntity> chunks = engine.getChunksByFileUuid(TEST_FILE_UUID);
+        List<ChunkEntity> chunks = engine.getChunksByFileId(TEST_FILE_ID);
 
         assertEquals(2, chunks.size());
         assertEquals(TEST_CHECKSUM, chunks.get(0).getChecksum());
-        assertEquals(TEST_CHECKSUM+2, chunks.get(1).getChecksum());
+        assertEquals(testChecksum(2), chunks.get(1).getChecksum());
+    }
+
+    @Test
+    void shouldSetPackLocation() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+        engine.addChunk(chunk, TEST_FILE_ID);
+
+        engine.setPackLocation(TEST_CHECKSUM, new PackLocation("pack", 8, 100));
+
+        PackLocation location = engine.getChunkByChecksum(TEST_CHECKSUM).get().getPackLocation();
+        assertEquals("pack", location.getPackId());
+        assertEquals(8, location.getOffset());
+        assertEquals(100, location.getLength());
+        assertEquals(8, engine.getPackLocationsByPackId("pack").get(TEST_CHECKSUM).getOffset());
+    }
+
+    @Test
+    void shouldNotHavePackLocationForChunkFile() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+
+        ChunkEntity chunkEntity = engine.addChunk(chunk, TEST_FILE_ID);
+
+        assertNull(chunkEntity.getPackLocation());
+    }
+
+    @Test
+    void shouldGetLiveBytesByPack() throws SQLException {
+        Chunk chunk = new Chunk(TEST_OFFSET, TEST_LENGTH);
+        Chunk chunk2 = new Chunk(TEST_OFFSET+TEST_LENGTH, TEST_LENGTH);
+        Chunk chunk3 = new Chunk(TEST_OFFSET+TEST_LENGTH*2, TEST_LENGTH);
+        chunk.setChecksum(TEST_CHECKSUM);
+        chunk2.setChecksum(testChecksum(2));
+        chunk3.setChecksum(testChecksum(3));
+        engine.addChunk(chunk, TEST_FILE_ID);
+        engine.addChunk(chunk2, TEST_FILE_ID);
+        engine.addChunk(chunk3, TEST_FILE_ID);
+        engine.setPackLocation(TEST_CHECKSUM, new PackLocation("pack1", 8, 100));
+        engine.setPackLocation(testChecksum(2), new PackLocation("pack1", 108, 50));
+        engine.setPackLocation(testChecksum(3), new PackLocation("pack2", 8, 70));
+
+        Map<String, Long> liveBytes = engine.getLiveBytesByPack();
+
+        assertEquals(2, liveBytes.size());
+        assertEquals(150, liveBytes.get("pack1"));
+        assertEquals(70, liveBytes.get("pack2"));
+    }
+
+    private int countChunks() throws SQLException {
+        ResultSet resultSet = engine.connection.createStatement().executeQuery("SELECT COUNT(*) FROM chunk");
+        resultSet.next();
+        return resultSet.getInt(1);
     }
 
     private void assertValidChunk() throws SQLException {
         String sql = "SELECT chunk.*, offset FROM chunk " +
-                "LEFT JOIN file_chunk_relation USING (chunk_uuid)" +
+                "LEFT JOIN file_chunk_relation USING (chunk_id)" +
                 "WHERE checksum = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, TEST_CHECKSUM);
+        preparedStatement.setBytes(1, TEST_CHECKSUM.toBytes());
         ResultSet resultSet = preparedStatement.executeQuery();
         resultSet.next();
         assertEquals(TEST_OFFSET, resultSet.getLong("offset"));
         assertEquals(TEST_LENGTH, resultSet.getInt("length"));
-        assertValidChunkFileRelation(resultSet.getString("chunk_uuid"));
+        assertValidChunkFileRelation(resultSet.getLong("chunk_id"));
     }
 
-    private void assertValidChunkFileRelation(String chunkUuid) throws SQLException {
-        String sql = "SELECT * FROM file_chunk_relation WHERE file_uuid = ? AND chunk_uuid = ?";
+    private void assertValidChunkFileRelation(long chunkId) throws SQLException {
+        String sql = "SELECT * FROM file_chunk_relation WHERE file_id = ? AND chunk_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, TEST_FILE_UUID);
-        preparedStatement.setString(2, chunkUuid);
+        preparedStatement.setLong(1, TEST_FILE_ID);
+        preparedStatement.setLong(2, chunkId);
         ResultSet resultSet = preparedStatement.executeQuery();
         resultSet.next();
         assertEquals(TEST_OFFSET, resultSet.getInt("offset"));
     }
+
+    static ChunkId testChecksum(int number){
+        return new ChunkId(0x1234567890ABCDEFL, number);
+    }
 }
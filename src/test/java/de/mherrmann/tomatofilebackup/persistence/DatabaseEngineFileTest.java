@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -59,7 +60,7 @@ public class DatabaseEngineFileTest {
         engine.addRegularFile(TEST_FILE_PATH, TEST_SIZE, TEST_FILE_INODE, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
                 DatabaseEngineFileTest.TEST_MTIME,false, "user", "owner", TEST_MOD, snapshotEntity);
 
-        assertValidRegularFile(snapshotEntity.getUuid());
+        assertValidRegularFile(snapshotEntity.getId());
     }
 
     @Test
@@ -68,7 +69,7 @@ public class DatabaseEngineFileTest {
         engine.addDirectory(TEST_DIRECTORY_PATH, TEST_DIRECTORY_INODE, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
                 DatabaseEngineFileTest.TEST_MTIME,"user", "owner", TEST_MOD, snapshotEntity);
 
-        assertValidDirectory(snapshotEntity.getUuid());
+        assertValidDirectory(snapshotEntity.getId());
     }
 
     @Test
@@ -77,7 +78,7 @@ public class DatabaseEngineFileTest {
         engine.addSymlink(TEST_SYMLINK_SOURCE, TEST_SYMLINK_INODE, TEST_MTIME, TEST_MTIME, TEST_MTIME, false,
                 TEST_SYMLINK_TARGET, "user", "owner", TEST_MOD, snapshotEntity);
 
-        assertValidSymlink(snapshotEntity.getUuid(), false);
+        assertValidSymlink(snapshotEntity.getId(), false);
     }
 
     @Test
@@ -86,7 +87,7 @@ public class DatabaseEngineFileTest {
         engine.addSymlink(TEST_SYMLINK_SOURCE, TEST_SYMLINK_INODE, TEST_MTIME, TEST_MTIME, TEST_MTIME, true,
                 TEST_SYMLINK_TARGET, "user", "owner", TEST_MOD, snapshotEntity);
 
-        assertValidSymlink(snapshotEntity.getUuid(), true);
+        assertValidSymlink(snapshotEntity.getId(), true);
     }
 
     @Test
@@ -95,7 +96,7 @@ public class DatabaseEngineFileTest {
         engine.addJunction(TEST_JUNCTION_SOURCE, TEST_JUNCTION_INODE, TEST_MTIME, TEST_MTIME, TEST_MTIME, TEST_JUNCTION_TARGET,
                 "user", "owner", TEST_MOD, snapshotEntity);
 
-        assertValidJunction(snapshotEntity.getUuid());
+        assertValidJunction(snapshotEntity.getId());
     }
 
     @Test
@@ -105,13 +106,37 @@ public class DatabaseEngineFileTest {
                 DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
                 DatabaseEngineFileTest.TEST_MTIME,false, "user", "owner", TEST_MOD, snapshotEntity);
 
-        engine.addFileSnapshotRelation(fileEntity.getUuid(), snapshotEntity.getUuid(), TEST_FILE_PATH);
+        engine.addFileSnapshotRelation(fileEntity.getId(), snapshotEntity.getId(), TEST_FILE_PATH);
 
-        assertValidSnapshotFileRelation(fileEntity.getUuid(), snapshotEntity.getUuid());
+        assertValidSnapshotFileRelation(fileEntity.getId(), snapshotEntity.getId());
     }
 
     @Test
-    void shouldGetFilesBySnapshotUuidOrderByInode() throws SQLException {
+    void shouldAddFiles() throws SQLException {
+        SnapshotEntity snapshotEntity = engine.addSnapshot("test", "test", 1234567890);
+        FileEntity file = new FileEntity(0, TEST_FILE_PATH, TEST_SIZE, TEST_FILE_INODE, TEST_CTIME, TEST_MTIME,
+                TEST_MTIME+1, false, false, "", false, false, "user", "owner", TEST_MOD);
+        FileEntity directory = new FileEntity(0, TEST_DIRECTORY_PATH, 0, TEST_DIRECTORY_INODE, TEST_CTIME, TEST_MTIME,
+                TEST_MTIME+1, false, false, "", false, true, "user", "owner", TEST_MOD);
+
+        List<FileEntity> added = engine.addFiles(Arrays.asList(file, directory), snapshotEntity);
+
+        List<FileEntity> files = engine.getFilesBySnapshotIdOrderByInode(snapshotEntity.getId());
+        assertEquals(2, added.size());
+        assertTrue(added.get(0).getId() > 0);
+        assertEquals(TEST_FILE_PATH, added.get(0).getPath());
+        assertEquals(2, files.size());
+        assertEquals(added.get(0).getId(), files.get(0).getId());
+        assertEquals(TEST_FILE_PATH, files.get(0).getPath());
+        assertEquals(TEST_CTIME, files.get(0).getCtime());
+        assertEquals(TEST_MTIME+1, files.get(0).getAtime());
+        assertEquals(added.get(1).getId(), files.get(1).getId());
+        assertTrue(files.get(1).isDirectory());
+        assertValidSnapshotFileRelation(added.get(1).getId(), snapshotEntity.getId());
+    }
+
+    @Test
+    void shouldGetFilesBySnapshotIdOrderByInode() throws SQLException {
         SnapshotEntity snapshotEntity = engine.addSnapshot("test", "test", 1234567890);
         engine.addSnapshot(TEST_SOURCE_PATH, TEST_HOST, TEST_CTIME);
         engine.addRegularFile(TEST_FILE_PATH+2, TEST_SIZE, TEST_FILE_INODE+2, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
@@ -119,7 +144,7 @@ public class DatabaseEngineFileTest {
         engine.addRegularFile(TEST_FILE_PATH, TEST_SIZE, TEST_FILE_INODE, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
                 DatabaseEngineFileTest.TEST_MTIME,false, "user", "owner", TEST_MOD, snapshotEntity);
 
-        List<FileEntity> files = engine.getFilesBySnapshotUuidOrderByInode(snapshotEntity.getUuid());
+        List<FileEntity> files = engine.getFilesBySnapshotIdOrderByInode(snapshotEntity.getId());
 
         assertEquals(2, files.size());
         assertEquals(TEST_FILE_PATH, files.get(0).getPath());
@@ -133,7 +158,7 @@ public class DatabaseEngineFileTest {
     }
 
     @Test
-    void shouldGetFilesBySnapshotUuidOrderByPath() throws SQLException {
+    void shouldGetFilesBySnapshotIdOrderByPath() throws SQLException {
         SnapshotEntity snapshotEntity = engine.addSnapshot("test", "test", 1234567890);
         engine.addSnapshot(TEST_SOURCE_PATH, TEST_HOST, TEST_CTIME);
         engine.addRegularFile(TEST_FILE_PATH+2, TEST_SIZE, TEST_FILE_INODE+2, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
@@ -141,7 +166,7 @@ public class DatabaseEngineFileTest {
         engine.addRegularFile(TEST_FILE_PATH, TEST_SIZE, TEST_FILE_INODE, DatabaseEngineFileTest.TEST_MTIME, DatabaseEngineFileTest.TEST_MTIME,
                 DatabaseEngineFileTest.TEST_MTIME,false, "user", "owner", TEST_MOD, snapshotEntity);
 
-        List<FileEntity> files = engine.getFilesBySnapshotUuidOrderByPath(snapshotEntity.getUuid());
+        List<FileEntity> files = engine.getFilesBySnapshotIdOrderByPath(snapshotEntity.getId());
 
         assertEquals(2, files.size());
         assertEquals(TEST_FILE_PATH, files.get(0).getPath());
@@ -205,37 +230,37 @@ public class DatabaseEngineFileTest {
         assertFalse(file.isPresent());
     }
 
-    private void assertValidRegularFile(String snapshotUuid) throws SQLException {
-        ResultSet resultSet = assertValidFile(TEST_FILE_PATH, TEST_FILE_INODE, TEST_SIZE, snapshotUuid);
+    private void assertValidRegularFile(long snapshotId) throws SQLException {
+        ResultSet resultSet = assertValidFile(TEST_FILE_PATH, TEST_FILE_INODE, TEST_SIZE, snapshotId);
         assertFalse(resultSet.getBoolean("link"));
         assertFalse(resultSet.getBoolean("junction"));
         assertFalse(resultSet.getBoolean("directory"));
     }
 
-    private void assertValidDirectory(String snapshotUuid) throws SQLException {
-        ResultSet resultSet = assertValidFile(TEST_DIRECTORY_PATH, TEST_DIRECTORY_INODE, 0, snapshotUuid);
+    private void assertValidDirectory(long snapshotId) throws SQLException {
+        ResultSet resultSet = assertValidFile(TEST_DIRECTORY_PATH, TEST_DIRECTORY_INODE, 0, snapshotId);
         assertFalse(resultSet.getBoolean("link"));
         assertFalse(resultSet.getBoolean("junction"));
         assertTrue(resultSet.getBoolean("directory"));
     }
 
-    private void assertValidSymlink(String snapshotUuid, boolean directory) throws SQLException {
-        ResultSet resultSet = assertValidFile(TEST_SYMLINK_SOURCE, TEST_SYMLINK_INODE, 0, snapshotUuid);
+    private void assertValidSymlink(long snapshotId, boolean directory) throws SQLException {
+        ResultSet resultSet = assertValidFile(TEST_SYMLINK_SOURCE, TEST_SYMLINK_INODE, 0, snapshotId);
         assertTrue(resultSet.getBoolean("link"));
         assertFalse(resultSet.getBoolean("junction"));
         assertEquals(directory, resultSet.getBoolean("directory"));
         assertEquals(TEST_SYMLINK_TARGET, resultSet.getString("link_path"));
     }
 
-    private void assertValidJunction(String snapshotUuid) throws SQLException {
-        ResultSet resultSet = assertValidFile(TEST_JUNCTION_SOURCE, TEST_JUNCTION_INODE, 0, snapshotUuid);
+    private void assertValidJunction(long snapshotId) throws SQLException {
+        ResultSet resultSet = assertValidFile(TEST_JUNCTION_SOURCE, TEST_JUNCTION_INODE, 0, snapshotId);
         assertTrue(resultSet.getBoolean("link"));
         assertTrue(resultSet.getBoolean("junction"));
         assertTrue(resultSet.getBoolean("directory"));
         assertEquals(TEST_JUNCTION_TARGET, resultSet.getString("link_path"));
     }
 
-    private ResultSet assertValidFile(String filePath, long inode, long size, String snapshotUuid) throws SQLException {
+    private ResultSet assertValidFile(String filePath, long inode, long size, long snapshotId) throws SQLException {
         String sql = "SELECT * FROM file WHERE inode = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
         preparedStatement.setLong(1, inode);
@@ -245,15 +270,15 @@ public class DatabaseEngineFileTest {
         assertEquals(size, resultSet.getLong("size"));
         assertEquals(TEST_MTIME, resultSet.getLong("mtime"));
         assertEquals(0, resultSet.getInt("compressed"));
-        assertValidSnapshotFileRelation(resultSet.getString("file_uuid"), snapshotUuid);
+        assertValidSnapshotFileRelation(resultSet.getLong("file_id"), snapshotId);
         return resultSet;
     }
 
-    private void assertValidSnapshotFileRelation(String fileUuid, String snapshotUuid) throws SQLException {
-        String sql = "SELECT * FROM file_snapshot_relation WHERE file_uuid = ? AND snapshot_uuid = ?";
+    private void assertValidSnapshotFileRelation(long fileId, long snapshotId) throws SQLException {
+        String sql = "SELECT * FROM file_snapshot_relation WHERE file_id = ? AND snapshot_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, fileUuid);
-        preparedStatement.setString(2, snapshotUuid);
+        preparedStatement.setLong(1, fileId);
+        preparedStatement.setLong(2, snapshotId);
         ResultSet resultSet = preparedStatement.executeQuery();
         assertFalse(resultSet.isClosed());
     }
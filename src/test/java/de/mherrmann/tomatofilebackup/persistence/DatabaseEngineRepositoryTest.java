@@ -3,6 +3,7 @@ package de.mherrmann.tomatofilebackup.persistence;
 import de.mherrmann.tomatofilebackup.Constants;
 import de.mherrmann.tomatofilebackup.TestUtil;
 import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
 import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
 import de.mherrmann.tomatofilebackup.persistence.entities.RepositoryEntity;
 import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
@@ -45,5 +46,7 @@ public class DatabaseEngineRepositoryTest {
 
         assertEquals(Constants.VERSION, repository.getVersion());
         assertEquals(TEST_REPOSITORY_PATH, repository.getPath());
+        assertEquals(ChunkingAlgorithm.FASTCDC_2016, repository.getChunkingParameters().getAlgorithm());
+        assertEquals(2, repository.getChunkingParameters().getNormalizationLevel());
     }
 }
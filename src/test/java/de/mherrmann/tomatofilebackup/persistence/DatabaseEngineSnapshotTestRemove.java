@@ -189,40 +189,40 @@ public class DatabaseEngineSnapshotTestRemove {
     }
 
     private ResultSet getSnapshotResultSet(SnapshotEntity snapshotEntity) throws SQLException {
-        String sql = "SELECT * FROM snapshot WHERE snapshot_uuid = ?";
+        String sql = "SELECT * FROM snapshot WHERE snapshot_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, snapshotEntity.getUuid());
+        preparedStatement.setLong(1, snapshotEntity.getId());
         return preparedStatement.executeQuery();
     }
 
     private ResultSet getFileSnapshotRelationResultSet(SnapshotEntity snapshotEntity) throws SQLException {
-        String sql = "SELECT * FROM file_snapshot_relation WHERE snapshot_uuid = ?";
+        String sql = "SELECT * FROM file_snapshot_relation WHERE snapshot_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, snapshotEntity.getUuid());
+        preparedStatement.setLong(1, snapshotEntity.getId());
         return preparedStatement.executeQuery();
     }
 
     private ResultSet getFileResultSet(FileEntity fileEntity1, FileEntity fileEntity2) throws SQLException {
-        String sql = "SELECT file.* FROM file WHERE file_uuid = ? OR file_uuid = ?";
+        String sql = "SELECT file.* FROM file WHERE file_id = ? OR file_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, fileEntity1.getUuid());
-        preparedStatement.setString(2, fileEntity2.getUuid());
+        preparedStatement.setLong(1, fileEntity1.getId());
+        preparedStatement.setLong(2, fileEntity2.getId());
         return preparedStatement.executeQuery();
     }
 
     private ResultSet getFileChunkRelationResultSet(FileEntity fileEntity1, FileEntity fileEntity2) throws SQLException {
-        String sql = "SELECT file_chunk_relation.* FROM file_chunk_relation WHERE file_uuid = ? OR file_uuid = ?";
+        String sql = "SELECT file_chunk_relation.* FROM file_chunk_relation WHERE file_id = ? OR file_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, fileEntity1.getUuid());
-        preparedStatement.setString(2, fileEntity2.getUuid());
+        preparedStatement.setLong(1, fileEntity1.getId());
+        preparedStatement.setLong(2, fileEntity2.getId());
         return preparedStatement.executeQuery();
     }
 
     private ResultSet getChunkResultSet(ChunkEntity chunkEntity1, ChunkEntity chunkEntity2) throws SQLException {
-        String sql = "SELECT chunk.* FROM chunk WHERE chunk_uuid = ? OR chunk_uuid = ?";
+        String sql = "SELECT chunk.* FROM chunk WHERE chunk_id = ? OR chunk_id = ?";
         PreparedStatement preparedStatement = engine.connection.prepareStatement(sql);
-        preparedStatement.setString(1, chunkEntity1.getUuid());
-        preparedStatement.setString(2, chunkEntity2.getUuid());
+        preparedStatement.setLong(1, chunkEntity1.getId());
+        preparedStatement.setLong(2, chunkEntity2.getId());
         return preparedStatement.executeQuery();
     }
 
@@ -298,18 +298,18 @@ public class DatabaseEngineSnapshotTestRemove {
         Chunk chunk2 = new Chunk(10, (int)DatabaseEngineChunkTest.TEST_OFFSET-10);
         Chunk chunk3 = new Chunk(DatabaseEngineChunkTest.TEST_OFFSET, DatabaseEngineChunkTest.TEST_LENGTH);
         Chunk chunk4 = new Chunk(DatabaseEngineChunkTest.TEST_OFFSET+DatabaseEngineChunkTest.TEST_LENGTH, DatabaseEngineChunkTest.TEST_LENGTH);
-        chunk1.setChecksum(DatabaseEngineChunkTest.TEST_CHECKSUM+2);
-        chunk2.setChecksum(DatabaseEngineChunkTest.TEST_CHECKSUM+1);
-        chunk3.setChecksum(DatabaseEngineChunkTest.TEST_CHECKSUM+4);
-        chunk4.setChecksum(DatabaseEngineChunkTest.TEST_CHECKSUM+3);
+        chunk1.setChecksum(DatabaseEngineChunkTest.testChecksum(2));
+        chunk2.setChecksum(DatabaseEngineChunkTest.testChecksum(1));
+        chunk3.setChecksum(DatabaseEngineChunkTest.testChecksum(4));
+        chunk4.setChecksum(DatabaseEngineChunkTest.testChecksum(3));
         return new Chunk[]{chunk1, chunk2, chunk3, chunk4};
     }
 
     private void createChunkEntities(TestObjects testObjects, Chunk[] chunks) throws SQLException {
-        testObjects.chunkInFirstFileInFirstSnapshot = engine.addChunk(chunks[0], testObjects.firstFileEntityInFirstSnapshot.getUuid());
-        testObjects.chunkInSecondFileInFirstSnapshot = engine.addChunk(chunks[1], testObjects.secondFileEntityInFirstSnapshot.getUuid());
-        testObjects.chunkInFirstFileInSecondSnapshot = engine.addChunk(chunks[2], testObjects.firstFileEntityInSecondSnapshot.getUuid());
-        testObjects.chunkInSecondFileInSecondSnapshot = engine.addChunk(chunks[3], testObjects.secondFileEntityInSecondSnapshot.getUuid());
+        testObjects.chunkInFirstFileInFirstSnapshot = engine.addChunk(chunks[0], testObjects.firstFileEntityInFirstSnapshot.getId());
+        testObjects.chunkInSecondFileInFirstSnapshot = engine.addChunk(chunks[1], testObjects.secondFileEntityInFirstSnapshot.getId());
+        testObjects.chunkInFirstFileInSecondSnapshot = engine.addChunk(chunks[2], testObjects.firstFileEntityInSecondSnapshot.getId());
+        testObjects.chunkInSecondFileInSecondSnapshot = engine.addChunk(chunks[3], testObjects.secondFileEntityInSecondSnapshot.getId());
     }
 
     private static class TestObjects{
@@ -0,0 +1,104 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexMigrationTest {
+
+    private static final String REPO = "./test/";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        RepositoryInitializer.initialize(REPO);
+        File dbFile = new File(REPO, Constants.DB_FILENAME);
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldUseIndexToGetChunkByChecksum() throws SQLException {
+        String plan = getQueryPlan(ChunkDatabaseEngine.GET_CHUNK_BY_CHECKSUM_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE chunk USING INDEX chunk_checksum_index (checksum=?)"), plan);
+        assertTrue(plan.contains("SEARCH TABLE file_chunk_relation USING INDEX file_chunk_relation_chunk_index"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToGetChunksByFileId() throws SQLException {
+        String plan = getQueryPlan(ChunkDatabaseEngine.GET_CHUNKS_BY_FILE_ID_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE file_chunk_relation USING INDEX file_chunk_relation_file_index (file_id=?)"), plan);
+        assertFalse(plan.contains("TEMP B-TREE"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToGetPackLocationsByPackId() throws SQLException {
+        String plan = getQueryPlan(ChunkDatabaseEngine.GET_PACK_LOCATIONS_BY_PACK_ID_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE chunk USING INDEX chunk_pack_index (pack_id=?)"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToGetFileBySizeAndMtimeAndInode() throws SQLException {
+        String plan = getQueryPlan(FileDatabaseEngine.GET_FILE_BY_SIZE_AND_MTIME_AND_INODE_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE file USING INDEX file_size_mtime_inode_index (size=? AND mtime=? AND inode=?)"), plan);
+        assertTrue(plan.contains("SEARCH TABLE file_snapshot_relation USING INDEX file_snapshot_relation_file_index"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToGetFilesBySnapshotId() throws SQLException {
+        String plan = getQueryPlan(FileDatabaseEngine.GET_FILES_BY_SNAPSHOT_ID_SQL + "path");
+
+        assertTrue(plan.contains("SEARCH TABLE file_snapshot_relation USING INDEX file_snapshot_relation_snapshot_index (snapshot_id=?)"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToGetSnapshotByHashId() throws SQLException {
+        String plan = getQueryPlan(SnapshotDatabaseEngine.GET_SNAPSHOT_BY_HASH_ID_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE snapshot USING INDEX snapshot_hash_id_index (hash_id=?)"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToFindOrphanedChunks() throws SQLException {
+        String plan = getQueryPlan(ChunkDatabaseEngine.ORPHANED_CHUNKS_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE file_chunk_relation USING INDEX file_chunk_relation_chunk_index (chunk_id=?)"), plan);
+        assertFalse(plan.contains("SCAN TABLE file_chunk_relation"), plan);
+    }
+
+    @Test
+    void shouldUseIndexToRemoveOrphanedFiles() throws SQLException {
+        String plan = getQueryPlan(FileDatabaseEngine.REMOVE_ORPHANED_FILES_SQL);
+
+        assertTrue(plan.contains("SEARCH TABLE file_snapshot_relation USING INDEX file_snapshot_relation_file_index (file_id=?)"), plan);
+        assertFalse(plan.contains("SCAN TABLE file_snapshot_relation"), plan);
+    }
+
+    private String getQueryPlan(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + sql);
+        StringBuilder plan = new StringBuilder();
+        while(resultSet.next()){
+            plan.append(resultSet.getString("detail")).append('\n');
+        }
+        return plan.toString();
+    }
+}
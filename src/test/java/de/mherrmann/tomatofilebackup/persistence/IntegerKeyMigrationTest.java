@@ -0,0 +1,108 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.Chunk;
+import de.mherrmann.tomatofilebackup.persistence.entities.ChunkEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.FileEntity;
+import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntegerKeyMigrationTest {
+
+    private static final String REPO = "./test/";
+    private static final String SNAPSHOT_UUID = "5b0e1a3c-0d2f-4c6e-9a7b-1c2d3e4f5a6b";
+    private static final String HASH_ID = "abcdef";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        connection = RepositoryInitializer.initializeBaseVersion(REPO);
+        insertVersionOneData();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldKeepRowsAndRelations() throws SQLException {
+        RepositoryMigrator.migrate(connection);
+
+        assertEquals(Constants.VERSION, RepositoryMigrator.getVersion(connection));
+        DatabaseEngine engine = new DatabaseEngine(REPO);
+        SnapshotEntity snapshot = engine.getSnapshotByHashId(HASH_ID).get();
+        List<FileEntity> files = engine.getFilesBySnapshotIdOrderByPath(snapshot.getId());
+        List<ChunkEntity> chunks = engine.getChunksByFileId(files.get(0).getId());
+        List<ChunkEntity> otherChunks = engine.getChunksByFileId(files.get(1).getId());
+        engine.destroy();
+        assertEquals(SNAPSHOT_UUID, snapshot.getUuid());
+        assertEquals(2, files.size());
+        assertEquals("/a", files.get(0).getPath());
+        assertEquals("/b", files.get(1).getPath());
+        assertEquals(2, chunks.size());
+        assertEquals(0, chunks.get(0).getOffset());
+        assertEquals(10, chunks.get(1).getOffset());
+        assertEquals(1, otherChunks.size());
+        assertEquals(chunks.get(1).getId(), otherChunks.get(0).getId());
+    }
+
+    @Test
+    void shouldDropVersionOneTables() throws SQLException {
+        RepositoryMigrator.migrate(connection);
+
+        ResultSet resultSet = connection.createStatement().executeQuery(
+                "SELECT COUNT(*) FROM sqlite_master WHERE name GLOB '*_v1' OR sql GLOB '*file_uuid*' OR sql GLOB '*chunk_uuid*'");
+        resultSet.next();
+        assertEquals(0, resultSet.getInt(1));
+    }
+
+    @Test
+    void shouldContinueIdsAfterMigratedRows() throws SQLException {
+        RepositoryMigrator.migrate(connection);
+        DatabaseEngine engine = new DatabaseEngine(REPO);
+        Chunk chunk = new Chunk(0, 10);
+        chunk.setChecksum(DatabaseEngineChunkTest.testChecksum(9));
+
+        ChunkEntity added = engine.addChunk(chunk, 1);
+        List<ChunkEntity> addedInBatch = engine.addChunks(Collections.singletonList(chunk), 2);
+        engine.destroy();
+
+        assertEquals(3, added.getId());
+        assertEquals(3, addedInBatch.get(0).getId());
+    }
+
+    private void insertVersionOneData() throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.executeUpdate("INSERT INTO snapshot VALUES ('" + SNAPSHOT_UUID + "', '" + HASH_ID + "', '/', 'host', 1)");
+        statement.executeUpdate("INSERT INTO file(file_uuid, name, size, mtime) VALUES ('file-a', 'a', 20, 1)");
+        statement.executeUpdate("INSERT INTO file(file_uuid, name, size, mtime) VALUES ('file-b', 'b', 10, 1)");
+        insertChunk("chunk-1", 1);
+        insertChunk("chunk-2", 2);
+        statement.executeUpdate("INSERT INTO file_snapshot_relation VALUES ('fs-1', 'file-b', '" + SNAPSHOT_UUID + "', '/b')");
+        statement.executeUpdate("INSERT INTO file_snapshot_relation VALUES ('fs-2', 'file-a', '" + SNAPSHOT_UUID + "', '/a')");
+        statement.executeUpdate("INSERT INTO file_chunk_relation VALUES ('fc-1', 'file-a', 'chunk-2', 10)");
+        statement.executeUpdate("INSERT INTO file_chunk_relation VALUES ('fc-2', 'file-a', 'chunk-1', 0)");
+        statement.executeUpdate("INSERT INTO file_chunk_relation VALUES ('fc-3', 'file-b', 'chunk-2', 0)");
+    }
+
+    private void insertChunk(String uuid, int number) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement(
+                "INSERT INTO chunk(chunk_uuid, checksum, length) VALUES (?, ?, 10)");
+        preparedStatement.setString(1, uuid);
+        preparedStatement.setString(2, DatabaseEngineChunkTest.testChecksum(number).toHex());
+        preparedStatement.executeUpdate();
+    }
+}
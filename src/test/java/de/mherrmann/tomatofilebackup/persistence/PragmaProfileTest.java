@@ -0,0 +1,68 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PragmaProfileTest {
+
+    private static final String REPO = "./test/";
+
+    private DatabaseEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        RepositoryInitializer.initialize(REPO);
+        engine = new DatabaseEngine(REPO, PragmaProfile.BACKUP);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        engine.destroy();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldOpenInWriteAheadLogMode() throws SQLException {
+        assertEquals("wal", getPragma(engine.connection, "journal_mode"));
+    }
+
+    @Test
+    void shouldApplyProfileToWriter() throws SQLException {
+        assertEquals("1", getPragma(engine.connection, "synchronous"));
+        assertEquals(String.valueOf(-PragmaProfile.BACKUP.getCacheSizeKib()), getPragma(engine.connection, "cache_size"));
+    }
+
+    @Test
+    void shouldApplyProfileToReaders() throws SQLException {
+        String cacheSize = engine.readConnections.read(reader -> {
+            try (ResultSet resultSet = reader.statements.get("PRAGMA cache_size").executeQuery()){
+                return resultSet.getString(1);
+            }
+        });
+
+        assertEquals(String.valueOf(-PragmaProfile.BACKUP.getCacheSizeKib()), cacheSize);
+    }
+
+    @Test
+    void shouldSyncEveryCommitByDefault() throws SQLException {
+        PragmaProfile.DEFAULT.apply(engine.connection);
+
+        assertEquals("2", getPragma(engine.connection, "synchronous"));
+        assertEquals("0", getPragma(engine.connection, "mmap_size"));
+    }
+
+    private String getPragma(Connection connection, String pragma) throws SQLException {
+        ResultSet resultSet = connection.createStatement().executeQuery("PRAGMA " + pragma);
+        resultSet.next();
+        return resultSet.getString(1);
+    }
+}
@@ -0,0 +1,85 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.ChunkId;
+import de.mherrmann.tomatofilebackup.filetransfer.PackLocation;
+import de.mherrmann.tomatofilebackup.persistence.entities.SnapshotEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadConnectionPoolTest {
+
+    private static final String REPO = "./test/";
+
+    private DatabaseEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        RepositoryInitializer.initialize(REPO);
+        engine = new DatabaseEngine(REPO, PragmaProfile.DEFAULT, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        engine.destroy();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldReadWhileWriterIsInTransaction() throws Exception {
+        engine.addSnapshot("/committed", "host", 1);
+        engine.connection.setAutoCommit(false);
+        engine.connection.createStatement().executeUpdate(
+                "INSERT INTO snapshot(snapshot_uuid, hash_id, source, host, ctime) VALUES('uuid', 'hash', '/open', 'host', 2)");
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<List<SnapshotEntity>> first = readers.submit(() -> engine.getAllSnapshots());
+            Future<List<SnapshotEntity>> second = readers.submit(() -> engine.getSnapshotsBySource("/committed"));
+            assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, second.get(5, TimeUnit.SECONDS).size());
+        } finally {
+            readers.shutdownNow();
+            engine.connection.commit();
+            engine.connection.setAutoCommit(true);
+        }
+
+        assertEquals(2, engine.getAllSnapshots().size());
+    }
+
+    @Test
+    void shouldOpenConnectionsOnDemand() throws SQLException {
+        engine.getAllSnapshots();
+        engine.getAllSnapshots();
+
+        assertEquals(1, engine.readConnections.getOpenedCount());
+    }
+
+    @Test
+    void shouldNotWriteOnReadConnection() {
+        assertThrows(SQLException.class, () -> engine.readConnections.read(reader -> {
+            reader.chunks.setPackLocation(new ChunkId(1, 2), new PackLocation("pack", 0, 1));
+            return null;
+        }));
+    }
+
+    @Test
+    void shouldFailReadAfterClose() throws SQLException {
+        engine.readConnections.close();
+
+        assertThrows(SQLException.class, () -> engine.getAllSnapshots());
+    }
+
+    @Test
+    void shouldRejectEmptyPool() {
+        assertThrows(IllegalArgumentException.class, () -> new ReadConnectionPool("jdbc:sqlite::memory:", 0, PragmaProfile.DEFAULT));
+    }
+}
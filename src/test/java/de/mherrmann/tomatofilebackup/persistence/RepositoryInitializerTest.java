@@ -3,6 +3,9 @@ package de.mherrmann.tomatofilebackup.persistence;
 import static org.junit.jupiter.api.Assertions.*;
 
 import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
@@ -29,24 +32,45 @@ public class RepositoryInitializerTest {
         assertValidInitialized();
     }
 
+    @Test
+    void shouldRecordChunkingParameters() throws IOException, SQLException {
+        ChunkingParameters parameters = new ChunkingParameters(ChunkingAlgorithm.FASTCDC_64, 3,
+                16*1024, 64*1024, 256*1024, 4*1024*1024, ChunkHashAlgorithm.XXH3_128);
+        RepositoryInitializer.initialize(new File(REPO).getAbsolutePath(), parameters);
+
+        DatabaseEngine engine = new DatabaseEngine(REPO);
+        ChunkingParameters recorded = engine.getRepository().getChunkingParameters();
+        engine.destroy();
+
+        assertEquals(ChunkingAlgorithm.FASTCDC_64, recorded.getAlgorithm());
+        assertEquals(3, recorded.getNormalizationLevel());
+        assertEquals(16*1024, recorded.getMinSize());
+        assertEquals(64*1024, recorded.getAvgSize());
+        assertEquals(256*1024, recorded.getMaxSize());
+        assertEquals(4*1024*1024, recorded.getPortionSize());
+        assertEquals(ChunkHashAlgorithm.XXH3_128, recorded.getHashAlgorithm());
+    }
+
     private void assertValidInitialized() throws SQLException {
         File dbFile = new File(REPO, Constants.DB_FILENAME);
         String url = "jdbc:sqlite:"+dbFile.getAbsolutePath();
         Connection connection = DriverManager.getConnection(url);
         assertTablesExist(connection);
-        assertColumnsExist(connection, "chunk", "chunk_uuid", "checksum", "length");
-        assertColumnsExist(connection, "file", "file_uuid", "name", "size", "inode", "ctime", "mtime", "atime",
+        assertColumnsExist(connection, "chunk", "chunk_id", "checksum", "length", "pack_id", "pack_offset",
+                "pack_length");
+        assertColumnsExist(connection, "file", "file_id", "name", "size", "inode", "ctime", "mtime", "atime",
                 "compressed", "link", "link_path", "junction", "directory", "owner_user", "owner_group", "mod");
-        assertColumnsExist(connection, "snapshot", "snapshot_uuid", "hash_id", "source", "host", "ctime");
-        assertColumnsExist(connection, "repository", "repository_uuid", "path", "version");
-        assertColumnsExist(connection, "file_chunk_relation", "relation_uuid", "file_uuid", "chunk_uuid", "offset");
-        assertColumnsExist(connection, "file_snapshot_relation", "relation_uuid", "file_uuid", "snapshot_uuid", "path");
+        assertColumnsExist(connection, "snapshot", "snapshot_id", "snapshot_uuid", "hash_id", "source", "host", "ctime");
+        assertColumnsExist(connection, "repository", "repository_uuid", "path", "version", "chunking_algorithm",
+                "chunking_normalization", "min_chunk_size", "avg_chunk_size", "max_chunk_size", "portion_size", "chunk_hash_algorithm");
+        assertColumnsExist(connection, "file_chunk_relation", "file_id", "chunk_id", "offset");
+        assertColumnsExist(connection, "file_snapshot_relation", "file_id", "snapshot_id", "path");
         assertValidVersion(connection);
     }
 
     private void assertTablesExist(Connection connection) throws SQLException {
         ResultSet resultSet = showTablesResult(connection);
-        String[] expected = {"chunk", "file", "snapshot", "repository", "file_chunk_relation", "file_snapshot_relation"};
+        String[] expected = {"repository", "chunk", "file", "snapshot", "file_chunk_relation", "file_snapshot_relation"};
         String[] tablesExist = new String[expected.length];
         int i = 0;
         while (resultSet.next()) {
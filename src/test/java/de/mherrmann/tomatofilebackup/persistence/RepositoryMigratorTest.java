@@ -0,0 +1,188 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import de.mherrmann.tomatofilebackup.Constants;
+import de.mherrmann.tomatofilebackup.TestUtil;
+import de.mherrmann.tomatofilebackup.chunking.ChunkHashAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingAlgorithm;
+import de.mherrmann.tomatofilebackup.chunking.ChunkingParameters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryMigratorTest {
+
+    private static final String REPO = "./test/";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws IOException, SQLException {
+        RepositoryInitializer.initialize(REPO);
+        File dbFile = new File(REPO, Constants.DB_FILENAME);
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        TestUtil.removeTestFiles();
+    }
+
+    @Test
+    void shouldMigrateRepositoryOfBaseVersionOnOpen() throws IOException, SQLException {
+        reinitializeAtBaseVersion();
+
+        new DatabaseEngine(REPO).destroy();
+
+        assertEquals(Constants.VERSION, RepositoryMigrator.getVersion(connection));
+        assertTrue(getIndexNames().contains("chunk_checksum_index"));
+        assertTrue(getIndexNames().contains("file_chunk_relation_file_index"));
+        assertFalse(getTableNames().contains("chunk_v1"));
+    }
+
+    @Test
+    void shouldDefaultChunkingParametersOfBaseVersionToBaseline() throws IOException, SQLException {
+        reinitializeAtBaseVersion();
+
+        RepositoryMigrator.migrate(connection);
+
+        ResultSet resultSet = connection.createStatement().executeQuery("SELECT * FROM repository");
+        assertEquals("FASTCDC_2016", resultSet.getString("chunking_algorithm"));
+        assertEquals(2, resultSet.getInt("chunking_normalization"));
+        assertEquals(512*1024, resultSet.getInt("min_chunk_size"));
+        assertEquals(1024*1024, resultSet.getInt("avg_chunk_size"));
+        assertEquals(8*1024*1024, resultSet.getInt("max_chunk_size"));
+        assertEquals(16*1024*1024, resultSet.getInt("portion_size"));
+    }
+
+    @Test
+    void shouldDefaultChunkHashAlgorithmOfBaseVersionToMurmur3() throws IOException, SQLException {
+        reinitializeAtBaseVersion();
+
+        DatabaseEngine engine = new DatabaseEngine(REPO);
+        ChunkingParameters parameters = engine.getRepository().getChunkingParameters();
+        engine.destroy();
+
+        assertEquals(ChunkHashAlgorithm.MURMUR3_128, parameters.getHashAlgorithm());
+        assertEquals(ChunkingAlgorithm.FASTCDC_2016, parameters.getAlgorithm());
+    }
+
+    @Test
+    void shouldApplyOnlyNewerMigrations() throws SQLException {
+        List<String> applied = new ArrayList<>();
+        List<Migration> migrations = Arrays.asList(
+                new RecordingMigration("1.0", applied),
+                new RecordingMigration(Constants.VERSION, applied),
+                new RecordingMigration("1.0.5", applied)
+        );
+        setVersion("0.9");
+
+        RepositoryMigrator.migrate(connection, migrations);
+
+        assertEquals(Arrays.asList("1.0", Constants.VERSION), applied);
+        assertEquals(Constants.VERSION, RepositoryMigrator.getVersion(connection));
+    }
+
+    @Test
+    void shouldKeepVersionOfFailedMigration() throws SQLException {
+        setVersion(RepositoryMigrator.BASE_VERSION);
+        Migration failing = new Migration() {
+            @Override
+            public String getVersion() {
+                return Constants.VERSION;
+            }
+
+            @Override
+            public void apply(Connection connection) throws SQLException {
+                connection.createStatement().executeUpdate("CREATE TABLE migrated(id integer)");
+                throw new SQLException("failed");
+            }
+        };
+
+        SQLException exception = assertThrows(SQLException.class,
+                () -> RepositoryMigrator.migrate(connection, Collections.singletonList(failing)));
+
+        assertTrue(exception.getMessage().contains(Constants.VERSION));
+        assertEquals(RepositoryMigrator.BASE_VERSION, RepositoryMigrator.getVersion(connection));
+        assertFalse(getTableNames().contains("migrated"));
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    void shouldFailOpenRepositoryOfNewerVersion() throws SQLException {
+        setVersion("99.0");
+
+        SQLException exception = assertThrows(SQLException.class, () -> new DatabaseEngine(REPO));
+
+        assertTrue(exception.getMessage().contains("99.0"));
+    }
+
+    @Test
+    void shouldCompareVersionsNumerically() {
+        assertEquals(0, RepositoryMigrator.compareVersions("1.1", "1.1"));
+        assertEquals(0, RepositoryMigrator.compareVersions("1.0", "1"));
+        assertTrue(RepositoryMigrator.compareVersions("1.10", "1.9") > 0);
+        assertTrue(RepositoryMigrator.compareVersions("1.1", "2.0") < 0);
+    }
+
+    private void reinitializeAtBaseVersion() throws IOException, SQLException {
+        connection.close();
+        TestUtil.removeTestFiles();
+        connection = RepositoryInitializer.initializeBaseVersion(REPO);
+    }
+
+    private void setVersion(String version) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement("UPDATE repository SET version = ?");
+        preparedStatement.setString(1, version);
+        preparedStatement.executeUpdate();
+    }
+
+    private List<String> getIndexNames() throws SQLException {
+        return getSchemaNames("index");
+    }
+
+    private List<String> getTableNames() throws SQLException {
+        return getSchemaNames("table");
+    }
+
+    private List<String> getSchemaNames(String type) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement("SELECT name FROM sqlite_master WHERE type = ?");
+        preparedStatement.setString(1, type);
+        ResultSet resultSet = preparedStatement.executeQuery();
+        List<String> names = new ArrayList<>();
+        while(resultSet.next()){
+            names.add(resultSet.getString("name"));
+        }
+        return names;
+    }
+
+    private static class RecordingMigration implements Migration {
+        private final String version;
+        private final List<String> applied;
+
+        private RecordingMigration(String version, List<String> applied){
+            this.version = version;
+            this.applied = applied;
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public void apply(Connection connection) {
+            applied.add(version);
+        }
+    }
+}
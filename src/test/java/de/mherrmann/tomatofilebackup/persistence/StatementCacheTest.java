@@ -0,0 +1,84 @@
+package de.mherrmann.tomatofilebackup.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementCacheTest {
+
+    private static final String SELECT_ONE_SQL = "SELECT 1";
+    private static final String SELECT_TWO_SQL = "SELECT 2";
+    private static final String SELECT_THREE_SQL = "SELECT 3";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        connection.createStatement().executeUpdate("CREATE TABLE test(value integer)");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void shouldReuseStatement() throws SQLException {
+        StatementCache statements = new StatementCache(connection);
+
+        PreparedStatement first = statements.get(SELECT_ONE_SQL);
+        first.executeQuery().close();
+        PreparedStatement second = statements.get(SELECT_ONE_SQL);
+
+        assertSame(first, second);
+        assertEquals(1, statements.size());
+        assertFalse(second.isClosed());
+    }
+
+    @Test
+    void shouldCloseLeastRecentlyUsedStatement() throws SQLException {
+        StatementCache statements = new StatementCache(connection, 2);
+        PreparedStatement one = statements.get(SELECT_ONE_SQL);
+        PreparedStatement two = statements.get(SELECT_TWO_SQL);
+        statements.get(SELECT_ONE_SQL);
+
+        PreparedStatement three = statements.get(SELECT_THREE_SQL);
+
+        assertEquals(2, statements.size());
+        assertFalse(one.isClosed());
+        assertTrue(two.isClosed());
+        assertFalse(three.isClosed());
+    }
+
+    @Test
+    void shouldCloseAllStatements() throws SQLException {
+        StatementCache statements = new StatementCache(connection);
+        PreparedStatement one = statements.get(SELECT_ONE_SQL);
+        PreparedStatement two = statements.get(SELECT_TWO_SQL);
+
+        statements.close();
+
+        assertEquals(0, statements.size());
+        assertTrue(one.isClosed());
+        assertTrue(two.isClosed());
+    }
+
+    @Test
+    void shouldDropRowsBatchedBeforeReuse() throws SQLException {
+        StatementCache statements = new StatementCache(connection);
+        PreparedStatement insert = statements.get("INSERT INTO test(value) VALUES(?)");
+        insert.setInt(1, 1);
+        insert.addBatch();
+
+        statements.get("INSERT INTO test(value) VALUES(?)").executeBatch();
+
+        ResultSet resultSet = connection.createStatement().executeQuery("SELECT COUNT(*) FROM test");
+        resultSet.next();
+        assertEquals(0, resultSet.getInt(1));
+    }
+}